@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import org.hibernate.MappingException;
+import org.hibernate.QueryException;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.function.SQLFunction;
+import org.hibernate.engine.spi.Mapping;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.type.StandardBasicTypes;
+import org.hibernate.type.Type;
+
+import com.ruesga.phoenix.dialect.SqlTokenizer.Token;
+import com.ruesga.phoenix.dialect.SqlTokenizer.TokenType;
+
+/**
+ * {@code approx_count('entity')}: the approximate number of rows of the table of an entity, as
+ * estimated from its statistics (or {@code null} if the table has no statistics).
+ * <p>
+ * Query plans are cached, so the function renders a placeholder. When the statement is prepared
+ * the placeholder becomes a bind parameter (see {@link #rewrite(String)}), and every execution
+ * binds the current estimate to it (see {@link #bind(String, PreparedStatement, Function)}).
+ */
+public class ApproximateCountFunction implements SQLFunction {
+
+    private static final String PLACEHOLDER = "phoenix_approx_count";
+
+    @Override
+    public boolean hasArguments() {
+        return true;
+    }
+
+    @Override
+    public boolean hasParenthesesIfNoArguments() {
+        return true;
+    }
+
+    @Override
+    public Type getReturnType(Type firstArgumentType, Mapping mapping) throws QueryException {
+        return StandardBasicTypes.LONG;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public String render(Type firstArgumentType, List arguments, SessionFactoryImplementor factory)
+            throws QueryException {
+        if (arguments.size() != 1) {
+            throw new QueryException("approx_count requires the name of an entity");
+        }
+        final String name = arguments.get(0).toString().trim().replaceAll("^'|'$", "");
+        final EntityPersister persister;
+        try {
+            persister = factory.getMetamodel().entityPersister(factory.getMetamodel().getImportedClassName(name));
+        } catch (MappingException ex) {
+            throw new QueryException("approx_count: unknown entity " + name, ex);
+        }
+        final Dialect dialect = factory.getJdbcServices().getDialect();
+        final PhoenixMappings mappings = dialect instanceof PhoenixDialect
+                ? ((PhoenixDialect) dialect).getMappings() : null;
+        final TableMapping table = mappings != null ? mappings.getTable(persister.getMappedClass()) : null;
+        if (table == null) {
+            throw new QueryException("approx_count: " + name + " is not mapped to a Phoenix table");
+        }
+        return PLACEHOLDER + "('" + table.getQualifiedName() + "')";
+    }
+
+    /**
+     * Whether {@code sql} has placeholders to bind.
+     */
+    public static boolean isUsedBy(String sql) {
+        return sql.contains(PLACEHOLDER);
+    }
+
+    /**
+     * Rewrites the placeholders of {@code sql} as bind parameters, numbered after the parameters
+     * of the statement. These are numbered explicitly ({@code :1}, {@code :2}...), so Hibernate
+     * still binds them by their position. The result doesn't depend on the estimates, so the
+     * statement can be cached as any other.
+     */
+    public static String rewrite(String sql) {
+        final List<Token> tokens = SqlTokenizer.tokenize(sql);
+        int parameter = 0;
+        int estimate = countParameters(tokens);
+        int last = 0;
+        final StringBuilder sb = new StringBuilder(sql.length());
+        for (int i = 0; i < tokens.size(); i++) {
+            final Token token = tokens.get(i);
+            if (token.type == TokenType.PARAM) {
+                sb.append(sql, last, token.start).append(':').append(++parameter);
+                last = token.end;
+            } else if (isPlaceholder(tokens, i)) {
+                sb.append(sql, last, token.start).append("CAST(:").append(++estimate).append(" AS BIGINT)");
+                i += 3;
+                last = tokens.get(i).end;
+            }
+        }
+        return sb.append(sql, last, sql.length()).toString();
+    }
+
+    /**
+     * Binds the current estimates of the placeholders of {@code sql} to {@code statement}, which
+     * was prepared from {@link #rewrite(String) the rewritten sql}.
+     */
+    public static void bind(String sql, PreparedStatement statement, Function<String, RowCountEstimate> estimator)
+            throws SQLException {
+        final List<Token> tokens = SqlTokenizer.tokenize(sql);
+        int index = countParameters(tokens);
+        for (String table : getTables(tokens)) {
+            final RowCountEstimate estimate = estimator.apply(table);
+            if (estimate.isAvailable()) {
+                statement.setLong(++index, estimate.getCount());
+            } else {
+                statement.setNull(++index, Types.BIGINT);
+            }
+        }
+    }
+
+    /**
+     * Returns the tables of the placeholders of {@code sql}, in the order they are bound.
+     */
+    static List<String> getTables(String sql) {
+        return getTables(SqlTokenizer.tokenize(sql));
+    }
+
+    private static List<String> getTables(List<Token> tokens) {
+        final List<String> tables = new ArrayList<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            if (isPlaceholder(tokens, i)) {
+                final String literal = tokens.get(i + 2).text;
+                tables.add(literal.substring(1, literal.length() - 1));
+            }
+        }
+        return tables;
+    }
+
+    private static int countParameters(List<Token> tokens) {
+        int count = 0;
+        for (Token token : tokens) {
+            if (token.type == TokenType.PARAM) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static boolean isPlaceholder(List<Token> tokens, int i) {
+        return tokens.get(i).is(PLACEHOLDER) && i + 3 < tokens.size() && tokens.get(i + 1).isSymbol("(")
+                && tokens.get(i + 2).type == TokenType.STRING && tokens.get(i + 3).isSymbol(")");
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.util.List;
+
+import org.hibernate.QueryException;
+import org.hibernate.dialect.function.SQLFunction;
+import org.hibernate.engine.spi.Mapping;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.type.CustomType;
+import org.hibernate.type.StandardBasicTypes;
+import org.hibernate.type.Type;
+
+import com.ruesga.phoenix.dialect.types.ArrayType;
+
+/**
+ * {@code array_elem(array, index)}: the element at the 1-based {@code index} of a Phoenix array,
+ * typed after the elements of the array.
+ */
+public class ArrayElementFunction implements SQLFunction {
+
+    @Override
+    public boolean hasArguments() {
+        return true;
+    }
+
+    @Override
+    public boolean hasParenthesesIfNoArguments() {
+        return true;
+    }
+
+    @Override
+    public Type getReturnType(Type firstArgumentType, Mapping mapping) throws QueryException {
+        if (firstArgumentType instanceof CustomType
+                && ((CustomType) firstArgumentType).getUserType() instanceof ArrayType) {
+            return ((ArrayType<?>) ((CustomType) firstArgumentType).getUserType()).getElementHibernateType();
+        }
+        return StandardBasicTypes.STRING;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public String render(Type firstArgumentType, List arguments, SessionFactoryImplementor factory)
+            throws QueryException {
+        if (arguments.size() != 2) {
+            throw new QueryException("array_elem requires two arguments");
+        }
+        return arguments.get(0) + "[" + arguments.get(1) + "]";
+    }
+}
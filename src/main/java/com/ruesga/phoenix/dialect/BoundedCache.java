@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+
+/**
+ * A concurrent cache with a fixed capacity. Entries are evicted in second chance order: the
+ * oldest entry goes first, unless it was read since it was added (or last spared), in which case
+ * it is moved to the back of the queue instead. The hot entries stay cached, and reads never take
+ * a lock.
+ */
+public final class BoundedCache<K, V> {
+
+    private static final class Node<V> {
+        final V value;
+        volatile boolean referenced = false;
+
+        Node(V value) {
+            this.value = value;
+        }
+    }
+
+    private final int capacity;
+    private final Map<K, Node<V>> entries = new ConcurrentHashMap<>();
+    private final Queue<K> order = new ConcurrentLinkedQueue<>();
+
+    public BoundedCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0");
+        }
+        this.capacity = capacity;
+    }
+
+    public V get(K key) {
+        final Node<V> node = entries.get(key);
+        if (node == null) {
+            return null;
+        }
+        if (!node.referenced) {
+            node.referenced = true;
+        }
+        return node.value;
+    }
+
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> loader) {
+        V value = get(key);
+        if (value == null) {
+            value = loader.apply(key);
+            if (value != null) {
+                Node<V> prev = entries.putIfAbsent(key, new Node<>(value));
+                if (prev != null) {
+                    return prev.value;
+                }
+                order.add(key);
+                evict(key);
+            }
+        }
+        return value;
+    }
+
+    public void put(K key, V value) {
+        if (entries.put(key, new Node<>(value)) == null) {
+            order.add(key);
+            evict(key);
+        }
+    }
+
+    /**
+     * A snapshot of the cached entries.
+     */
+    public Map<K, V> asMap() {
+        final Map<K, V> map = new HashMap<>();
+        for (Map.Entry<K, Node<V>> entry : entries.entrySet()) {
+            map.put(entry.getKey(), entry.getValue().value);
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+        order.clear();
+    }
+
+    private void evict(K added) {
+        // The entry just added is spared too, and every entry is spared at most once per lap
+        int spared = 0;
+        while (entries.size() > capacity) {
+            K eldest = order.poll();
+            if (eldest == null) {
+                break;
+            }
+            Node<V> node = entries.get(eldest);
+            if (node != null && (node.referenced || eldest.equals(added)) && spared++ <= capacity) {
+                node.referenced = false;
+                order.add(eldest);
+            } else {
+                entries.remove(eldest);
+            }
+        }
+    }
+}
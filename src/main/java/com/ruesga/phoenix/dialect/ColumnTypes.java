@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.MappingException;
+import org.hibernate.boot.Metadata;
+import org.hibernate.mapping.Column;
+import org.hibernate.mapping.ForeignKey;
+import org.hibernate.mapping.PersistentClass;
+import org.hibernate.mapping.Property;
+import org.hibernate.mapping.Table;
+import org.hibernate.type.CustomType;
+import org.hibernate.type.EnumType;
+import org.hibernate.type.Type;
+
+import com.ruesga.phoenix.dialect.annotations.FixedLength;
+import com.ruesga.phoenix.dialect.annotations.Unsigned;
+import com.ruesga.phoenix.dialect.types.ArrayType;
+
+/**
+ * Sets the Phoenix types of the mapped columns that Hibernate can't infer. Columns of
+ * {@link ArrayType} attributes are declared as arrays of their element type. The rest are narrowed,
+ * so row keys and cells take less space: columns of {@link Unsigned} attributes use the unsigned
+ * variant of their type and columns of {@link FixedLength} attributes a {@code CHAR} or a
+ * {@code BINARY}. With the compact type profile enabled, ordinal enums are also stored in the
+ * narrowest unsigned integer type that holds their constants.
+ * <p>
+ * Only the DDL types change; Hibernate binds and reads the values as before. Columns with an
+ * explicit {@code columnDefinition} are left untouched.
+ */
+final class ColumnTypes {
+
+    private static final Map<Integer, String> UNSIGNED_TYPES = new HashMap<>();
+    static {
+        UNSIGNED_TYPES.put(Types.TINYINT, "unsigned_tinyint");
+        UNSIGNED_TYPES.put(Types.SMALLINT, "unsigned_smallint");
+        UNSIGNED_TYPES.put(Types.INTEGER, "unsigned_int");
+        UNSIGNED_TYPES.put(Types.BIGINT, "unsigned_long");
+        UNSIGNED_TYPES.put(Types.FLOAT, "unsigned_float");
+        UNSIGNED_TYPES.put(Types.REAL, "unsigned_float");
+        UNSIGNED_TYPES.put(Types.DOUBLE, "unsigned_double");
+        UNSIGNED_TYPES.put(Types.DATE, "unsigned_date");
+        UNSIGNED_TYPES.put(Types.TIME, "unsigned_time");
+        UNSIGNED_TYPES.put(Types.TIMESTAMP, "unsigned_timestamp");
+    }
+
+    private ColumnTypes() {
+    }
+
+    /**
+     * Applies the Phoenix types to the columns of {@code metadata}.
+     */
+    static void apply(Metadata metadata, boolean compactEnums) {
+        final Map<Column, String> applied = new LinkedHashMap<>();
+        for (PersistentClass entity : metadata.getEntityBindings()) {
+            if (entity.getMappedClass() == null) {
+                continue;
+            }
+            final Map<Property, Class<?>> properties = new LinkedHashMap<>(
+                    MappingUtils.getIdentifierProperties(entity));
+            final Iterator<?> it = entity.getPropertyClosureIterator();
+            it.forEachRemaining(p -> properties.put((Property) p, entity.getMappedClass()));
+
+            for (Map.Entry<Property, Class<?>> e : properties.entrySet()) {
+                final Property property = e.getKey();
+                final Object selectable = property.getColumnSpan() == 1
+                        ? property.getColumnIterator().next() : null;
+                if (!(selectable instanceof Column)) {
+                    continue;
+                }
+                final Column column = (Column) selectable;
+                if (column.getSqlType() != null) {
+                    continue;
+                }
+                final String sqlType = columnType(metadata, entity, e.getValue(), property, column,
+                        compactEnums);
+                if (sqlType != null) {
+                    column.setSqlType(sqlType);
+                    applied.put(column, sqlType);
+                }
+            }
+        }
+
+        // Foreign keys must keep the type of the referenced columns
+        for (Table table : metadata.collectTableMappings()) {
+            final Iterator<ForeignKey> foreignKeys = table.getForeignKeyIterator();
+            while (foreignKeys.hasNext()) {
+                final ForeignKey foreignKey = foreignKeys.next();
+                final List<Column> referenced = foreignKey.isReferenceToPrimaryKey()
+                        ? foreignKey.getReferencedTable().getPrimaryKey().getColumns()
+                        : foreignKey.getReferencedColumns();
+                final List<Column> columns = foreignKey.getColumns();
+                for (int i = 0; i < columns.size() && i < referenced.size(); i++) {
+                    final String sqlType = applied.get(referenced.get(i));
+                    if (sqlType != null && columns.get(i).getSqlType() == null) {
+                        columns.get(i).setSqlType(sqlType);
+                    }
+                }
+            }
+        }
+    }
+
+    private static String columnType(Metadata metadata, PersistentClass entity, Class<?> owner,
+            Property property, Column column, boolean compactEnums) {
+        final Type type = property.getType();
+        if (type instanceof CustomType && ((CustomType) type).getUserType() instanceof ArrayType) {
+            return ((ArrayType<?>) ((CustomType) type).getUserType()).getColumnDefinition();
+        }
+        if (MappingUtils.getAnnotation(owner, property, FixedLength.class) != null) {
+            final Class<?> returned = property.getType().getReturnedClass();
+            if (String.class.equals(returned)) {
+                return "char(" + column.getLength() + ")";
+            }
+            if (byte[].class.equals(returned)) {
+                return "binary(" + column.getLength() + ")";
+            }
+            throw new MappingException("Fixed length attribute " + property.getName() + " of "
+                    + entity.getEntityName() + " must be a string or a byte array");
+        }
+        if (MappingUtils.getAnnotation(owner, property, Unsigned.class) != null) {
+            final String sqlType = UNSIGNED_TYPES.get(column.getSqlTypeCode(metadata));
+            if (sqlType == null) {
+                throw new MappingException("Unsigned attribute " + property.getName() + " of "
+                        + entity.getEntityName() + " must be numeric, a date or a time");
+            }
+            return sqlType;
+        }
+        if (compactEnums && isOrdinalEnum(property.getType())) {
+            final int constants = property.getType().getReturnedClass().getEnumConstants().length;
+            return constants <= Byte.MAX_VALUE + 1 ? "unsigned_tinyint"
+                    : constants <= Short.MAX_VALUE + 1 ? "unsigned_smallint" : null;
+        }
+        return null;
+    }
+
+    private static boolean isOrdinalEnum(Type type) {
+        return type instanceof CustomType && ((CustomType) type).getUserType() instanceof EnumType
+                && ((EnumType) ((CustomType) type).getUserType()).isOrdinal();
+    }
+}
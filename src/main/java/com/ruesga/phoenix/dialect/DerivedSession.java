@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.apache.phoenix.jdbc.PhoenixConnection;
+import org.hibernate.CacheMode;
+import org.hibernate.FlushMode;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.jdbc.connections.spi.JdbcConnectionAccess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.jboss.logging.Logger;
+
+/**
+ * A read-only session over its own Phoenix connection, derived from a connection of the
+ * persistence unit with different properties. Both connections are released with the session.
+ */
+final class DerivedSession implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(DerivedSession.class);
+
+    interface Deriver {
+        PhoenixConnection derive(PhoenixConnection connection) throws SQLException;
+    }
+
+    private final String description;
+    private final JdbcConnectionAccess access;
+    private final Connection connection;
+    private final PhoenixConnection derived;
+    private final Session session;
+
+    DerivedSession(SessionFactoryImplementor sessionFactory, String description, Deriver deriver) {
+        this.description = description;
+        this.access = sessionFactory.getJdbcServices().getBootstrapJdbcConnectionAccess();
+
+        Connection connection = null;
+        PhoenixConnection derived = null;
+        try {
+            connection = access.obtainConnection();
+            derived = deriver.derive(connection.unwrap(PhoenixConnection.class));
+            derived.setReadOnly(true);
+        } catch (SQLException ex) {
+            release(derived, connection);
+            throw new HibernateException("Unable to open " + description, ex);
+        }
+        this.connection = connection;
+        this.derived = derived;
+
+        this.session = sessionFactory.withOptions().connection(derived).openSession();
+        session.setDefaultReadOnly(true);
+        session.setHibernateFlushMode(FlushMode.MANUAL);
+        session.setCacheMode(CacheMode.IGNORE);
+    }
+
+    Session getSession() {
+        return session;
+    }
+
+    @Override
+    public void close() {
+        try {
+            session.close();
+        } finally {
+            release(derived, connection);
+        }
+    }
+
+    private void release(Connection derived, Connection connection) {
+        try {
+            if (derived != null) {
+                StatementCache.closed(derived);
+                derived.close();
+            }
+        } catch (SQLException ex) {
+            LOG.debugf(ex, "Unable to close the connection of %s", description);
+        }
+        try {
+            if (connection != null) {
+                access.releaseConnection(connection);
+            }
+        } catch (SQLException ex) {
+            LOG.debugf(ex, "Unable to release the connection of %s", description);
+        }
+    }
+
+    static PhoenixDialect getDialect(SessionFactoryImplementor sessionFactory) {
+        final Dialect dialect = sessionFactory.getJdbcServices().getDialect();
+        if (!(dialect instanceof PhoenixDialect)) {
+            throw new HibernateException("The session factory is not bound to a Phoenix dialect");
+        }
+        return (PhoenixDialect) dialect;
+    }
+}
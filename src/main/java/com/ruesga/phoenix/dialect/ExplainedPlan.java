@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The Phoenix execution plan of a statement, as returned by {@code EXPLAIN}.
+ */
+public final class ExplainedPlan {
+
+    public enum PlanType {
+        POINT_LOOKUP, SKIP_SCAN, RANGE_SCAN, FULL_SCAN, CLIENT_SORT, HASH_JOIN, SORT_MERGE_JOIN
+    }
+
+    private final String sql;
+    private final List<String> steps;
+    private final Set<PlanType> types;
+
+    public ExplainedPlan(String sql, List<String> steps) {
+        this.sql = sql;
+        this.steps = Collections.unmodifiableList(steps);
+        this.types = Collections.unmodifiableSet(classify(steps));
+    }
+
+    static Set<PlanType> classify(List<String> steps) {
+        final Set<PlanType> types = EnumSet.noneOf(PlanType.class);
+        for (String step : steps) {
+            String s = step.trim().toUpperCase();
+            if (s.contains("POINT LOOKUP ON")) {
+                types.add(PlanType.POINT_LOOKUP);
+            }
+            if (s.contains("SKIP SCAN ON")) {
+                types.add(PlanType.SKIP_SCAN);
+            }
+            if (s.contains("RANGE SCAN OVER")) {
+                types.add(PlanType.RANGE_SCAN);
+            }
+            if (s.contains("FULL SCAN OVER")) {
+                types.add(PlanType.FULL_SCAN);
+            }
+            if (s.startsWith("CLIENT") && s.contains("SORTED BY")) {
+                types.add(PlanType.CLIENT_SORT);
+            }
+            if (s.contains("-JOIN TABLE")) {
+                types.add(PlanType.HASH_JOIN);
+            }
+            if (s.startsWith("SORT-MERGE-JOIN")) {
+                types.add(PlanType.SORT_MERGE_JOIN);
+            }
+        }
+        return types;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public List<String> getSteps() {
+        return steps;
+    }
+
+    public Set<PlanType> getTypes() {
+        return types;
+    }
+
+    public boolean is(PlanType type) {
+        return types.contains(type);
+    }
+
+    @Override
+    public String toString() {
+        return String.join("\n", steps);
+    }
+}
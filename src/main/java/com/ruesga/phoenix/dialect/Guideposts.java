@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.hadoop.hbase.HRegionLocation;
+import org.apache.phoenix.jdbc.PhoenixConnection;
+import org.apache.phoenix.query.QueryConstants;
+import org.apache.phoenix.schema.PColumn;
+import org.apache.phoenix.schema.PTable;
+import org.apache.phoenix.schema.SortOrder;
+import org.apache.phoenix.schema.types.PDataType;
+import org.apache.phoenix.util.PhoenixRuntime;
+
+/**
+ * Reads the guideposts Phoenix collects in {@code SYSTEM.STATS} for a table: the row keys that
+ * split the table in chunks of (roughly) the same size, as used to parallelize its scans, and
+ * the number of rows of every chunk.
+ */
+final class Guideposts {
+
+    private static final String STATS_QUERY = "SELECT COLUMN_FAMILY, GUIDE_POST_KEY, GUIDE_POSTS_ROW_COUNT,"
+            + " LAST_STATS_UPDATE_TIME FROM SYSTEM.STATS WHERE PHYSICAL_NAME = ?"
+            + " ORDER BY COLUMN_FAMILY, GUIDE_POST_KEY";
+
+    private static final class Guidepost {
+        final String family;
+        // The chunk ends at the key (included), an empty key ends the table
+        final byte[] key;
+        final long rows;
+
+        Guidepost(String family, byte[] key, long rows) {
+            this.family = family;
+            this.key = key;
+            this.rows = rows;
+        }
+    }
+
+    private final PTable table;
+    private final List<Guidepost> guideposts;
+    private final boolean statistics;
+    private final long timestamp;
+
+    private Guideposts(PTable table, List<Guidepost> guideposts, boolean statistics, long timestamp) {
+        this.table = table;
+        this.guideposts = guideposts;
+        this.statistics = statistics;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Reads the guideposts of {@code qualifiedName} (as in {@code SCHEMA.TABLE}). If the table has
+     * no statistics yet, the start keys of its regions are used instead (without row counts).
+     */
+    static Guideposts read(Connection connection, String qualifiedName) throws SQLException {
+        final PTable table = PhoenixRuntime.getTable(connection, qualifiedName);
+        final String physicalName = table.getPhysicalName().getString();
+        final List<Guidepost> guideposts = new ArrayList<>();
+        long timestamp = 0L;
+        try (PreparedStatement ps = connection.prepareStatement(STATS_QUERY)) {
+            ps.setString(1, physicalName);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    final byte[] key = rs.getBytes(2);
+                    guideposts.add(new Guidepost(rs.getString(1), key != null ? key : new byte[0], rs.getLong(3)));
+                    final Timestamp updated = rs.getTimestamp(4);
+                    if (updated != null) {
+                        timestamp = Math.max(timestamp, updated.getTime());
+                    }
+                }
+            }
+        }
+        if (!guideposts.isEmpty()) {
+            return new Guideposts(table, guideposts, true, timestamp);
+        }
+        for (HRegionLocation region : connection.unwrap(PhoenixConnection.class).getQueryServices()
+                .getAllTableRegions(table.getPhysicalName().getBytes())) {
+            final byte[] key = region.getRegionInfo().getStartKey();
+            if (key != null && key.length > 0) {
+                guideposts.add(new Guidepost(null, key, 0L));
+            }
+        }
+        return new Guideposts(table, guideposts, false, 0L);
+    }
+
+    int size() {
+        return guideposts.size();
+    }
+
+    /**
+     * Whether the guideposts come from the table statistics, and so carry row counts.
+     */
+    boolean hasStatistics() {
+        return statistics;
+    }
+
+    /**
+     * When the statistics were last collected (0 if unknown).
+     */
+    long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * The name of the leading row key column (after the salt byte, if any).
+     */
+    String getLeadingColumn() {
+        return getLeadingPkColumn().getName().getString();
+    }
+
+    /**
+     * The distinct values of the leading row key column at the guideposts, in their natural order.
+     * Guideposts that don't hold a complete value of the column are skipped.
+     */
+    List<Object> getLeadingValues() {
+        final PColumn column = getLeadingPkColumn();
+        final int offset = table.getBucketNum() != null ? 1 : 0;
+        final List<Object> values = new ArrayList<>();
+        for (Guidepost guidepost : guideposts) {
+            final Object value = decode(column, guidepost.key, offset);
+            if (value != null) {
+                values.add(value);
+            }
+        }
+        return sortDistinct(values);
+    }
+
+    /**
+     * Estimates the rows whose leading row key column is in {@code [lower, upper)} ({@code null}
+     * meaning unbounded), as {@code {estimate, minimum, maximum}}. Chunks fully inside the range
+     * count all their rows; chunks crossing a bound count half of them, within zero and all.
+     */
+    long[] estimateRows(Object lower, Object upper) {
+        final long[] estimate = new long[3];
+        final String family = getCountedFamily();
+        final PColumn column = getLeadingPkColumn();
+        final int offset = table.getBucketNum() != null ? 1 : 0;
+        byte[] previous = null;
+        for (Guidepost guidepost : guideposts) {
+            if (!Objects.equals(family, guidepost.family)) {
+                continue;
+            }
+            // A chunk holds the rows after the previous guidepost of the same salt bucket
+            final Object from = previous != null && (offset == 0 || (previous.length > 0
+                    && guidepost.key.length > 0 && previous[0] == guidepost.key[0]))
+                    ? decode(column, previous, offset) : null;
+            final Object to = decode(column, guidepost.key, offset);
+            previous = guidepost.key;
+
+            final boolean outside = (upper != null && from != null && compare(from, upper) >= 0)
+                    || (lower != null && to != null && compare(to, lower) < 0);
+            final boolean inside = (lower == null || (from != null && compare(from, lower) >= 0))
+                    && (upper == null || (to != null && compare(to, upper) < 0));
+            if (outside) {
+                continue;
+            }
+            if (inside) {
+                estimate[0] += guidepost.rows;
+                estimate[1] += guidepost.rows;
+            } else {
+                estimate[0] += guidepost.rows / 2;
+            }
+            estimate[2] += guidepost.rows;
+        }
+        return estimate;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static int compare(Object value, Object bound) {
+        // The bounds are given by the caller, maybe as a different (but comparable) number type
+        if (value instanceof Number && bound instanceof Number && value.getClass() != bound.getClass()) {
+            return new BigDecimal(value.toString()).compareTo(new BigDecimal(bound.toString()));
+        }
+        return ((Comparable) value).compareTo(bound);
+    }
+
+    private String getCountedFamily() {
+        // Every row has cells in at least one family, so the family with more rows counts them
+        final Map<String, Long> rows = new HashMap<>();
+        for (Guidepost guidepost : guideposts) {
+            rows.merge(guidepost.family != null ? guidepost.family : "", guidepost.rows, Long::sum);
+        }
+        String family = null;
+        long max = -1;
+        for (Map.Entry<String, Long> e : rows.entrySet()) {
+            if (e.getValue() > max) {
+                family = e.getKey();
+                max = e.getValue();
+            }
+        }
+        return family == null || family.isEmpty() ? null : family;
+    }
+
+    private PColumn getLeadingPkColumn() {
+        // The salt byte is the first column of the primary key of salted tables
+        return table.getPKColumns().get(table.getBucketNum() != null ? 1 : 0);
+    }
+
+    private static Object decode(PColumn column, byte[] key, int offset) {
+        final PDataType<?> type = column.getDataType();
+        int length;
+        if (type.isFixedWidth()) {
+            final Integer size = column.getMaxLength() != null ? column.getMaxLength() : type.getByteSize();
+            length = size != null ? size : -1;
+        } else {
+            final byte separator = column.getSortOrder() == SortOrder.DESC
+                    ? QueryConstants.DESC_SEPARATOR_BYTE : QueryConstants.SEPARATOR_BYTE;
+            int end = offset;
+            while (end < key.length && key[end] != separator) {
+                end++;
+            }
+            length = end - offset;
+        }
+        if (length <= 0 || offset + length > key.length) {
+            return null;
+        }
+        try {
+            final Object value = type.toObject(key, offset, length, type, column.getSortOrder(),
+                    column.getMaxLength(), column.getScale());
+            return value instanceof Comparable ? value : null;
+        } catch (RuntimeException ex) {
+            // Truncated guidepost
+            return null;
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static List<Object> sortDistinct(List<Object> values) {
+        final List<Object> sorted = new ArrayList<>(values);
+        sorted.sort((a, b) -> ((Comparable) a).compareTo(b));
+        final List<Object> distinct = new ArrayList<>();
+        for (Object value : sorted) {
+            if (distinct.isEmpty() || !distinct.get(distinct.size() - 1).equals(value)) {
+                distinct.add(value);
+            }
+        }
+        return distinct;
+    }
+}
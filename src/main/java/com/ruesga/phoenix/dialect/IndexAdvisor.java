@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.ruesga.phoenix.dialect.ExplainedPlan.PlanType;
+
+/**
+ * Records the predicates and projections of the executed queries and recommends the covered
+ * indexes that would save the most scanning, weighted against the write load of each table.
+ */
+public final class IndexAdvisor {
+
+    // Selectivity guesses used in absence of statistics
+    private static final double EQUALITY_SELECTIVITY = 0.1d;
+    private static final double RANGE_SELECTIVITY = 0.3d;
+
+    // Cost of maintaining an index per upsert/delete, relative to a full scan saved. Local indexes
+    // are cheaper to write (same region) but must be probed in every region when read.
+    private static final double GLOBAL_WRITE_COST = 1.0d;
+    private static final double LOCAL_WRITE_COST = 0.4d;
+    private static final double LOCAL_READ_PENALTY = 0.75d;
+
+    private static final Candidate NONE = new Candidate(null, null, null, null, 1.0d);
+
+    // The index a query could use, as analyzed. Immutable, so shared by every execution
+    private static final class Candidate {
+        final String key;
+        final String table;
+        final List<String> columns;
+        final Set<String> includes;
+        final double selectivity;
+
+        Candidate(String key, String table, List<String> columns, Set<String> includes, double selectivity) {
+            this.key = key;
+            this.table = table;
+            this.columns = columns;
+            this.includes = includes;
+            this.selectivity = selectivity;
+        }
+    }
+
+    private static final class Pattern {
+        final String table;
+        final List<String> columns;
+        final Set<String> includes;
+        final LongAdder reads = new LongAdder();
+        final DoubleAdder savings = new DoubleAdder();
+
+        Pattern(Candidate candidate) {
+            this.table = candidate.table;
+            this.columns = candidate.columns;
+            this.includes = candidate.includes;
+        }
+    }
+
+    private final PhoenixMappings mappings;
+    private final BoundedCache<String, Candidate> statements;
+    private final BoundedCache<String, Pattern> patterns;
+    private final Map<String, LongAdder> writes = new ConcurrentHashMap<>();
+
+    public IndexAdvisor(PhoenixMappings mappings, int cacheSize) {
+        this.mappings = mappings;
+        this.statements = new BoundedCache<>(cacheSize);
+        this.patterns = new BoundedCache<>(cacheSize);
+    }
+
+    /**
+     * Records an execution of the query {@code sql}. {@code plan} is its explained plan, if known.
+     */
+    public void recordQuery(String sql, ExplainedPlan plan) {
+        final Candidate candidate = statements.computeIfAbsent(sql, this::analyze);
+        if (candidate == NONE || (plan != null && plan.is(PlanType.POINT_LOOKUP))) {
+            return;
+        }
+        // Looked up on every execution, so the counts always land on the pattern that is reported
+        final Pattern pattern = patterns.computeIfAbsent(candidate.key, k -> new Pattern(candidate));
+        // A full scan reads the whole table; a range or skip scan already narrows part of it
+        final double scanned = plan == null || plan.is(PlanType.FULL_SCAN) ? 1.0d : 0.5d;
+        pattern.reads.increment();
+        pattern.savings.add(scanned * (1.0d - candidate.selectivity));
+    }
+
+    /**
+     * Records an execution of the mutation {@code sql}.
+     */
+    public void recordUpdate(String sql) {
+        recordUpdate(sql, 1);
+    }
+
+    /**
+     * Records {@code rows} executions of the mutation {@code sql}, as of a JDBC batch.
+     */
+    public void recordUpdate(String sql, int rows) {
+        final String table = QueryShape.mutatedTable(sql);
+        if (table != null && rows > 0) {
+            writes.computeIfAbsent(table, t -> new LongAdder()).add(rows);
+        }
+    }
+
+    /**
+     * Returns the recommended indexes, the most profitable first.
+     */
+    public List<IndexRecommendation> recommend() {
+        // Patterns sharing the same indexed columns are served by the same covered index
+        final Map<String, List<Pattern>> candidates = new LinkedHashMap<>();
+        for (Pattern pattern : patterns.asMap().values()) {
+            if (pattern.reads.sum() > 0) {
+                candidates.computeIfAbsent(pattern.table + "|" + pattern.columns, k -> new ArrayList<>())
+                        .add(pattern);
+            }
+        }
+
+        final List<IndexRecommendation> recommendations = new ArrayList<>();
+        for (List<Pattern> group : candidates.values()) {
+            final Pattern first = group.get(0);
+            final Set<String> includes = new LinkedHashSet<>();
+            long reads = 0;
+            double savings = 0;
+            for (Pattern pattern : group) {
+                includes.addAll(pattern.includes);
+                reads += pattern.reads.sum();
+                savings += pattern.savings.sum();
+            }
+            final LongAdder w = writes.get(first.table);
+            final long writeCount = w != null ? w.sum() : 0L;
+
+            final double global = savings - writeCount * GLOBAL_WRITE_COST;
+            final double local = savings * LOCAL_READ_PENALTY - writeCount * LOCAL_WRITE_COST;
+            final double score = Math.max(global, local);
+            if (score > 0) {
+                recommendations.add(new IndexRecommendation(first.table, first.columns,
+                        new ArrayList<>(includes), local > global, reads, writeCount, score));
+            }
+        }
+        recommendations.sort((a, b) -> Double.compare(b.getScore(), a.getScore()));
+        return recommendations;
+    }
+
+    /**
+     * Returns the DDL of the recommended indexes, one statement per line.
+     */
+    public String toDdl() {
+        final StringBuilder sb = new StringBuilder();
+        for (IndexRecommendation recommendation : recommend()) {
+            sb.append(recommendation.getDdl()).append(";\n");
+        }
+        return sb.toString();
+    }
+
+    public void clear() {
+        statements.clear();
+        patterns.clear();
+        writes.clear();
+    }
+
+    private Candidate analyze(String sql) {
+        final QueryShape shape = QueryShape.parse(sql);
+        if (shape == null || shape.hasJoin()) {
+            return NONE;
+        }
+        final TableMapping table = mappings.getTable(shape.getTable());
+        if (table == null || table.getPrimaryKey().isEmpty()) {
+            return NONE;
+        }
+
+        // Leading primary key restrictions are already served by the row key
+        final List<String> pk = table.getPrimaryKey();
+        final String leading = pk.get(0);
+        if (shape.getEqualities().contains(leading) || shape.getInLists().contains(leading)
+                || shape.getRanges().contains(leading)) {
+            return NONE;
+        }
+
+        // Equalities first, then IN lists and at most one range, which ends the usable prefix
+        final List<String> columns = new ArrayList<>();
+        for (String column : shape.getEqualities()) {
+            if (!pk.contains(column)) {
+                columns.add(column);
+            }
+        }
+        for (String column : shape.getInLists()) {
+            if (!pk.contains(column) && !columns.contains(column)) {
+                columns.add(column);
+            }
+        }
+        final int restricted = columns.size();
+        for (String column : shape.getRanges()) {
+            if (!pk.contains(column) && !columns.contains(column)) {
+                columns.add(column);
+                break;
+            }
+        }
+        if (columns.isEmpty()) {
+            return NONE;
+        }
+        final boolean ranged = columns.size() > restricted;
+        if (!ranged) {
+            // Without a range, the index can also return the rows already sorted
+            for (String column : shape.getOrderBy()) {
+                if (!pk.contains(column) && !columns.contains(column)) {
+                    columns.add(column);
+                }
+            }
+        }
+        for (List<String> index : table.getIndexes()) {
+            if (index.size() >= columns.size() && index.subList(0, columns.size()).equals(columns)) {
+                return NONE;
+            }
+        }
+
+        // The primary key is part of every index row, so it never needs to be included
+        final Set<String> includes = new LinkedHashSet<>();
+        includes.addAll(shape.getProjection());
+        includes.addAll(shape.getOtherFilters());
+        includes.addAll(shape.getOrderBy());
+        includes.removeAll(columns);
+        includes.removeAll(pk);
+
+        final double selectivity = Math.pow(EQUALITY_SELECTIVITY, restricted)
+                * (ranged ? RANGE_SELECTIVITY : 1.0d);
+        final String key = table.getQualifiedName() + "|" + columns + "|" + includes + "|" + selectivity;
+        return new Candidate(key, table.getQualifiedName(), Collections.unmodifiableList(columns),
+                Collections.unmodifiableSet(includes), selectivity);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.mapping.Column;
+import org.hibernate.mapping.PersistentClass;
+import org.hibernate.mapping.Table;
+
+import com.ruesga.phoenix.dialect.annotations.PhoenixIndex;
+
+/**
+ * The {@code CREATE INDEX} statement of a Phoenix secondary index.
+ */
+public final class IndexDefinition {
+
+    private final String name;
+    private final String table;
+    private final List<String> columns = new ArrayList<>();
+    private final List<String> includes = new ArrayList<>();
+    private final TableOptions options;
+    private boolean local;
+    private boolean async;
+
+    /**
+     * @param name the index name, already quoted
+     * @param table the indexed table name, already qualified and quoted
+     */
+    public IndexDefinition(String name, String table) {
+        this.name = name;
+        this.table = table;
+        this.options = new TableOptions(name);
+    }
+
+    /**
+     * Adds an indexed column or expression, as SQL.
+     */
+    public IndexDefinition column(String column) {
+        columns.add(column);
+        return this;
+    }
+
+    public IndexDefinition include(String column) {
+        includes.add(column);
+        return this;
+    }
+
+    public IndexDefinition local(boolean local) {
+        this.local = local;
+        return this;
+    }
+
+    public IndexDefinition async(boolean async) {
+        this.async = async;
+        return this;
+    }
+
+    public IndexDefinition apply(PhoenixIndex annotation) {
+        if (annotation.columns().length > 0) {
+            columns.clear();
+            columns.addAll(Arrays.asList(annotation.columns()));
+        }
+        includes.addAll(Arrays.asList(annotation.include()));
+        local = annotation.local();
+        async = annotation.async();
+        options.apply(annotation.options());
+        return this;
+    }
+
+    public String toCreateSql() {
+        final StringBuilder sb = new StringBuilder("create ");
+        if (local) {
+            sb.append("local ");
+        }
+        sb.append("index ").append(name).append(" on ").append(table)
+                .append(" (").append(String.join(", ", columns)).append(')');
+        if (!includes.isEmpty()) {
+            sb.append(" include (").append(String.join(", ", includes)).append(')');
+        }
+        if (async) {
+            sb.append(" async");
+        }
+        final String indexOptions = options.toSql();
+        if (!indexOptions.isEmpty()) {
+            sb.append(' ').append(indexOptions);
+        }
+        return sb.toString();
+    }
+
+    public String toDropSql() {
+        return "drop index if exists " + name + " on " + table;
+    }
+
+    @Override
+    public String toString() {
+        return toCreateSql();
+    }
+
+    /**
+     * Returns the definition of the index {@code name} of {@code table} on {@code columns}, refined
+     * by the {@link PhoenixIndex} with the same name of the entities mapped to the table, if any.
+     */
+    public static IndexDefinition of(Dialect dialect, Metadata metadata, Table table, String name,
+            Iterator<Column> columns, Map<Column, String> columnOrder) {
+        final String tableName = metadata.getDatabase().getJdbcEnvironment().getQualifiedObjectNameFormatter()
+                .format(table.getQualifiedTableName(), dialect);
+        final IndexDefinition definition = new IndexDefinition(dialect.quote(name), tableName);
+        while (columns.hasNext()) {
+            final Column column = columns.next();
+            final String order = columnOrder.get(column);
+            definition.column(column.getQuotedName(dialect) + (order != null ? " " + order : ""));
+        }
+        final PhoenixIndex annotation = findAnnotation(PhoenixMappings.getEntities(table, metadata), name);
+        if (annotation != null) {
+            definition.apply(annotation);
+        }
+        return definition;
+    }
+
+    /**
+     * Returns the {@link PhoenixIndex} named {@code name} of the {@code entities}, if any.
+     */
+    public static PhoenixIndex findAnnotation(List<PersistentClass> entities, String name) {
+        for (PersistentClass entity : entities) {
+            for (PhoenixIndex index : entity.getMappedClass().getAnnotationsByType(PhoenixIndex.class)) {
+                if (index.name().equalsIgnoreCase(name)) {
+                    return index;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A covered index recommended by the {@link IndexAdvisor}.
+ */
+public final class IndexRecommendation {
+
+    private final String table;
+    private final List<String> columns;
+    private final List<String> includes;
+    private final boolean local;
+    private final long reads;
+    private final long writes;
+    private final double score;
+
+    IndexRecommendation(String table, List<String> columns, List<String> includes, boolean local,
+            long reads, long writes, double score) {
+        this.table = table;
+        this.columns = Collections.unmodifiableList(columns);
+        this.includes = Collections.unmodifiableList(includes);
+        this.local = local;
+        this.reads = reads;
+        this.writes = writes;
+        this.score = score;
+    }
+
+    /**
+     * The indexed table, in the form {@code SCHEMA.TABLE}.
+     */
+    public String getTable() {
+        return table;
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public List<String> getIncludes() {
+        return includes;
+    }
+
+    public boolean isLocal() {
+        return local;
+    }
+
+    /**
+     * The number of recorded queries served by this index.
+     */
+    public long getReads() {
+        return reads;
+    }
+
+    /**
+     * The number of recorded mutations that would have to maintain this index.
+     */
+    public long getWrites() {
+        return writes;
+    }
+
+    /**
+     * The estimated number of full table scans saved, net of the index maintenance cost.
+     */
+    public double getScore() {
+        return score;
+    }
+
+    public String getIndexName() {
+        final int dot = table.lastIndexOf('.');
+        return table.substring(dot + 1) + "_" + String.join("_", columns) + "_IDX";
+    }
+
+    public String getDdl() {
+        final StringBuilder sb = new StringBuilder("CREATE ");
+        if (local) {
+            sb.append("LOCAL ");
+        }
+        sb.append("INDEX IF NOT EXISTS ").append(quote(getIndexName())).append(" ON ");
+        final int dot = table.lastIndexOf('.');
+        if (dot != -1) {
+            sb.append(quote(table.substring(0, dot))).append('.');
+        }
+        sb.append(quote(table.substring(dot + 1))).append(" (").append(quote(columns)).append(')');
+        if (!includes.isEmpty()) {
+            sb.append(" INCLUDE (").append(quote(includes)).append(')');
+        }
+        return sb.toString();
+    }
+
+    private static String quote(List<String> names) {
+        final StringBuilder sb = new StringBuilder();
+        for (String name : names) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(quote(name));
+        }
+        return sb.toString();
+    }
+
+    private static String quote(String name) {
+        return "\"" + name + "\"";
+    }
+
+    @Override
+    public String toString() {
+        return getDdl() + " -- reads=" + reads + ", writes=" + writes + ", score=" + score;
+    }
+}
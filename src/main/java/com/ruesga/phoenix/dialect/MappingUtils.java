@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Member;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.MappingException;
+import org.hibernate.mapping.Column;
+import org.hibernate.mapping.Component;
+import org.hibernate.mapping.PersistentClass;
+import org.hibernate.mapping.Property;
+import org.hibernate.mapping.ToOne;
+
+public final class MappingUtils {
+
+    private MappingUtils() {
+    }
+
+    /**
+     * Returns the annotation {@code type} of the field or getter of {@code property} in
+     * {@code owner}, if any.
+     */
+    public static <A extends Annotation> A getAnnotation(Class<?> owner, Property property, Class<A> type) {
+        final Member member;
+        try {
+            member = property.getGetter(owner).getMember();
+        } catch (MappingException ex) {
+            return null;
+        }
+        if (!(member instanceof AnnotatedElement)) {
+            return null;
+        }
+        return ((AnnotatedElement) member).getAnnotation(type);
+    }
+
+    /**
+     * Returns the identifier attributes of {@code entity}, with the class that declares them.
+     */
+    public static Map<Property, Class<?>> getIdentifierProperties(PersistentClass entity) {
+        // Composite keys are either mapped by the entity itself or by an embedded id class
+        final Map<Property, Class<?>> properties = new LinkedHashMap<>();
+        if (entity.getIdentifierMapper() != null) {
+            final Iterator<?> it = entity.getIdentifierMapper().getPropertyIterator();
+            it.forEachRemaining(p -> properties.put((Property) p, entity.getMappedClass()));
+        } else if (entity.getIdentifierProperty() != null) {
+            final Property id = entity.getIdentifierProperty();
+            if (id.getValue() instanceof Component) {
+                final Component component = (Component) id.getValue();
+                final Iterator<?> it = component.getPropertyIterator();
+                it.forEachRemaining(p -> properties.put((Property) p, component.getComponentClass()));
+            } else {
+                properties.put(id, entity.getMappedClass());
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Returns the HQL path (relative to the entity alias) of the identifier attribute of
+     * {@code entity} mapped to {@code column} (as normalized by Phoenix), or {@code null} if none.
+     */
+    public static String getIdentifierPath(PersistentClass entity, String column) {
+        final Property id = entity.getIdentifierProperty();
+        final String prefix = entity.getIdentifierMapper() == null && id != null
+                && id.getValue() instanceof Component ? id.getName() + "." : "";
+        for (Property property : getIdentifierProperties(entity).keySet()) {
+            if (property.getColumnSpan() != 1) {
+                continue;
+            }
+            final Column c = (Column) property.getColumnIterator().next();
+            if (QueryUtils.normalizeIdentifier(c.getName(), c.isQuoted()).equals(column)) {
+                // Associations are restricted through the identifier of the referenced entity
+                return prefix + property.getName() + (property.getValue() instanceof ToOne ? ".id" : "");
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the columns of the natural id of {@code entity}, in declaration order. Empty if the
+     * entity has no natural id.
+     */
+    public static List<Column> getNaturalIdColumns(PersistentClass entity) {
+        final List<Column> columns = new ArrayList<>();
+        if (!entity.hasNaturalId()) {
+            return columns;
+        }
+        final Iterator<?> it = entity.getRootClass().getPropertyIterator();
+        while (it.hasNext()) {
+            final Property property = (Property) it.next();
+            if (!property.isNaturalIdentifier()) {
+                continue;
+            }
+            final Iterator<?> columnIt = property.getColumnIterator();
+            while (columnIt.hasNext()) {
+                final Object selectable = columnIt.next();
+                if (selectable instanceof Column) {
+                    columns.add((Column) selectable);
+                }
+            }
+        }
+        return columns;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.hibernate.HibernateException;
+import org.hibernate.SessionFactory;
+import org.hibernate.SessionFactoryObserver;
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.jdbc.connections.spi.JdbcConnectionAccess;
+import org.hibernate.engine.spi.NamedQueryDefinition;
+import org.hibernate.engine.spi.NamedSQLQueryDefinition;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.jboss.logging.Logger;
+
+/**
+ * Explains the named queries of the persistence unit once the session factory is built,
+ * so flagged plans are reported (or rejected) at bootstrap instead of at first use.
+ */
+public class NamedQueryExplainer implements SessionFactoryObserver {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOG = Logger.getLogger(NamedQueryExplainer.class);
+
+    private final QueryPlanGuard guard;
+    private final List<String> hqlQueries = new ArrayList<>();
+    private final List<String> sqlQueries = new ArrayList<>();
+
+    public NamedQueryExplainer(QueryPlanGuard guard, Metadata metadata) {
+        this.guard = guard;
+        for (NamedQueryDefinition definition : metadata.getNamedQueryDefinitions()) {
+            hqlQueries.add(definition.getQueryString());
+        }
+        for (NamedSQLQueryDefinition definition : metadata.getNamedNativeQueryDefinitions()) {
+            sqlQueries.add(definition.getQueryString());
+        }
+    }
+
+    @Override
+    public void sessionFactoryCreated(SessionFactory factory) {
+        final SessionFactoryImplementor sessionFactory = (SessionFactoryImplementor) factory;
+        final List<String> statements = new ArrayList<>(sqlQueries);
+        for (String hql : hqlQueries) {
+            try {
+                Collections.addAll(statements, sessionFactory.getQueryPlanCache()
+                        .getHQLQueryPlan(hql, false, Collections.emptyMap()).getSqlStrings());
+            } catch (HibernateException ex) {
+                LOG.debugf(ex, "Unable to translate named query %s", hql);
+            }
+        }
+        if (statements.isEmpty()) {
+            return;
+        }
+
+        final JdbcConnectionAccess access = sessionFactory.getJdbcServices().getBootstrapJdbcConnectionAccess();
+        Connection connection = null;
+        try {
+            connection = access.obtainConnection();
+            for (String sql : statements) {
+                guard.check(sql, connection);
+            }
+        } catch (SQLException ex) {
+            LOG.warn("Unable to explain the named queries", ex);
+        } finally {
+            if (connection != null) {
+                try {
+                    access.releaseConnection(connection);
+                } catch (SQLException ex) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    @Override
+    public void sessionFactoryClosed(SessionFactory factory) {
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import org.hibernate.CacheMode;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.query.Query;
+import org.jboss.logging.Logger;
+
+/**
+ * Runs a read query over an entity in parallel: the table is split in ranges of its leading primary
+ * key column, taken from the guideposts of the table statistics (or from its region boundaries
+ * if there are no statistics yet), and every range is read in its own session and connection.
+ * <p>
+ * The entities returned are detached. Results are delivered in the order of the leading primary
+ * key column if the query is {@link #setOrdered(boolean) ordered}, or as the ranges complete.
+ *
+ * <pre>
+ * List&lt;Salary&gt; salaries = ParallelQuery.of(sessionFactory, Salary.class, "s")
+ *         .where("s.salary &gt; :salary")
+ *         .setParameter("salary", 80000d)
+ *         .setParallelism(8)
+ *         .list();
+ * </pre>
+ */
+public final class ParallelQuery<T> {
+
+    private static final Logger LOG = Logger.getLogger(ParallelQuery.class);
+
+    private static final String LOWER_BOUND = "phoenix_lower_bound";
+    private static final String UPPER_BOUND = "phoenix_upper_bound";
+
+    private final SessionFactory sessionFactory;
+    private final Class<T> entityClass;
+    private final String alias;
+    private String restriction;
+    private final Map<String, Object> parameters = new LinkedHashMap<>();
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int chunks = -1;
+    private boolean ordered;
+    private ExecutorService executor;
+
+    private ParallelQuery(SessionFactory sessionFactory, Class<T> entityClass, String alias) {
+        this.sessionFactory = sessionFactory;
+        this.entityClass = entityClass;
+        this.alias = alias;
+    }
+
+    /**
+     * Creates a parallel query over all the {@code entityClass} entities, aliased as {@code alias}.
+     */
+    public static <T> ParallelQuery<T> of(SessionFactory sessionFactory, Class<T> entityClass, String alias) {
+        return new ParallelQuery<>(sessionFactory, entityClass, alias);
+    }
+
+    /**
+     * Restricts the query with the HQL condition {@code restriction}.
+     */
+    public ParallelQuery<T> where(String restriction) {
+        this.restriction = restriction;
+        return this;
+    }
+
+    public ParallelQuery<T> setParameter(String name, Object value) {
+        parameters.put(name, value);
+        return this;
+    }
+
+    /**
+     * The number of ranges read at the same time. Defaults to the available processors.
+     */
+    public ParallelQuery<T> setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    /**
+     * The maximum number of ranges the table is split in. Defaults to four per parallel read, so
+     * that a slow range doesn't hold up the whole query.
+     */
+    public ParallelQuery<T> setChunks(int chunks) {
+        this.chunks = Math.max(1, chunks);
+        return this;
+    }
+
+    /**
+     * Whether the results are returned in the order of the leading primary key column.
+     */
+    public ParallelQuery<T> setOrdered(boolean ordered) {
+        this.ordered = ordered;
+        return this;
+    }
+
+    /**
+     * The executor that reads the ranges. By default, a pool of {@code parallelism} threads is
+     * created for every execution.
+     */
+    public ParallelQuery<T> setExecutor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    public List<T> list() {
+        final List<T> results = new ArrayList<>();
+        forEach(results::add);
+        return results;
+    }
+
+    /**
+     * Passes every result to {@code action}, in the calling thread, as the ranges are read.
+     */
+    public void forEach(Consumer<? super T> action) {
+        final PhoenixDialect dialect = getDialect();
+        final TableMapping table = dialect != null && dialect.getMappings() != null
+                ? dialect.getMappings().getTable(entityClass) : null;
+        final List<Object[]> ranges = new ArrayList<>();
+        String path = null;
+        if (table != null) {
+            final Guideposts guideposts = readGuideposts(table);
+            if (guideposts != null) {
+                path = MappingUtils.getIdentifierPath(table.getEntity(), guideposts.getLeadingColumn());
+                if (path != null) {
+                    ranges.addAll(toRanges(splitPoints(guideposts.getLeadingValues(),
+                            chunks > 0 ? chunks : parallelism * 4)));
+                }
+            }
+        }
+        if (ranges.isEmpty()) {
+            ranges.add(new Object[]{null, null});
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debugf("Reading %s in %d ranges of %s", entityClass.getName(), ranges.size(), path);
+        }
+
+        final ExecutorService pool = executor != null ? executor
+                : Executors.newFixedThreadPool(Math.min(parallelism, ranges.size()), r -> {
+                    final Thread thread = new Thread(r, "phoenix-parallel-query");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        final List<Future<List<T>>> futures = new ArrayList<>();
+        try {
+            final CompletionService<List<T>> completion = new ExecutorCompletionService<>(pool);
+            final Map<Future<List<T>>, Integer> indexes = new HashMap<>();
+            for (int i = 0; i < ranges.size(); i++) {
+                final String hql = buildQuery(path, ranges.get(i));
+                final Object[] range = ranges.get(i);
+                final Future<List<T>> future = completion.submit(() -> read(hql, range, dialect));
+                futures.add(future);
+                indexes.put(future, i);
+            }
+
+            // Ordered results are held until all the previous ranges are delivered
+            final Map<Integer, List<T>> pending = new HashMap<>();
+            int next = 0;
+            for (int i = 0; i < ranges.size(); i++) {
+                final Future<List<T>> done = completion.take();
+                if (!ordered) {
+                    done.get().forEach(action);
+                    continue;
+                }
+                pending.put(indexes.get(done), done.get());
+                while (pending.containsKey(next)) {
+                    pending.remove(next++).forEach(action);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new HibernateException("Interrupted while reading " + entityClass.getName(), ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new HibernateException("Unable to read " + entityClass.getName(), ex.getCause());
+        } finally {
+            futures.forEach(f -> f.cancel(true));
+            if (executor == null) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    private Guideposts readGuideposts(TableMapping table) {
+        final Session session = sessionFactory.openSession();
+        try {
+            return session.doReturningWork(connection -> Guideposts.read(connection, table.getQualifiedName()));
+        } catch (HibernateException ex) {
+            LOG.warnf(ex, "Unable to read the guideposts of %s. Reading it in a single range",
+                    table.getQualifiedName());
+            return null;
+        } finally {
+            session.close();
+        }
+    }
+
+    private List<T> read(String hql, Object[] range, PhoenixDialect dialect) {
+        final Session session = sessionFactory.openSession();
+        try {
+            session.setDefaultReadOnly(true);
+            final Query<T> query = session.createQuery(hql, entityClass);
+            for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+                query.setParameter(parameter.getKey(), parameter.getValue());
+            }
+            if (range[0] != null) {
+                query.setParameter(LOWER_BOUND, range[0]);
+            }
+            if (range[1] != null) {
+                query.setParameter(UPPER_BOUND, range[1]);
+            }
+            if (dialect != null) {
+                query.setFetchSize(dialect.getStreamingFetchSize(entityClass));
+            }
+            query.addQueryHint(PhoenixStreams.HINT_NO_CACHE);
+            query.setCacheMode(CacheMode.IGNORE);
+            return query.list();
+        } finally {
+            session.close();
+        }
+    }
+
+    private String buildQuery(String path, Object[] range) {
+        final List<String> conditions = new ArrayList<>();
+        if (restriction != null && !restriction.trim().isEmpty()) {
+            conditions.add("(" + restriction + ")");
+        }
+        if (range[0] != null) {
+            conditions.add(alias + "." + path + " >= :" + LOWER_BOUND);
+        }
+        if (range[1] != null) {
+            conditions.add(alias + "." + path + " < :" + UPPER_BOUND);
+        }
+        final StringBuilder hql = new StringBuilder("select ").append(alias)
+                .append(" from ").append(entityClass.getName()).append(" ").append(alias);
+        if (!conditions.isEmpty()) {
+            hql.append(" where ").append(String.join(" and ", conditions));
+        }
+        if (ordered && path != null) {
+            hql.append(" order by ").append(alias).append(".").append(path);
+        }
+        return hql.toString();
+    }
+
+    private PhoenixDialect getDialect() {
+        final Dialect dialect = ((SessionFactoryImplementor) sessionFactory).getJdbcServices().getDialect();
+        return dialect instanceof PhoenixDialect ? (PhoenixDialect) dialect : null;
+    }
+
+    /**
+     * Picks at most {@code chunks - 1} evenly spaced split points from the sorted {@code values}.
+     */
+    static List<Object> splitPoints(List<Object> values, int chunks) {
+        if (chunks <= 1 || values.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (values.size() < chunks) {
+            return values;
+        }
+        final List<Object> points = new ArrayList<>();
+        for (int i = 1; i < chunks; i++) {
+            final Object point = values.get((int) ((long) i * values.size() / chunks));
+            if (points.isEmpty() || !points.get(points.size() - 1).equals(point)) {
+                points.add(point);
+            }
+        }
+        return points;
+    }
+
+    /**
+     * The half-open ranges delimited by {@code points}, as {@code [lower, upper)} pairs where
+     * {@code null} means unbounded.
+     */
+    static List<Object[]> toRanges(List<Object> points) {
+        final List<Object[]> ranges = new ArrayList<>();
+        Object lower = null;
+        for (Object point : points) {
+            ranges.add(new Object[]{lower, point});
+            lower = point;
+        }
+        ranges.add(new Object[]{lower, null});
+        return ranges;
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.lang.ref.WeakReference;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.phoenix.jdbc.PhoenixConnection;
+import org.apache.phoenix.jdbc.PhoenixDriver;
+import org.apache.phoenix.query.ConnectionQueryServices;
+import org.apache.phoenix.query.QueryServices;
+import org.apache.phoenix.util.PhoenixRuntime;
+import org.apache.phoenix.util.PropertiesUtil;
+import org.hibernate.HibernateException;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.jdbc.connections.internal.ConnectionProviderInitiator;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.service.UnknownUnwrapTypeException;
+import org.hibernate.service.spi.Configurable;
+import org.hibernate.service.spi.Stoppable;
+import org.jboss.logging.Logger;
+
+/**
+ * A {@link ConnectionProvider} for Phoenix, to be used instead of a generic connection pool.
+ * Phoenix connections are lightweight wrappers over the HBase connection of their
+ * {@link ConnectionQueryServices}, so there is nothing to pool or validate: every connection is
+ * opened straight from the same query services, with the configured Phoenix properties.
+ * <p>
+ * Every thread keeps the last connection it released (if still open), rolled back, and reuses it
+ * the next time, along with the state Phoenix keeps per connection. The connections kept by the
+ * threads that are gone are closed as other connections are released. The time taken to acquire
+ * the connections is recorded, in microseconds.
+ * <p>
+ * The query services are created by the driver once per url, with the properties of the first
+ * connection, so {@link #SCANNER_CACHING} is ignored if they already exist (for example, if another
+ * persistence unit or plain JDBC code connected to the same url first).
+ *
+ * <pre>
+ * &lt;property name="hibernate.connection.provider_class"
+ *     value="com.ruesga.phoenix.dialect.PhoenixConnectionProvider"/&gt;
+ * </pre>
+ */
+public class PhoenixConnectionProvider implements ConnectionProvider, Configurable, Stoppable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOG = Logger.getLogger(PhoenixConnectionProvider.class);
+
+    public static final String MUTATE_BATCH_SIZE = "phoenix.connection.mutate_batch_size";
+    public static final String SCANNER_CACHING = "phoenix.connection.scanner_caching";
+    public static final String REUSE_PER_THREAD = "phoenix.connection.reuse_per_thread";
+
+    private String url;
+    private final Properties properties = new Properties();
+    private boolean autoCommit = false;
+    private boolean reusePerThread = true;
+
+    private transient volatile ConnectionQueryServices services;
+    private final transient ThreadLocal<PhoenixConnection> released = new ThreadLocal<>();
+    // The connections kept by each thread, by the thread keeping them
+    private final transient Map<PhoenixConnection, WeakReference<Thread>> kept = new ConcurrentHashMap<>();
+    private volatile boolean stopped = false;
+
+    private final MetricHistogram acquisitionTimes = new MetricHistogram();
+    private final LongAdder opened = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+
+    @Override
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public void configure(Map configurationValues) {
+        url = ConfigurationHelper.getString(AvailableSettings.URL, configurationValues,
+                ConfigurationHelper.getString(AvailableSettings.JPA_JDBC_URL, configurationValues, null));
+        if (url == null) {
+            throw new HibernateException("No JDBC URL specified by property " + AvailableSettings.URL);
+        }
+
+        properties.putAll(ConnectionProviderInitiator.getConnectionProperties(configurationValues));
+        autoCommit = ConfigurationHelper.getBoolean(AvailableSettings.AUTOCOMMIT, configurationValues, false);
+        properties.setProperty(PhoenixRuntime.AUTO_COMMIT_ATTRIB, Boolean.toString(autoCommit));
+        final String mutateBatchSize = ConfigurationHelper.getString(MUTATE_BATCH_SIZE, configurationValues);
+        if (mutateBatchSize != null) {
+            properties.setProperty(QueryServices.MUTATE_BATCH_SIZE_ATTRIB, mutateBatchSize);
+        }
+        // Read by the query services, when created (ignored if the driver already created them)
+        final String scannerCaching = ConfigurationHelper.getString(SCANNER_CACHING, configurationValues);
+        if (scannerCaching != null) {
+            properties.setProperty(QueryServices.SCAN_CACHE_SIZE_ATTRIB, scannerCaching);
+        }
+        reusePerThread = ConfigurationHelper.getBoolean(REUSE_PER_THREAD, configurationValues, true);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        final long start = System.nanoTime();
+        PhoenixConnection connection = null;
+        if (reusePerThread) {
+            connection = released.get();
+            if (connection != null) {
+                released.remove();
+                kept.remove(connection);
+                if (connection.isClosed()) {
+                    StatementCache.closed(connection);
+                    connection = null;
+                } else {
+                    reused.increment();
+                }
+            }
+        }
+        if (connection == null) {
+            connection = getServices().connect(url, PropertiesUtil.deepCopy(properties));
+            opened.increment();
+        }
+        acquisitionTimes.record((System.nanoTime() - start) / 1000L);
+        return connection;
+    }
+
+    @Override
+    public void closeConnection(Connection conn) throws SQLException {
+        if (conn == null) {
+            return;
+        }
+        final PhoenixConnection connection = conn.unwrap(PhoenixConnection.class);
+        if (reusePerThread && !stopped && released.get() == null && !connection.isClosed()) {
+            try {
+                // Left as if just opened
+                if (!connection.getAutoCommit()) {
+                    connection.rollback();
+                }
+                connection.setAutoCommit(autoCommit);
+                connection.setReadOnly(false);
+                released.set(connection);
+                kept.put(connection, new WeakReference<>(Thread.currentThread()));
+                closeOrphans();
+                return;
+            } catch (SQLException ex) {
+                LOG.debugf(ex, "Unable to keep the connection %s for reuse", connection);
+            }
+        }
+        StatementCache.closed(connection);
+        connection.close();
+    }
+
+    // The slot of a thread dies with it, so nobody would reuse (nor close) its connection
+    private void closeOrphans() {
+        for (Map.Entry<PhoenixConnection, WeakReference<Thread>> entry : kept.entrySet()) {
+            final Thread thread = entry.getValue().get();
+            if ((thread == null || !thread.isAlive()) && kept.remove(entry.getKey()) != null) {
+                close(entry.getKey());
+            }
+        }
+    }
+
+    private void close(PhoenixConnection connection) {
+        StatementCache.closed(connection);
+        try {
+            connection.close();
+        } catch (SQLException ex) {
+            LOG.debugf(ex, "Unable to close the connection %s", connection);
+        }
+    }
+
+    private ConnectionQueryServices getServices() throws SQLException {
+        if (services == null) {
+            synchronized (this) {
+                if (services == null) {
+                    // The driver creates (and caches) the query services of the url
+                    final Connection first = PhoenixDriver.INSTANCE.connect(url, PropertiesUtil.deepCopy(properties));
+                    try {
+                        services = first.unwrap(PhoenixConnection.class).getQueryServices();
+                    } finally {
+                        first.close();
+                    }
+                    final String scannerCaching = properties.getProperty(QueryServices.SCAN_CACHE_SIZE_ATTRIB);
+                    if (scannerCaching != null && !scannerCaching.equals(
+                            services.getProps().get(QueryServices.SCAN_CACHE_SIZE_ATTRIB))) {
+                        LOG.warnf("%s is ignored: the query services of %s were already created",
+                                SCANNER_CACHING, url);
+                    }
+                }
+            }
+        }
+        return services;
+    }
+
+    @Override
+    public boolean supportsAggressiveRelease() {
+        return false;
+    }
+
+    /**
+     * The time taken to acquire the connections, in microseconds.
+     */
+    public MetricHistogram getAcquisitionTimes() {
+        return acquisitionTimes;
+    }
+
+    /**
+     * The connections opened.
+     */
+    public long getOpenedConnections() {
+        return opened.sum();
+    }
+
+    /**
+     * The connections reused by the thread that released them.
+     */
+    public long getReusedConnections() {
+        return reused.sum();
+    }
+
+    @Override
+    public void stop() {
+        stopped = true;
+        for (PhoenixConnection connection : kept.keySet()) {
+            close(connection);
+        }
+        kept.clear();
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public boolean isUnwrappableAs(Class unwrapType) {
+        return ConnectionProvider.class.equals(unwrapType)
+                || PhoenixConnectionProvider.class.isAssignableFrom(unwrapType);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> unwrapType) {
+        if (isUnwrappableAs(unwrapType)) {
+            return (T) this;
+        }
+        throw new UnknownUnwrapTypeException(unwrapType);
+    }
+}
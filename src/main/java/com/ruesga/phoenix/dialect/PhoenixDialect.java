@@ -16,12 +16,18 @@
 package com.ruesga.phoenix.dialect;
 
 import java.sql.Types;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-import org.apache.commons.lang.StringUtils;
 import org.hibernate.MappingException;
 import org.hibernate.boot.Metadata;
+import org.hibernate.boot.model.TypeContributions;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.BatchLoadSizingStrategy;
 import org.hibernate.dialect.Dialect;
 import org.hibernate.dialect.function.NoArgSQLFunction;
 import org.hibernate.dialect.function.SQLFunctionTemplate;
@@ -30,20 +36,57 @@ import org.hibernate.dialect.pagination.AbstractLimitHandler;
 import org.hibernate.dialect.pagination.LimitHandler;
 import org.hibernate.dialect.pagination.LimitHelper;
 import org.hibernate.dialect.unique.UniqueDelegate;
-import org.hibernate.engine.jdbc.env.spi.JdbcEnvironment;
 import org.hibernate.engine.jdbc.env.spi.NameQualifierSupport;
+import org.hibernate.engine.spi.QueryParameters;
 import org.hibernate.engine.spi.RowSelection;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.loader.BatchFetchStyle;
 import org.hibernate.mapping.Column;
+import org.hibernate.mapping.Index;
 import org.hibernate.mapping.Table;
 import org.hibernate.mapping.UniqueKey;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.tool.schema.spi.Exporter;
+import org.hibernate.type.CustomType;
 import org.hibernate.type.StandardBasicTypes;
+import org.hibernate.type.Type;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 
+import com.ruesga.phoenix.dialect.types.DoubleArrayType;
+import com.ruesga.phoenix.dialect.types.IntArrayType;
+import com.ruesga.phoenix.dialect.types.ListArrayType;
+import com.ruesga.phoenix.dialect.types.LongArrayType;
+import com.ruesga.phoenix.dialect.types.StringArrayType;
+
 import de.invesdwin.instrument.DynamicInstrumentationLoader;
 
 public class PhoenixDialect extends Dialect {
 
     public static final String HINT_SECONDARY_INDEX = "phoenix.secondary.index";
+    public static final String HINT_SMALL_SCANS = "phoenix.hint.small_scans";
+    public static final String HINT_SMALL_SCANS_MAX_ROWS = "phoenix.hint.small_scans.max_rows";
+    public static final String EXPLAIN_POLICY = "phoenix.explain.policy";
+    public static final String EXPLAIN_FLAGGED_PLANS = "phoenix.explain.flagged_plans";
+    public static final String EXPLAIN_CACHE_SIZE = "phoenix.explain.cache_size";
+    public static final String EXPLAIN_NAMED_QUERIES = "phoenix.explain.named_queries";
+    public static final String INDEX_ADVISOR = "phoenix.index_advisor";
+    public static final String INDEX_ADVISOR_CACHE_SIZE = "phoenix.index_advisor.cache_size";
+    public static final String REQUEST_METRICS = "phoenix.metrics";
+    public static final String REQUEST_METRICS_CACHE_SIZE = "phoenix.metrics.cache_size";
+    public static final String REQUEST_METRICS_JMX = "phoenix.metrics.jmx";
+    public static final String TABLE_OPTIONS_PREFIX = "phoenix.table_options.";
+    public static final String COMPACT_TYPES = "phoenix.compact_types";
+    public static final String STREAMING_FETCH_SIZE = "phoenix.streaming.fetch_size";
+    public static final String STREAMING_FETCH_BYTES = "phoenix.streaming.fetch_bytes";
+    public static final String STATISTICS_CACHE_TTL = "phoenix.statistics.cache_ttl";
+    public static final String STATISTICS_AUTO_UPDATE = "phoenix.statistics.auto_update";
+    public static final String STATISTICS_UPDATE_THRESHOLD = "phoenix.statistics.update_threshold";
+    public static final String STATISTICS_UPDATE_THREADS = "phoenix.statistics.update_threads";
+    public static final String IN_LIST_MAX_SIZE = "phoenix.in_list.max_size";
+    public static final String SNAPSHOT_CACHE_SIZE = "phoenix.snapshot.cache_size";
+    public static final String SNAPSHOT_CACHE_MAX_ROWS = "phoenix.snapshot.cache_max_rows";
+    public static final String SNAPSHOT_CACHE_MARGIN = "phoenix.snapshot.cache_margin";
+    public static final String STATEMENT_CACHE_SIZE = "phoenix.statement_cache.size";
 
     public static class SecondaryIndexHint {
         private final String table;
@@ -68,6 +111,44 @@ public class PhoenixDialect extends Dialect {
         }
     }
 
+    private boolean smallScanHints = false;
+    private int smallScanMaxRows = 100;
+
+    private boolean explainNamedQueries = false;
+
+    private boolean indexAdvisorEnabled = false;
+    private int indexAdvisorCacheSize = 1024;
+
+    private boolean requestMetricsEnabled = false;
+    private int requestMetricsCacheSize = 1024;
+    private boolean requestMetricsJmx = false;
+
+    private boolean compactTypes = false;
+
+    private int streamingFetchSize = 1000;
+    private int streamingFetchBytes = 2 * 1024 * 1024;
+
+    private RowCountEstimator rowCountEstimator = new RowCountEstimator(300000L);
+    private boolean statisticsAutoUpdate = false;
+    private int inListMaxSize = 1000;
+    private int statisticsUpdateThreshold = 100000;
+    private int statisticsUpdateThreads = 1;
+    private BoundedCache<List<Object>, List<?>> snapshotCache = new BoundedCache<>(256);
+    private int snapshotCacheMaxRows = 1000;
+    private long snapshotCacheMargin = 60000L;
+    private StatementCache statementCache;
+
+    private final Map<String, String> tableOptions = new HashMap<>();
+    private final PhoenixTableExporter tableExporter = new PhoenixTableExporter(this);
+    private final PhoenixIndexExporter indexExporter = new PhoenixIndexExporter(this);
+
+    private PhoenixMappings mappings;
+    private SmallScanClassifier smallScanClassifier;
+    private QueryPlanGuard queryPlanGuard;
+    private IndexAdvisor indexAdvisor;
+    private RequestMetrics requestMetrics;
+    private StatisticsMaintainer statisticsMaintainer;
+
     private static ClassPathXmlApplicationContext ctx;
     static {
         register();
@@ -119,6 +200,25 @@ public class PhoenixDialect extends Dialect {
         registerFunction("stddev_pop", new StandardSQLFunction("stddev_pop", StandardBasicTypes.DOUBLE));
         registerFunction("stddev_samp", new StandardSQLFunction("stddev_samp", StandardBasicTypes.DOUBLE));
 
+        // Top-N aggregates, typed after the aggregated expression (FIRST_VALUES/LAST_VALUES return a list)
+        final Type valuesType = new CustomType(new ListArrayType());
+        for (String order : new String[] {"asc", "desc"}) {
+            registerFunction("first_value_" + order, new SQLFunctionTemplate(
+                    null, "FIRST_VALUE(?1) WITHIN GROUP (ORDER BY ?2 " + order.toUpperCase() + ")"));
+            registerFunction("last_value_" + order, new SQLFunctionTemplate(
+                    null, "LAST_VALUE(?1) WITHIN GROUP (ORDER BY ?2 " + order.toUpperCase() + ")"));
+            registerFunction("nth_value_" + order, new SQLFunctionTemplate(
+                    null, "NTH_VALUE(?1, ?2) WITHIN GROUP (ORDER BY ?3 " + order.toUpperCase() + ")"));
+            registerFunction("first_values_" + order, new SQLFunctionTemplate(
+                    valuesType, "FIRST_VALUES(?1, ?2) WITHIN GROUP (ORDER BY ?3 " + order.toUpperCase() + ")"));
+            registerFunction("last_values_" + order, new SQLFunctionTemplate(
+                    valuesType, "LAST_VALUES(?1, ?2) WITHIN GROUP (ORDER BY ?3 " + order.toUpperCase() + ")"));
+        }
+        registerFunction("distinct_count", new StandardSQLFunction("distinct_count", StandardBasicTypes.LONG));
+        registerFunction("approx_count_distinct", new StandardSQLFunction(
+                "approx_count_distinct", StandardBasicTypes.LONG));
+        registerFunction("approx_count", new ApproximateCountFunction());
+
         registerFunction("upper", new StandardSQLFunction("upper", StandardBasicTypes.STRING));
         registerFunction("lower", new StandardSQLFunction("lower", StandardBasicTypes.STRING));
         registerFunction("reverse", new StandardSQLFunction("reverse", StandardBasicTypes.STRING));
@@ -167,6 +267,241 @@ public class PhoenixDialect extends Dialect {
         registerFunction("floor", new StandardSQLFunction("floor", StandardBasicTypes.DOUBLE));
         registerFunction("to_number", new StandardSQLFunction("to_number", StandardBasicTypes.DOUBLE));
         registerFunction("rand", new NoArgSQLFunction("rand", StandardBasicTypes.DOUBLE));
+
+        registerFunction("array_elem", new ArrayElementFunction());
+        registerFunction("array_length", new StandardSQLFunction("array_length", StandardBasicTypes.INTEGER));
+        registerFunction("array_any", new SQLFunctionTemplate(StandardBasicTypes.BOOLEAN, "(?1 = ANY(?2))"));
+        registerFunction("array_all", new SQLFunctionTemplate(StandardBasicTypes.BOOLEAN, "(?1 = ALL(?2))"));
+        registerFunction("array_to_string", new StandardSQLFunction("array_to_string", StandardBasicTypes.STRING));
+
+        // Lazy associations and collections are batch fetched with IN lists padded to a few sizes,
+        // each one a single skip scan over the row keys (https://phoenix.apache.org/skip_scan.html)
+        getDefaultProperties().setProperty(AvailableSettings.DEFAULT_BATCH_FETCH_SIZE, "16");
+        getDefaultProperties().setProperty(AvailableSettings.BATCH_FETCH_STYLE, BatchFetchStyle.PADDED.name());
+    }
+
+    @Override
+    public void contributeTypes(TypeContributions typeContributions, ServiceRegistry serviceRegistry) {
+        super.contributeTypes(typeContributions, serviceRegistry);
+
+        // Phoenix arrays (https://phoenix.apache.org/array_type.html)
+        typeContributions.contributeType(new IntArrayType(), "int[]", int[].class.getName());
+        typeContributions.contributeType(new LongArrayType(), "long[]", long[].class.getName());
+        typeContributions.contributeType(new DoubleArrayType(), "double[]", double[].class.getName());
+        typeContributions.contributeType(new StringArrayType(), "string[]", String[].class.getName());
+    }
+
+    // configuration ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    public void configure(Map<String, Object> settings) {
+        smallScanHints = ConfigurationHelper.getBoolean(HINT_SMALL_SCANS, settings, false);
+        smallScanMaxRows = ConfigurationHelper.getInt(HINT_SMALL_SCANS_MAX_ROWS, settings, 100);
+
+        final QueryPlanGuard.Policy policy = QueryPlanGuard.Policy.valueOf(ConfigurationHelper.getString(
+                EXPLAIN_POLICY, settings, QueryPlanGuard.Policy.NONE.name()).toUpperCase());
+        if (policy != QueryPlanGuard.Policy.NONE) {
+            final Set<ExplainedPlan.PlanType> flagged = EnumSet.noneOf(ExplainedPlan.PlanType.class);
+            for (String type : ConfigurationHelper.getString(EXPLAIN_FLAGGED_PLANS, settings,
+                    ExplainedPlan.PlanType.FULL_SCAN.name()).split(",")) {
+                if (!type.trim().isEmpty()) {
+                    flagged.add(ExplainedPlan.PlanType.valueOf(type.trim().toUpperCase()));
+                }
+            }
+            queryPlanGuard = new QueryPlanGuard(policy, flagged,
+                    ConfigurationHelper.getInt(EXPLAIN_CACHE_SIZE, settings, 1024));
+        } else {
+            queryPlanGuard = null;
+        }
+        explainNamedQueries = ConfigurationHelper.getBoolean(EXPLAIN_NAMED_QUERIES, settings, false);
+
+        indexAdvisorEnabled = ConfigurationHelper.getBoolean(INDEX_ADVISOR, settings, false);
+        indexAdvisorCacheSize = ConfigurationHelper.getInt(INDEX_ADVISOR_CACHE_SIZE, settings, 1024);
+
+        requestMetricsEnabled = ConfigurationHelper.getBoolean(REQUEST_METRICS, settings, false);
+        requestMetricsCacheSize = ConfigurationHelper.getInt(REQUEST_METRICS_CACHE_SIZE, settings, 1024);
+        requestMetricsJmx = ConfigurationHelper.getBoolean(REQUEST_METRICS_JMX, settings, false);
+
+        compactTypes = ConfigurationHelper.getBoolean(COMPACT_TYPES, settings, false);
+
+        streamingFetchSize = ConfigurationHelper.getInt(STREAMING_FETCH_SIZE, settings, 1000);
+        streamingFetchBytes = ConfigurationHelper.getInt(STREAMING_FETCH_BYTES, settings, 2 * 1024 * 1024);
+
+        rowCountEstimator = new RowCountEstimator(
+                ConfigurationHelper.getInt(STATISTICS_CACHE_TTL, settings, 300000));
+        statisticsAutoUpdate = ConfigurationHelper.getBoolean(STATISTICS_AUTO_UPDATE, settings, false);
+        statisticsUpdateThreshold = ConfigurationHelper.getInt(STATISTICS_UPDATE_THRESHOLD, settings, 100000);
+        statisticsUpdateThreads = ConfigurationHelper.getInt(STATISTICS_UPDATE_THREADS, settings, 1);
+
+        inListMaxSize = ConfigurationHelper.getInt(IN_LIST_MAX_SIZE, settings, 1000);
+
+        final int snapshotCacheSize = ConfigurationHelper.getInt(SNAPSHOT_CACHE_SIZE, settings, 256);
+        snapshotCache = snapshotCacheSize > 0 ? new BoundedCache<>(snapshotCacheSize) : null;
+        snapshotCacheMaxRows = ConfigurationHelper.getInt(SNAPSHOT_CACHE_MAX_ROWS, settings, 1000);
+        snapshotCacheMargin = ConfigurationHelper.getInt(SNAPSHOT_CACHE_MARGIN, settings, 60000);
+        final int statementCacheSize = ConfigurationHelper.getInt(STATEMENT_CACHE_SIZE, settings, 0);
+        statementCache = statementCacheSize > 0 ? new StatementCache(statementCacheSize) : null;
+
+        tableOptions.clear();
+        for (Map.Entry<String, Object> setting : settings.entrySet()) {
+            if (setting.getKey().startsWith(TABLE_OPTIONS_PREFIX) && setting.getValue() != null) {
+                tableOptions.put(setting.getKey().substring(TABLE_OPTIONS_PREFIX.length()),
+                        setting.getValue().toString());
+            }
+        }
+    }
+
+    /**
+     * The guard that explains the executed statements, or {@code null} if disabled.
+     */
+    public QueryPlanGuard getQueryPlanGuard() {
+        return queryPlanGuard;
+    }
+
+    public boolean isExplainNamedQueries() {
+        return explainNamedQueries;
+    }
+
+    /**
+     * The advisor that recommends covered indexes for the executed queries, or {@code null} if disabled.
+     */
+    public IndexAdvisor getIndexAdvisor() {
+        return indexAdvisor;
+    }
+
+    /**
+     * The Phoenix request metrics of the executed statements, or {@code null} if disabled.
+     */
+    public RequestMetrics getRequestMetrics() {
+        return requestMetrics;
+    }
+
+    public boolean isRequestMetricsJmx() {
+        return requestMetricsJmx;
+    }
+
+    /**
+     * Whether the compact type profile is enabled (ordinal enums stored in the narrowest type).
+     */
+    public boolean isCompactTypes() {
+        return compactTypes;
+    }
+
+    /**
+     * The fetch size (Phoenix scanner caching) of the streamed queries of {@code entityClass}: as many
+     * rows as fit in the configured fetch bytes, or the configured fetch size if the rows of the
+     * entity can't be estimated.
+     */
+    public int getStreamingFetchSize(Class<?> entityClass) {
+        final TableMapping table = mappings != null && entityClass != null
+                ? mappings.getTable(entityClass) : null;
+        if (table == null || table.getEstimatedRowSize() <= 0) {
+            return streamingFetchSize;
+        }
+        return Math.max(100, Math.min(10000, streamingFetchBytes / table.getEstimatedRowSize()));
+    }
+
+    /**
+     * Estimates row counts from the table statistics.
+     */
+    public RowCountEstimator getRowCountEstimator() {
+        return rowCountEstimator;
+    }
+
+    public boolean isStatisticsAutoUpdate() {
+        return statisticsAutoUpdate;
+    }
+
+    /**
+     * The rows mutated in a table after which its statistics are updated.
+     */
+    public int getStatisticsUpdateThreshold() {
+        return statisticsUpdateThreshold;
+    }
+
+    /**
+     * The maximum number of tables whose statistics are updated at the same time.
+     */
+    public int getStatisticsUpdateThreads() {
+        return statisticsUpdateThreads;
+    }
+
+    /**
+     * The maintainer that updates the statistics of the mutated tables, or {@code null} if disabled.
+     */
+    public StatisticsMaintainer getStatisticsMaintainer() {
+        return statisticsMaintainer;
+    }
+
+    public void setStatisticsMaintainer(StatisticsMaintainer statisticsMaintainer) {
+        this.statisticsMaintainer = statisticsMaintainer;
+    }
+
+    /**
+     * The cached query results of the {@link PhoenixSnapshot}s, or {@code null} if disabled.
+     */
+    public BoundedCache<List<Object>, List<?>> getSnapshotCache() {
+        return snapshotCache;
+    }
+
+    /**
+     * The largest number of rows of the {@link PhoenixSnapshot} results that are cached.
+     */
+    public int getSnapshotCacheMaxRows() {
+        return snapshotCacheMaxRows;
+    }
+
+    /**
+     * How old (in milliseconds) the SCN of a {@link PhoenixSnapshot} must be for its results to be cached.
+     */
+    public long getSnapshotCacheMargin() {
+        return snapshotCacheMargin;
+    }
+
+    /**
+     * The prepared statements kept open per connection, or {@code null} if disabled.
+     */
+    public StatementCache getStatementCache() {
+        return statementCache;
+    }
+
+    /**
+     * The configured options of the table {@code qualifiedName} (as in {@code SCHEMA.TABLE}),
+     * in the form {@code NAME=VALUE, ...}, or {@code null} if none.
+     */
+    public String getTableOptions(String qualifiedName) {
+        return tableOptions.get(qualifiedName);
+    }
+
+    /**
+     * Hints {@code sql}, the natural id resolution query of {@code tableName} (as in
+     * {@code "SCHEMA"."TABLE"}), to read the index of the natural id.
+     */
+    public String applyNaturalIdIndexHint(String tableName, String sql) {
+        final TableMapping table = mappings != null
+                ? mappings.getTable(QueryUtils.normalizeQualifiedName(tableName)) : null;
+        if (table == null || table.getNaturalIdIndex() == null) {
+            return sql;
+        }
+        // Phoenix matches the hint against the table alias, if any
+        final QueryShape shape = QueryShape.parse(sql);
+        final String target = shape != null && shape.getAlias() != null
+                ? shape.getAlias() : table.getQualifiedName();
+        return getQueryHintString(sql, Collections.singletonList(
+                "INDEX(" + target + " " + table.getNaturalIdIndex() + ")"));
+    }
+
+    public PhoenixMappings getMappings() {
+        return mappings;
+    }
+
+    public void setMappings(PhoenixMappings mappings) {
+        this.mappings = mappings;
+        this.smallScanClassifier = smallScanHints && mappings != null
+                ? new SmallScanClassifier(mappings, smallScanMaxRows) : null;
+        this.indexAdvisor = indexAdvisorEnabled && mappings != null
+                ? new IndexAdvisor(mappings, indexAdvisorCacheSize) : null;
+        this.requestMetrics = requestMetricsEnabled
+                ? new RequestMetrics(mappings, requestMetricsCacheSize) : null;
     }
 
     // SEQUENCE support ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
@@ -282,6 +617,16 @@ public class PhoenixDialect extends Dialect {
         return true;
     }
 
+    @Override
+    public Exporter<Table> getTableExporter() {
+        return tableExporter;
+    }
+
+    @Override
+    public Exporter<Index> getIndexExporter() {
+        return indexExporter;
+    }
+
     @Override
     public String[] getDropSchemaCommand(String schemaName) {
         return new String[] {"drop schema if exists " + schemaName};
@@ -317,6 +662,18 @@ public class PhoenixDialect extends Dialect {
         return true;
     }
 
+    @Override
+    public int getInExpressionCountLimit() {
+        return inListMaxSize;
+    }
+
+    @Override
+    public BatchLoadSizingStrategy getDefaultBatchLoadSizingStrategy() {
+        // Multi-loads in chunks as large as the IN limit allows. Every full chunk shares the same
+        // statement; only the last one, with the keys left, has its own
+        return (numberOfKeyColumns, numberOfKeys) -> Math.max(1, inListMaxSize / Math.max(1, numberOfKeyColumns));
+    }
+
     @Override
     public boolean supportsBindAsCallableArgument() {
         return false;
@@ -329,8 +686,21 @@ public class PhoenixDialect extends Dialect {
 
     @Override
     public String getQueryHintString(String query, List<String> hints) {
-        return QueryUtils.removeQueryComments(query).trim().replaceFirst(
-                "select", "select " + StringUtils.join(hints, " ") + " ");
+        return QueryHints.apply(query, hints);
+    }
+
+    @Override
+    public String addSqlHintOrComment(String sql, QueryParameters parameters, boolean commentsEnabled) {
+        if (smallScanClassifier != null) {
+            final RowSelection selection = parameters.getRowSelection();
+            final List<String> hints = smallScanClassifier.hints(sql,
+                    selection != null ? selection.getMaxRows() : null,
+                    selection != null ? selection.getFirstRow() : null);
+            if (!hints.isEmpty()) {
+                sql = getQueryHintString(sql, hints);
+            }
+        }
+        return super.addSqlHintOrComment(sql, parameters, commentsEnabled);
     }
 
     @Override
@@ -363,40 +733,18 @@ public class PhoenixDialect extends Dialect {
 
             @Override
             public String getAlterTableToDropUniqueKeyCommand(UniqueKey uniqueKey, Metadata metadata) {
-                final JdbcEnvironment jdbcEnvironment = metadata.getDatabase().getJdbcEnvironment();
-
-                final String tableName = jdbcEnvironment.getQualifiedObjectNameFormatter().format(
-                        uniqueKey.getTable().getQualifiedTableName(), PhoenixDialect.this);
-
-                final String constraintName = PhoenixDialect.this.quote( uniqueKey.getName() );
-
-                return "drop index if exists " + constraintName + " on " + tableName;
+                return getDefinition(uniqueKey, metadata).toDropSql();
             }
 
             @Override
             public String getAlterTableToAddUniqueKeyCommand(UniqueKey uniqueKey, Metadata metadata) {
-                final JdbcEnvironment jdbcEnvironment = metadata.getDatabase().getJdbcEnvironment();
-
-                final String tableName = jdbcEnvironment.getQualifiedObjectNameFormatter().format(
-                        uniqueKey.getTable().getQualifiedTableName(), PhoenixDialect.this);
-
-                final String constraintName = PhoenixDialect.this.quote( uniqueKey.getName() );
-
-                final StringBuilder columns = new StringBuilder();
-                final Iterator<org.hibernate.mapping.Column> columnIterator = uniqueKey.columnIterator();
-                while ( columnIterator.hasNext() ) {
-                    final org.hibernate.mapping.Column column = columnIterator.next();
-                    columns.append(column.getQuotedName(PhoenixDialect.this));
-                    if (uniqueKey.getColumnOrderMap().containsKey(column)) {
-                        columns.append(" ").append(uniqueKey.getColumnOrderMap().get(column));
-                    }
-                    if (columnIterator.hasNext()) {
-                        columns.append(", ");
-                    }
-                }
+                // Phoenix has no unique indexes
+                return getDefinition(uniqueKey, metadata).toCreateSql();
+            }
 
-                return "create index " + constraintName + " on " + tableName
-                        + " (" + columns.toString() + ")";
+            private IndexDefinition getDefinition(UniqueKey uniqueKey, Metadata metadata) {
+                return IndexDefinition.of(PhoenixDialect.this, metadata, uniqueKey.getTable(),
+                        uniqueKey.getName(), uniqueKey.columnIterator(), uniqueKey.getColumnOrderMap());
             }
         };
     }
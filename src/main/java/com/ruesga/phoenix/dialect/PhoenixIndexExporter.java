@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.mapping.Index;
+import org.hibernate.tool.schema.internal.StandardIndexExporter;
+
+import com.ruesga.phoenix.dialect.annotations.PhoenixIndex;
+
+/**
+ * Exports the indexes declared through {@code @Table(indexes=...)} as Phoenix secondary
+ * indexes, refined by the {@link PhoenixIndex} with the same name, if any.
+ */
+public class PhoenixIndexExporter extends StandardIndexExporter {
+
+    private final PhoenixDialect dialect;
+
+    public PhoenixIndexExporter(PhoenixDialect dialect) {
+        super(dialect);
+        this.dialect = dialect;
+    }
+
+    @Override
+    public String[] getSqlCreateStrings(Index index, Metadata metadata) {
+        return new String[] {getDefinition(index, metadata).toCreateSql()};
+    }
+
+    @Override
+    public String[] getSqlDropStrings(Index index, Metadata metadata) {
+        return new String[] {getDefinition(index, metadata).toDropSql()};
+    }
+
+    private IndexDefinition getDefinition(Index index, Metadata metadata) {
+        return IndexDefinition.of(dialect, metadata, index.getTable(), index.getName(),
+                index.getColumnIterator(), index.getColumnOrderMap());
+    }
+}
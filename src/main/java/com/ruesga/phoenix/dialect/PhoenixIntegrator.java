@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.jboss.logging.Logger;
+
+/**
+ * Hands the session factory settings and the mapping model to the {@link PhoenixDialect}.
+ * Registered through {@code META-INF/services}.
+ */
+public class PhoenixIntegrator implements Integrator {
+
+    private static final Logger LOG = Logger.getLogger(PhoenixIntegrator.class);
+
+    private final Map<SessionFactoryImplementor, ObjectName> mbeans = new ConcurrentHashMap<>();
+
+    @Override
+    public void integrate(Metadata metadata, SessionFactoryImplementor sessionFactory,
+            SessionFactoryServiceRegistry serviceRegistry) {
+        Dialect dialect = sessionFactory.getJdbcServices().getDialect();
+        if (!(dialect instanceof PhoenixDialect)) {
+            // Nothing to deal with
+            return;
+        }
+
+        PhoenixDialect phoenixDialect = (PhoenixDialect) dialect;
+        phoenixDialect.configure(sessionFactory.getProperties());
+        ColumnTypes.apply(metadata, phoenixDialect.isCompactTypes());
+        phoenixDialect.setMappings(PhoenixMappings.build(metadata));
+
+        if (phoenixDialect.getQueryPlanGuard() != null && phoenixDialect.isExplainNamedQueries()) {
+            sessionFactory.addObserver(new NamedQueryExplainer(phoenixDialect.getQueryPlanGuard(), metadata));
+        }
+        if (phoenixDialect.getRequestMetrics() != null && phoenixDialect.isRequestMetricsJmx()) {
+            registerMBean(sessionFactory, phoenixDialect.getRequestMetrics());
+        }
+        if (phoenixDialect.isStatisticsAutoUpdate()) {
+            StatisticsMaintainer maintainer = new StatisticsMaintainer(
+                    sessionFactory.getJdbcServices().getBootstrapJdbcConnectionAccess(),
+                    phoenixDialect.getRowCountEstimator(), phoenixDialect.getStatisticsUpdateThreshold(),
+                    phoenixDialect.getStatisticsUpdateThreads());
+            phoenixDialect.setStatisticsMaintainer(maintainer);
+            sessionFactory.addObserver(maintainer);
+        }
+
+        PrefixDeleteListener prefixDeletes = PrefixDeleteListener.build(metadata, phoenixDialect.getMappings());
+        if (prefixDeletes != null) {
+            serviceRegistry.getService(EventListenerRegistry.class)
+                    .appendListeners(EventType.PRE_DELETE, prefixDeletes);
+        }
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory,
+            SessionFactoryServiceRegistry serviceRegistry) {
+        ObjectName name = mbeans.remove(sessionFactory);
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException ex) {
+                LOG.debugf(ex, "Unable to unregister %s", name);
+            }
+        }
+    }
+
+    private void registerMBean(SessionFactoryImplementor sessionFactory, RequestMetrics metrics) {
+        String factoryName = sessionFactory.getName() != null ? sessionFactory.getName() : sessionFactory.getUuid();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("com.ruesga.phoenix.dialect:type=RequestMetrics,name="
+                    + ObjectName.quote(factoryName));
+            server.registerMBean(metrics, name);
+            mbeans.put(sessionFactory, name);
+        } catch (JMException ex) {
+            LOG.warnf(ex, "Unable to register the request metrics of %s", factoryName);
+        }
+    }
+}
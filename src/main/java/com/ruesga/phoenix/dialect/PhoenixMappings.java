@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.mapping.PersistentClass;
+import org.hibernate.mapping.Table;
+
+/**
+ * The mapped tables of a persistence unit, indexed by their Phoenix qualified name.
+ */
+public final class PhoenixMappings {
+
+    private final Map<String, TableMapping> tables;
+
+    PhoenixMappings(Map<String, TableMapping> tables) {
+        this.tables = Collections.unmodifiableMap(tables);
+    }
+
+    public static PhoenixMappings build(Metadata metadata) {
+        final Map<String, TableMapping> tables = new LinkedHashMap<>();
+        for (Table table : metadata.collectTableMappings()) {
+            if (!table.isPhysicalTable()) {
+                continue;
+            }
+            TableMapping mapping = new TableMapping(table);
+            mapping.estimateRowSize(metadata);
+            tables.put(mapping.getQualifiedName(), mapping);
+        }
+        for (PersistentClass entity : metadata.getEntityBindings()) {
+            TableMapping mapping = find(tables, entity.getTable());
+            if (mapping != null && mapping.getEntity() == null) {
+                mapping.setEntity(entity);
+            }
+        }
+        return new PhoenixMappings(tables);
+    }
+
+    /**
+     * Returns the mapping of the table {@code qualifiedName} (as in {@code SCHEMA.TABLE}).
+     */
+    public TableMapping getTable(String qualifiedName) {
+        return tables.get(qualifiedName);
+    }
+
+    public TableMapping getTable(Table table) {
+        return find(tables, table);
+    }
+
+    public TableMapping getTable(Class<?> entityClass) {
+        for (TableMapping mapping : tables.values()) {
+            if (entityClass.equals(mapping.getEntityClass())) {
+                return mapping;
+            }
+        }
+        return null;
+    }
+
+    public Collection<TableMapping> getTables() {
+        return tables.values();
+    }
+
+    /**
+     * Returns the entities mapped to {@code table}.
+     */
+    public static List<PersistentClass> getEntities(Table table, Metadata metadata) {
+        final List<PersistentClass> entities = new ArrayList<>();
+        for (PersistentClass entity : metadata.getEntityBindings()) {
+            if (entity.getTable() == table && entity.getMappedClass() != null) {
+                entities.add(entity);
+            }
+        }
+        return entities;
+    }
+
+    private static TableMapping find(Map<String, TableMapping> tables, Table table) {
+        if (table == null) {
+            return null;
+        }
+        return tables.get(TableMapping.qualifiedName(table));
+    }
+}
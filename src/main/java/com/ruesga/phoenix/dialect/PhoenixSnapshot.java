@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Parameter;
+import javax.persistence.TypedQuery;
+
+import org.apache.phoenix.jdbc.PhoenixConnection;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.query.Query;
+
+/**
+ * A read-only session pinned to a point in time. Phoenix reads every table as it was at the
+ * snapshot SCN (the {@code CurrentSCN} connection property, an HBase timestamp in milliseconds), so
+ * the same query always returns the same rows, no matter the writes done since.
+ * <p>
+ * Being immutable, the scalar results of the queries run through {@link #list(Query)} are kept in a
+ * cache shared by every snapshot of the persistence unit, keyed by the query, its parameters and the
+ * SCN (see {@link PhoenixDialect#SNAPSHOT_CACHE_SIZE} and {@link PhoenixDialect#SNAPSHOT_CACHE_MAX_ROWS}).
+ * Cached results are shared across threads, so they must be treated as read-only. Entities are never
+ * cached, since they belong to the session that loaded them, and neither are mutable values such as
+ * {@link Date}s. Writes timestamped at or before a recent SCN may still land after the first read,
+ * so only the snapshots older than {@link PhoenixDialect#SNAPSHOT_CACHE_MARGIN} are cached.
+ *
+ * <pre>
+ * try (PhoenixSnapshot snapshot = PhoenixSnapshot.open(sessionFactory, scn)) {
+ *     List&lt;Salary&gt; salaries = snapshot.list(snapshot.getSession()
+ *             .createQuery("select s from salary s where s.salary &gt; :min", Salary.class)
+ *             .setParameter("min", 80000d));
+ * }
+ * </pre>
+ */
+public final class PhoenixSnapshot implements AutoCloseable {
+
+    private final long scn;
+    private final boolean cacheable;
+    private final PhoenixDialect dialect;
+    private final DerivedSession session;
+
+    private PhoenixSnapshot(SessionFactoryImplementor sessionFactory, long scn) {
+        this.scn = scn;
+        this.dialect = DerivedSession.getDialect(sessionFactory);
+        this.cacheable = scn < System.currentTimeMillis() - dialect.getSnapshotCacheMargin();
+        this.session = new DerivedSession(sessionFactory, "a snapshot at SCN " + scn,
+                connection -> new PhoenixConnection(connection, scn));
+    }
+
+    /**
+     * Opens a snapshot of the data as of {@code scn}.
+     */
+    public static PhoenixSnapshot open(SessionFactory sessionFactory, long scn) {
+        return new PhoenixSnapshot(sessionFactory.unwrap(SessionFactoryImplementor.class), scn);
+    }
+
+    /**
+     * @see #open(SessionFactory, long)
+     */
+    public static PhoenixSnapshot open(EntityManagerFactory emf, long scn) {
+        return open(emf.unwrap(SessionFactory.class), scn);
+    }
+
+    /**
+     * Opens a snapshot of the data as of {@code timestamp}.
+     */
+    public static PhoenixSnapshot open(SessionFactory sessionFactory, Date timestamp) {
+        return open(sessionFactory, timestamp.getTime());
+    }
+
+    /**
+     * Opens a snapshot of the data as it is now. Its results are not cached, since writes
+     * timestamped at or before now may still land after they are read.
+     */
+    public static PhoenixSnapshot now(SessionFactory sessionFactory) {
+        return open(sessionFactory, System.currentTimeMillis());
+    }
+
+    public long getScn() {
+        return scn;
+    }
+
+    /**
+     * The read-only session of the snapshot. It is also the {@link EntityManager} of the snapshot.
+     */
+    public Session getSession() {
+        return session.getSession();
+    }
+
+    /**
+     * Returns the results of {@code query}, created from the session of this snapshot, from the
+     * snapshot cache if they were already read.
+     */
+    public <T> List<T> list(Query<T> query) {
+        final BoundedCache<List<Object>, List<?>> cache = cacheable ? dialect.getSnapshotCache() : null;
+        if (cache == null) {
+            return query.list();
+        }
+        final List<Object> key = cacheKey(query);
+        @SuppressWarnings("unchecked")
+        final List<T> cached = (List<T>) cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        final List<T> results = query.list();
+        if (results.size() > dialect.getSnapshotCacheMaxRows() || !isScalar(results)) {
+            return results;
+        }
+        final List<T> unmodifiable = Collections.unmodifiableList(new ArrayList<>(results));
+        @SuppressWarnings("unchecked")
+        final List<T> shared = (List<T>) cache.computeIfAbsent(key, k -> unmodifiable);
+        return shared;
+    }
+
+    /**
+     * @see #list(Query)
+     */
+    public <T> List<T> list(TypedQuery<T> query) {
+        @SuppressWarnings("unchecked")
+        final Query<T> hibernateQuery = query.unwrap(Query.class);
+        return list(hibernateQuery);
+    }
+
+    private List<Object> cacheKey(Query<?> query) {
+        final Map<String, Object> parameters = new TreeMap<>();
+        for (Parameter<?> parameter : query.getParameters()) {
+            parameters.put(parameter.getName() != null ? parameter.getName() : "?" + parameter.getPosition(),
+                    query.getParameterValue(parameter));
+        }
+        return Arrays.asList(scn, query.getQueryString(), query.getFirstResult(), query.getMaxResults(),
+                parameters);
+    }
+
+    private static boolean isScalar(List<?> results) {
+        for (Object row : results) {
+            if (row instanceof Object[]) {
+                for (Object value : (Object[]) row) {
+                    if (!isScalar(value)) {
+                        return false;
+                    }
+                }
+            } else if (!isScalar(row)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Dates are mutable, so they can't be shared across threads
+    private static boolean isScalar(Object value) {
+        return value == null || value instanceof Number || value instanceof String || value instanceof Boolean
+                || value instanceof Character || value instanceof Enum || value instanceof TemporalAccessor
+                || value instanceof UUID;
+    }
+
+    @Override
+    public void close() {
+        session.close();
+    }
+}
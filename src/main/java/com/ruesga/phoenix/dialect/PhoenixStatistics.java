@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+/**
+ * Approximate row counts, estimated from the guideposts Phoenix collects in {@code SYSTEM.STATS}
+ * instead of scanning the table. Good enough for pagination totals or progress reporting.
+ * <p>
+ * The guideposts of every table are cached for {@link PhoenixDialect#STATISTICS_CACHE_TTL}. The
+ * statistics can be updated on demand, or by a {@link StatisticsMaintainer} as the tables are mutated.
+ */
+public final class PhoenixStatistics {
+
+    private PhoenixStatistics() {
+    }
+
+    /**
+     * Estimates the rows of the table of {@code entityClass}.
+     */
+    public static RowCountEstimate approximateCount(EntityManager em, Class<?> entityClass) {
+        return approximateCount(em.unwrap(Session.class), entityClass, null, null);
+    }
+
+    /**
+     * Estimates the rows of the table of {@code entityClass} whose leading primary key column is in
+     * {@code [lower, upper)}, {@code null} meaning unbounded.
+     */
+    public static RowCountEstimate approximateCount(EntityManager em, Class<?> entityClass,
+            Object lower, Object upper) {
+        return approximateCount(em.unwrap(Session.class), entityClass, lower, upper);
+    }
+
+    /**
+     * @see #approximateCount(EntityManager, Class, Object, Object)
+     */
+    public static RowCountEstimate approximateCount(Session session, Class<?> entityClass,
+            Object lower, Object upper) {
+        final PhoenixDialect dialect = getDialect(session);
+        final TableMapping table = getTable(dialect, entityClass);
+        return session.doReturningWork(connection -> dialect.getRowCountEstimator()
+                .estimate(connection, table.getQualifiedName(), lower, upper));
+    }
+
+    /**
+     * Updates the statistics of the table of {@code entityClass} and its indexes, right away.
+     * Useful after bulk loads, so the parallel scans and the estimates see the new rows.
+     */
+    public static void updateStatistics(EntityManager em, Class<?> entityClass) {
+        updateStatistics(em.unwrap(Session.class), entityClass);
+    }
+
+    /**
+     * @see #updateStatistics(EntityManager, Class)
+     */
+    public static void updateStatistics(Session session, Class<?> entityClass) {
+        final PhoenixDialect dialect = getDialect(session);
+        final TableMapping table = getTable(dialect, entityClass);
+        session.doWork(connection -> StatisticsMaintainer.update(connection, table.getQualifiedName()));
+        if (dialect.getStatisticsMaintainer() != null) {
+            dialect.getStatisticsMaintainer().refreshed(table.getQualifiedName());
+        } else {
+            dialect.getRowCountEstimator().invalidate(table.getQualifiedName());
+        }
+    }
+
+    /**
+     * When the statistics of the table of {@code entityClass} were last collected (0 if unknown).
+     */
+    public static long getLastUpdate(EntityManager em, Class<?> entityClass) {
+        return approximateCount(em, entityClass).getTimestamp();
+    }
+
+    private static TableMapping getTable(PhoenixDialect dialect, Class<?> entityClass) {
+        final TableMapping table = dialect.getMappings() != null ? dialect.getMappings().getTable(entityClass) : null;
+        if (table == null) {
+            throw new HibernateException(entityClass.getName() + " is not mapped to a Phoenix table");
+        }
+        return table;
+    }
+
+    static PhoenixDialect getDialect(Session session) {
+        final Dialect dialect = ((SessionFactoryImplementor) session.getSessionFactory())
+                .getJdbcServices().getDialect();
+        if (!(dialect instanceof PhoenixDialect)) {
+            throw new HibernateException("The session is not bound to a Phoenix dialect");
+        }
+        return (PhoenixDialect) dialect;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.query.Query;
+import org.hibernate.type.Type;
+
+/**
+ * Streams the results of large queries in constant memory. Results are read forward only, in
+ * batches sized after the rows of the queried entity (see
+ * {@link PhoenixDialect#getStreamingFetchSize(Class)}), with a {@code NO_CACHE} scan so the
+ * region servers' block cache keeps serving the online reads. The results are read-only and
+ * bypass the second level cache.
+ */
+public final class PhoenixStreams {
+
+    public static final String HINT_NO_CACHE = "NO_CACHE";
+
+    // Rows read between sweeps of the persistence context, when the fetch size is unknown
+    private static final int DEFAULT_SWEEP_ROWS = 1000;
+
+    private PhoenixStreams() {
+    }
+
+    /**
+     * Streams the results of {@code query}. Every entity returned is evicted from the persistence
+     * context once the next row is read, so the stream must be consumed within the session and
+     * closed once done. The entities loaded along with the rows (as their associations) are
+     * evicted every fetch size rows, and once the results are exhausted; the entities the session
+     * already held before streaming are left alone.
+     */
+    public static <T> Stream<T> stream(EntityManager em, TypedQuery<T> query) {
+        @SuppressWarnings("unchecked")
+        final Query<T> hibernateQuery = query.unwrap(Query.class);
+        return stream(em.unwrap(Session.class), hibernateQuery);
+    }
+
+    /**
+     * @see #stream(EntityManager, TypedQuery)
+     */
+    public static <T> Stream<T> stream(Session session, Query<T> query) {
+        final ScrollableResults results = scroll(session, query);
+        final PersistenceContext context = session.unwrap(SessionImplementor.class).getPersistenceContext();
+        final Set<Object> held = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Map.Entry<Object, EntityEntry> entry : context.reentrantSafeEntityEntries()) {
+            held.add(entry.getKey());
+        }
+        final int sweepRows = query.getFetchSize() != null && query.getFetchSize() > 0
+                ? query.getFetchSize() : DEFAULT_SWEEP_ROWS;
+        final Spliterator<T> rows = new Spliterators.AbstractSpliterator<T>(
+                Long.MAX_VALUE, Spliterator.ORDERED) {
+            private Object[] previous;
+            private long read;
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public boolean tryAdvance(Consumer<? super T> action) {
+                evict(session, context, previous);
+                previous = null;
+                if (read > 0 && read % sweepRows == 0) {
+                    sweep(session, context, held);
+                }
+                if (!results.next()) {
+                    sweep(session, context, held);
+                    return false;
+                }
+                read++;
+                previous = results.get();
+                action.accept(previous.length == 1 ? (T) previous[0] : (T) previous);
+                return true;
+            }
+        };
+        return StreamSupport.stream(rows, false).onClose(results::close);
+    }
+
+    /**
+     * Scrolls forward only through the results of {@code query}. Unlike {@code stream}, the
+     * caller is in charge of evicting the entities read.
+     */
+    public static ScrollableResults scroll(Session session, Query<?> query) {
+        final Dialect dialect = ((SessionFactoryImplementor) session.getSessionFactory())
+                .getJdbcServices().getDialect();
+        if (dialect instanceof PhoenixDialect) {
+            query.setFetchSize(((PhoenixDialect) dialect).getStreamingFetchSize(getEntityClass(query)));
+        }
+        query.addQueryHint(HINT_NO_CACHE);
+        query.setReadOnly(true);
+        query.setCacheMode(CacheMode.IGNORE);
+        return query.scroll(ScrollMode.FORWARD_ONLY);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Class<?> getEntityClass(Query<?> query) {
+        try {
+            final Type[] types = query.getReturnTypes();
+            return types != null && types.length > 0 && types[0].isEntityType()
+                    ? types[0].getReturnedClass() : null;
+        } catch (RuntimeException ex) {
+            // Native queries don't know their return types
+            return null;
+        }
+    }
+
+    // Evicts the entities loaded since streaming started, along with the rows
+    private static void sweep(Session session, PersistenceContext context, Set<Object> held) {
+        for (Map.Entry<Object, EntityEntry> entry : context.reentrantSafeEntityEntries()) {
+            final Object entity = entry.getKey();
+            if (!held.contains(entity) && context.isEntryFor(entity)) {
+                session.evict(entity);
+            }
+        }
+    }
+
+    private static void evict(Session session, PersistenceContext context, Object[] row) {
+        if (row == null) {
+            return;
+        }
+        for (Object value : row) {
+            if (value != null && context.isEntryFor(value)) {
+                session.evict(value);
+            }
+        }
+    }
+}
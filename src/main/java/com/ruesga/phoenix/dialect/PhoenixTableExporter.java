@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hibernate.MappingException;
+import org.hibernate.annotations.LazyGroup;
+import org.hibernate.boot.Metadata;
+import org.hibernate.mapping.Column;
+import org.hibernate.mapping.ForeignKey;
+import org.hibernate.mapping.Index;
+import org.hibernate.mapping.PersistentClass;
+import org.hibernate.mapping.Property;
+import org.hibernate.mapping.Table;
+import org.hibernate.mapping.UniqueKey;
+import org.hibernate.tool.schema.internal.StandardTableExporter;
+import org.jboss.logging.Logger;
+
+import com.ruesga.phoenix.dialect.annotations.ColumnFamily;
+import com.ruesga.phoenix.dialect.annotations.PhoenixIndex;
+import com.ruesga.phoenix.dialect.annotations.PhoenixTable;
+import com.ruesga.phoenix.dialect.annotations.RowKey;
+import com.ruesga.phoenix.dialect.annotations.RowTimestamp;
+
+/**
+ * Adds the Phoenix specifics of the mapped entities to the {@code CREATE TABLE} statement: the
+ * table options (see {@link PhoenixTable} and the {@code phoenix.table_options.SCHEMA.TABLE}
+ * settings, plus the immutable storage of {@code @Immutable} entities), the column families of
+ * the columns (see {@link ColumnFamily}), the row key layout (see {@link RowKey} and
+ * {@link RowTimestamp}) and the indexes only declared through {@link PhoenixIndex}.
+ */
+public class PhoenixTableExporter extends StandardTableExporter {
+
+    private static final Logger LOG = Logger.getLogger(PhoenixTableExporter.class);
+
+    private final PhoenixDialect dialect;
+
+    public PhoenixTableExporter(PhoenixDialect dialect) {
+        super(dialect);
+        this.dialect = dialect;
+    }
+
+    @Override
+    public String[] getSqlCreateStrings(Table table, Metadata metadata) {
+        final String[] statements = super.getSqlCreateStrings(table, metadata);
+        final List<PersistentClass> entities = PhoenixMappings.getEntities(table, metadata);
+
+        String create = statements[0];
+        for (Map.Entry<Column, String> family : getColumnFamilies(table, entities).entrySet()) {
+            create = QueryUtils.qualifyColumnDefinition(create, family.getKey().getQuotedName(dialect),
+                    dialect.quote("`" + family.getValue() + "`"));
+        }
+        final Map<Column, String> rowKey = TableMapping.rowKey(table, entities);
+        if (!rowKey.isEmpty()) {
+            final List<String> columns = new ArrayList<>();
+            for (Map.Entry<Column, String> column : rowKey.entrySet()) {
+                columns.add(column.getKey().getQuotedName(dialect)
+                        + (column.getValue().equals("DESC") ? " DESC" : ""));
+            }
+            create = QueryUtils.replacePrimaryKeyColumns(create, String.join(", ", columns));
+        }
+        final Column rowTimestamp = getRowTimestamp(table, entities);
+        if (rowTimestamp != null) {
+            create = QueryUtils.qualifyPrimaryKeyColumn(create, rowTimestamp.getQuotedName(dialect),
+                    "ROW_TIMESTAMP");
+        }
+        final String options = getTableOptions(table, entities).toSql();
+        if (!options.isEmpty()) {
+            create = create + " " + options;
+        }
+        statements[0] = create;
+
+        // Indexes only declared through @PhoenixIndex
+        final List<String> result = new ArrayList<>(Arrays.asList(statements));
+        for (IndexDefinition index : getIndexes(table, entities, metadata)) {
+            result.add(index.toCreateSql());
+        }
+        checkForeignKeys(table, entities, rowKey.keySet());
+        return result.toArray(new String[result.size()]);
+    }
+
+    /**
+     * Warns about the foreign keys of {@code table} that don't lead its row key nor any of its
+     * indexes, since navigating the association from the referenced side will scan the full table.
+     */
+    protected void checkForeignKeys(Table table, List<PersistentClass> entities, Collection<Column> rowKey) {
+        final List<List<String>> prefixes = new ArrayList<>();
+        prefixes.add(toNames(rowKey));
+        prefixes.addAll(TableMapping.indexes(table));
+        for (PersistentClass entity : entities) {
+            for (PhoenixIndex index : entity.getMappedClass().getAnnotationsByType(PhoenixIndex.class)) {
+                final List<String> columns = new ArrayList<>();
+                for (String column : index.columns()) {
+                    columns.add(QueryUtils.normalizeQualifiedName(column.trim().split("\\s+")[0]));
+                }
+                prefixes.add(columns);
+            }
+        }
+
+        final Iterator<ForeignKey> foreignKeys = table.getForeignKeyIterator();
+        while (foreignKeys.hasNext()) {
+            final ForeignKey foreignKey = foreignKeys.next();
+            final Set<String> columns = new HashSet<>(toNames(foreignKey.getColumns()));
+            boolean leading = false;
+            for (List<String> prefix : prefixes) {
+                if (prefix.size() >= columns.size()
+                        && columns.equals(new HashSet<>(prefix.subList(0, columns.size())))) {
+                    leading = true;
+                    break;
+                }
+            }
+            if (!leading) {
+                LOG.warnf("Columns %s of %s are not a prefix of its row key nor of any index. Queries "
+                        + "by them will do a full scan; consider a @RowKey or @PhoenixIndex on them",
+                        columns, TableMapping.qualifiedName(table));
+            }
+        }
+    }
+
+    private static List<String> toNames(Collection<Column> columns) {
+        final List<String> names = new ArrayList<>();
+        for (Column column : columns) {
+            names.add(QueryUtils.normalizeIdentifier(column.getName(), column.isQuoted()));
+        }
+        return names;
+    }
+
+    protected List<IndexDefinition> getIndexes(Table table, List<PersistentClass> entities, Metadata metadata) {
+        final Set<String> declared = new HashSet<>();
+        final Iterator<Index> indexes = table.getIndexIterator();
+        while (indexes.hasNext()) {
+            declared.add(indexes.next().getName().toUpperCase());
+        }
+        final Iterator<UniqueKey> uniqueKeys = table.getUniqueKeyIterator();
+        while (uniqueKeys.hasNext()) {
+            declared.add(uniqueKeys.next().getName().toUpperCase());
+        }
+
+        final List<IndexDefinition> definitions = new ArrayList<>();
+        for (PersistentClass entity : entities) {
+            for (PhoenixIndex index : entity.getMappedClass().getAnnotationsByType(PhoenixIndex.class)) {
+                if (!declared.add(index.name().toUpperCase())) {
+                    continue;
+                }
+                if (index.columns().length == 0) {
+                    throw new MappingException("Index " + index.name() + " of " + entity.getEntityName()
+                            + " has no columns");
+                }
+                definitions.add(IndexDefinition.of(dialect, metadata, table, index.name(),
+                        Collections.<Column>emptyIterator(), Collections.<Column, String>emptyMap()));
+            }
+        }
+        return definitions;
+    }
+
+    protected TableOptions getTableOptions(Table table, List<PersistentClass> entities) {
+        final String qualifiedName = TableMapping.qualifiedName(table);
+        final TableOptions options = new TableOptions(qualifiedName);
+        for (PersistentClass entity : entities) {
+            final Class<?> type = entity.getMappedClass();
+            if (type.isAnnotationPresent(PhoenixTable.class)) {
+                options.apply(type.getAnnotation(PhoenixTable.class));
+            }
+            if (type.isAnnotationPresent(ColumnFamily.class)) {
+                options.setValue(TableOptions.DEFAULT_COLUMN_FAMILY,
+                        familyName(type.getAnnotation(ColumnFamily.class).value()));
+            }
+        }
+        final String configured = dialect.getTableOptions(qualifiedName);
+        if (configured != null) {
+            options.parse(configured);
+        }
+        if (isImmutable(entities)) {
+            // Write-once rows need no index maintenance and can be stored in a single cell
+            options.setIfAbsent(TableOptions.IMMUTABLE_ROWS, "true");
+            options.setIfAbsent(TableOptions.IMMUTABLE_STORAGE_SCHEME, "SINGLE_CELL_ARRAY_WITH_OFFSETS");
+            options.setIfAbsent(TableOptions.COLUMN_ENCODED_BYTES, "2");
+        }
+        return options;
+    }
+
+    private static boolean isImmutable(List<PersistentClass> entities) {
+        if (entities.isEmpty()) {
+            return false;
+        }
+        for (PersistentClass entity : entities) {
+            if (entity.isMutable()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the column family of the columns of {@code table} not stored in the default one.
+     */
+    protected Map<Column, String> getColumnFamilies(Table table, List<PersistentClass> entities) {
+        final Map<Column, String> families = new LinkedHashMap<>();
+        for (PersistentClass entity : entities) {
+            final Iterator<?> it = entity.getPropertyClosureIterator();
+            while (it.hasNext()) {
+                final Property property = (Property) it.next();
+                final String family = getColumnFamily(entity, property);
+                if (family == null) {
+                    continue;
+                }
+                final Iterator<?> columns = property.getColumnIterator();
+                while (columns.hasNext()) {
+                    final Object selectable = columns.next();
+                    if (!(selectable instanceof Column) || table.getColumn((Column) selectable) == null) {
+                        continue;
+                    }
+                    final Column column = (Column) selectable;
+                    if (table.hasPrimaryKey() && table.getPrimaryKey().containsColumn(column)) {
+                        throw new MappingException("Primary key column " + column.getName() + " of "
+                                + entity.getEntityName() + " can't have a column family");
+                    }
+                    families.put(column, family);
+                }
+            }
+        }
+        return families;
+    }
+
+    private static String getColumnFamily(PersistentClass entity, Property property) {
+        final Class<?> owner = entity.getMappedClass();
+        final ColumnFamily family = MappingUtils.getAnnotation(owner, property, ColumnFamily.class);
+        if (family != null) {
+            return familyName(family.value());
+        }
+        final LazyGroup group = MappingUtils.getAnnotation(owner, property, LazyGroup.class);
+        if (group != null) {
+            return familyName(group.value());
+        }
+        return null;
+    }
+
+    /**
+     * Returns the primary key column of {@code table} declared as its row timestamp, if any.
+     */
+    protected Column getRowTimestamp(Table table, List<PersistentClass> entities) {
+        Column rowTimestamp = null;
+        for (PersistentClass entity : entities) {
+            for (Map.Entry<Property, Class<?>> id : MappingUtils.getIdentifierProperties(entity).entrySet()) {
+                final Property property = id.getKey();
+                if (MappingUtils.getAnnotation(id.getValue(), property, RowTimestamp.class) == null) {
+                    continue;
+                }
+                final Class<?> type = property.getType().getReturnedClass();
+                if (property.getColumnSpan() != 1 || !(Date.class.isAssignableFrom(type)
+                        || Long.class.equals(type) || long.class.equals(type))) {
+                    throw new MappingException("Row timestamp " + property.getName() + " of "
+                            + entity.getEntityName() + " must be a date or long column");
+                }
+                final Column column = (Column) property.getColumnIterator().next();
+                if (!table.hasPrimaryKey() || !table.getPrimaryKey().containsColumn(column)) {
+                    throw new MappingException("Row timestamp " + property.getName() + " of "
+                            + entity.getEntityName() + " must be a primary key column");
+                }
+                if (rowTimestamp != null && !rowTimestamp.equals(column)) {
+                    throw new MappingException("Table " + TableMapping.qualifiedName(table)
+                            + " can't have more than one row timestamp column");
+                }
+                rowTimestamp = column;
+            }
+        }
+        return rowTimestamp;
+    }
+
+    private static String familyName(String name) {
+        final boolean quoted = name.startsWith("`") && name.endsWith("`") && name.length() > 1;
+        return QueryUtils.normalizeIdentifier(quoted ? name.substring(1, name.length() - 1) : name, quoted);
+    }
+}
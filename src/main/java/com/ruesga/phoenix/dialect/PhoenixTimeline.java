@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.apache.hadoop.hbase.client.Consistency;
+import org.apache.phoenix.jdbc.PhoenixConnection;
+import org.apache.phoenix.jdbc.PhoenixResultSet;
+import org.apache.phoenix.schema.tuple.ResultTuple;
+import org.apache.phoenix.schema.tuple.Tuple;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.jdbc.spi.JdbcCoordinator;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.jboss.logging.Logger;
+
+import com.ruesga.phoenix.dialect.SqlTokenizer.Token;
+import com.ruesga.phoenix.dialect.SqlTokenizer.TokenType;
+
+/**
+ * Timeline consistent reads (the {@code Consistency=TIMELINE} connection property). HBase serves
+ * them from a secondary replica of the region when the primary doesn't answer in time (GC pauses,
+ * region moves...), at the cost of possibly stale rows. The tables must be created with region
+ * replicas ({@code REGION_REPLICATION=N}); otherwise the reads are served by the primary as usual.
+ * <p>
+ * A query reads with timeline consistency when hinted with {@link #HINT_TIMELINE}
+ * ({@code query.addQueryHint(PhoenixTimeline.HINT_TIMELINE)}), or when it is run by the read-only
+ * session of a {@link PhoenixTimeline}. The rows are checked as Hibernate reads them, and
+ * {@link #wasStale(Session)} tells whether any of them came from a replica lagging behind.
+ * Aggregated rows are computed by the region servers and can't be checked.
+ */
+public final class PhoenixTimeline implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(PhoenixTimeline.class);
+
+    public static final String HINT_TIMELINE = "TIMELINE";
+
+    @FunctionalInterface
+    public interface Extraction {
+        ResultSet extract() throws Throwable;
+    }
+
+    // The stale flag of every session that read with timeline consistency, and of the result
+    // sets of timeline reads being read. Rows are checked without locking
+    private static final WeakIdentityMap<Object, AtomicBoolean> STALE = new WeakIdentityMap<>();
+    private static final WeakIdentityMap<ResultSet, AtomicBoolean> RESULT_SETS = new WeakIdentityMap<>();
+
+    private final DerivedSession session;
+
+    private PhoenixTimeline(SessionFactoryImplementor sessionFactory) {
+        // Fails fast out of a Phoenix persistence unit
+        DerivedSession.getDialect(sessionFactory);
+        this.session = new DerivedSession(sessionFactory, "a timeline consistent session", connection -> {
+            final PhoenixConnection derived = new PhoenixConnection(connection);
+            derived.setConsistency(Consistency.TIMELINE);
+            return derived;
+        });
+    }
+
+    /**
+     * Opens a read-only session whose queries read with timeline consistency.
+     */
+    public static PhoenixTimeline open(SessionFactory sessionFactory) {
+        return new PhoenixTimeline(sessionFactory.unwrap(SessionFactoryImplementor.class));
+    }
+
+    /**
+     * @see #open(SessionFactory)
+     */
+    public static PhoenixTimeline open(EntityManagerFactory emf) {
+        return open(emf.unwrap(SessionFactory.class));
+    }
+
+    /**
+     * The read-only session. It is also the {@link EntityManager} of the timeline reads.
+     */
+    public Session getSession() {
+        return session.getSession();
+    }
+
+    /**
+     * Whether any row read by this session since the last call was stale.
+     */
+    public boolean wasStale() {
+        return wasStale(session.getSession());
+    }
+
+    @Override
+    public void close() {
+        session.close();
+    }
+
+    /**
+     * Whether any row read by the timeline queries of {@code em} since the last call was stale.
+     */
+    public static boolean wasStale(EntityManager em) {
+        return wasStale(em.unwrap(Session.class));
+    }
+
+    /**
+     * @see #wasStale(EntityManager)
+     */
+    public static boolean wasStale(Session session) {
+        if (STALE.isEmpty()) {
+            return false;
+        }
+        final AtomicBoolean stale = STALE.get(session.unwrap(SharedSessionContractImplementor.class));
+        return stale != null && stale.getAndSet(false);
+    }
+
+    /**
+     * Whether {@code sql} is hinted with {@link #HINT_TIMELINE}, in any case.
+     */
+    public static boolean isHinted(String sql) {
+        if (!sql.contains("/*+")) {
+            return false;
+        }
+        for (Token token : SqlTokenizer.tokenize(sql)) {
+            if (token.type == TokenType.HINT) {
+                for (String item : QueryHints.parseHint(token.text)) {
+                    if (item.equalsIgnoreCase(HINT_TIMELINE)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Executes the query {@code sql} of {@code statement} through {@code extraction}, with timeline
+     * consistency if hinted, and starts checking its rows for the session of {@code coordinator}
+     * if read with timeline consistency.
+     */
+    public static ResultSet extract(JdbcCoordinator coordinator, PreparedStatement statement, String sql,
+            Extraction extraction) throws Throwable {
+        final boolean hinted = sql != null && isHinted(sql);
+        final PhoenixConnection connection = statement.getConnection().unwrap(PhoenixConnection.class);
+        final Consistency previous = connection.getConsistency();
+        if (!hinted && previous != Consistency.TIMELINE) {
+            return extraction.extract();
+        }
+
+        // The scans take the consistency of the connection when the query is executed
+        final ResultSet rs;
+        connection.setConsistency(Consistency.TIMELINE);
+        try {
+            rs = extraction.extract();
+        } finally {
+            connection.setConsistency(previous);
+        }
+        RESULT_SETS.put(rs, STALE.computeIfAbsent(coordinator.getJdbcSessionOwner(), k -> new AtomicBoolean()));
+        return rs;
+    }
+
+    /**
+     * Checks the current row of {@code rs} (if a timeline read), just read.
+     */
+    public static void read(ResultSet rs) {
+        if (RESULT_SETS.isEmpty()) {
+            return;
+        }
+        final AtomicBoolean stale = RESULT_SETS.get(rs);
+        if (stale == null) {
+            return;
+        }
+        try {
+            final Tuple row = rs.unwrap(PhoenixResultSet.class).getCurrentRow();
+            if (row instanceof ResultTuple && ((ResultTuple) row).getResult().isStale()) {
+                // One stale row is enough to report the whole read
+                stale.set(true);
+                RESULT_SETS.remove(rs);
+            }
+        } catch (SQLException ex) {
+            LOG.debugf(ex, "Unable to check the staleness of %s", rs);
+            RESULT_SETS.remove(rs);
+        }
+    }
+
+    /**
+     * Stops checking the rows of {@code rs} (if tracked), before it is closed.
+     */
+    public static void released(ResultSet rs) {
+        if (!RESULT_SETS.isEmpty()) {
+            RESULT_SETS.remove(rs);
+        }
+    }
+}
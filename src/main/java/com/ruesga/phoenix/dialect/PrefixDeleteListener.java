@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.MappingException;
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.internal.ForeignKeys;
+import org.hibernate.engine.jdbc.spi.JdbcCoordinator;
+import org.hibernate.engine.spi.CascadingActions;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.engine.spi.Status;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.PreDeleteEvent;
+import org.hibernate.event.spi.PreDeleteEventListener;
+import org.hibernate.mapping.Collection;
+import org.hibernate.mapping.Column;
+import org.hibernate.mapping.OneToMany;
+import org.hibernate.mapping.PersistentClass;
+import org.hibernate.mapping.Property;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.persister.entity.OuterJoinLoadable;
+import org.hibernate.type.CompositeType;
+import org.hibernate.type.EntityType;
+import org.hibernate.type.Type;
+import org.jboss.logging.Logger;
+
+import com.ruesga.phoenix.dialect.annotations.PrefixDelete;
+
+/**
+ * Deletes the {@link PrefixDelete} collections of the deleted entities, right before the entity,
+ * with one {@code DELETE} per collection restricted by the leading row key columns. Phoenix
+ * runs it as a range delete, without the collection elements ever being loaded. The elements
+ * already in the session are evicted afterwards, as are the cached elements and collections.
+ */
+public class PrefixDeleteListener implements PreDeleteEventListener {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOG = Logger.getLogger(PrefixDeleteListener.class);
+
+    private static final class Rule {
+        final String role;
+        final String sql;
+        final List<String> keyColumns;
+        final String elementEntity;
+
+        Rule(String role, String sql, List<String> keyColumns, String elementEntity) {
+            this.role = role;
+            this.sql = sql;
+            this.keyColumns = keyColumns;
+            this.elementEntity = elementEntity;
+        }
+    }
+
+    private final Map<String, List<Rule>> rules;
+
+    private PrefixDeleteListener(Map<String, List<Rule>> rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * Builds the listener of the {@link PrefixDelete} collections of {@code metadata}, or returns
+     * {@code null} if there are none.
+     */
+    public static PrefixDeleteListener build(Metadata metadata, PhoenixMappings mappings) {
+        final Map<String, List<Rule>> rules = new HashMap<>();
+        for (PersistentClass entity : metadata.getEntityBindings()) {
+            final Iterator<?> it = entity.getPropertyClosureIterator();
+            while (it.hasNext()) {
+                final Property property = (Property) it.next();
+                if (!(property.getValue() instanceof Collection) || MappingUtils.getAnnotation(
+                        entity.getMappedClass(), property, PrefixDelete.class) == null) {
+                    continue;
+                }
+                final Collection collection = (Collection) property.getValue();
+                final List<String> keyColumns = keyColumns(collection);
+                rules.computeIfAbsent(entity.getEntityName(), k -> new ArrayList<>())
+                        .add(new Rule(collection.getRole(), toSql(collection, keyColumns, mappings),
+                                keyColumns, collection.isOneToMany()
+                                        ? ((OneToMany) collection.getElement()).getReferencedEntityName()
+                                        : null));
+                if (property.getCascadeStyle() != null && property.getCascadeStyle().doCascade(
+                        CascadingActions.DELETE)) {
+                    LOG.warnf("%s cascades removals, so its elements are loaded and deleted one by one "
+                            + "before the prefix delete", collection.getRole());
+                }
+            }
+        }
+        return rules.isEmpty() ? null : new PrefixDeleteListener(rules);
+    }
+
+    private static List<String> keyColumns(Collection collection) {
+        if (collection.getReferencedPropertyName() != null) {
+            throw new MappingException("@PrefixDelete " + collection.getRole()
+                    + " must be keyed by the identifier of its owner");
+        }
+        final List<String> columns = new ArrayList<>();
+        final Iterator<?> it = collection.getKey().getColumnIterator();
+        while (it.hasNext()) {
+            final Column column = (Column) it.next();
+            columns.add(QueryUtils.normalizeIdentifier(column.getName(), column.isQuoted()));
+        }
+        return columns;
+    }
+
+    private static String toSql(Collection collection, List<String> columns, PhoenixMappings mappings) {
+        final TableMapping table = mappings.getTable(collection.getCollectionTable());
+        if (table == null) {
+            throw new MappingException("Unknown table of " + collection.getRole());
+        }
+        final List<String> pk = table.getPrimaryKey();
+        if (pk.size() < columns.size() || !pk.subList(0, columns.size()).equals(columns)) {
+            throw new MappingException("@PrefixDelete " + collection.getRole() + ": " + columns
+                    + " are not the leading row key columns of " + table.getQualifiedName() + " " + pk);
+        }
+
+        final StringBuilder sql = new StringBuilder("delete from ")
+                .append(QueryUtils.quoteQualifiedName(table.getQualifiedName())).append(" where ");
+        for (int i = 0; i < columns.size(); i++) {
+            sql.append(i > 0 ? " and " : "").append('"').append(columns.get(i)).append("\" = ?");
+        }
+        return sql.toString();
+    }
+
+    @Override
+    public boolean onPreDelete(PreDeleteEvent event) {
+        final List<Rule> entityRules = rules.get(event.getPersister().getEntityName());
+        if (entityRules == null) {
+            return false;
+        }
+        final EventSource session = event.getSession();
+        final JdbcCoordinator coordinator = session.getJdbcCoordinator();
+        for (Rule rule : entityRules) {
+            final CollectionPersister collection = session.getFactory().getMetamodel().collectionPersister(rule.role);
+            final PreparedStatement statement = coordinator.getStatementPreparer().prepareStatement(rule.sql, false);
+            try {
+                collection.getKeyType().nullSafeSet(statement, event.getId(), 1, session);
+                coordinator.getResultSetReturn().executeUpdate(statement);
+            } catch (SQLException ex) {
+                throw session.getJdbcServices().getSqlExceptionHelper().convert(
+                        ex, "Unable to delete the elements of " + rule.role, rule.sql);
+            } finally {
+                coordinator.getResourceRegistry().release(statement);
+                coordinator.afterStatementExecution();
+            }
+            evict(session, rule, collection, event.getId());
+        }
+        return false;
+    }
+
+    /**
+     * Evicts the elements of the owner {@code ownerId} that the session already holds, and the
+     * cached elements and collection, since the {@code DELETE} removed their rows behind Hibernate.
+     */
+    private static void evict(EventSource session, Rule rule, CollectionPersister collection, Serializable ownerId) {
+        final SessionFactoryImplementor factory = session.getFactory();
+        if (rule.elementEntity != null) {
+            final EntityPersister element = factory.getMetamodel().entityPersister(rule.elementEntity);
+            for (Map.Entry<Object, EntityEntry> entry : session.getPersistenceContext().reentrantSafeEntityEntries()) {
+                final EntityEntry entityEntry = entry.getValue();
+                if (entityEntry.getPersister() != element || (entityEntry.getStatus() != Status.MANAGED
+                        && entityEntry.getStatus() != Status.READ_ONLY)) {
+                    continue;
+                }
+                final Serializable owner = getOwner(element, entry.getKey(), rule.keyColumns, session);
+                if (owner != null && collection.getKeyType().isEqual(owner, ownerId)) {
+                    session.evict(entry.getKey());
+                }
+            }
+            if (element.hasCache()) {
+                factory.getCache().evictEntityRegion(rule.elementEntity);
+            }
+        }
+        if (collection.hasCache()) {
+            factory.getCache().evictCollection(rule.role, ownerId);
+        }
+    }
+
+    /**
+     * Returns the owner identifier that {@code entity} holds in {@code keyColumns}, either in an
+     * identifier property or in a regular one, or {@code null} if none maps them.
+     */
+    private static Serializable getOwner(EntityPersister persister, Object entity, List<String> keyColumns,
+            SharedSessionContractImplementor session) {
+        final OuterJoinLoadable loadable = (OuterJoinLoadable) persister;
+        if (persister.getIdentifierType() instanceof CompositeType) {
+            final CompositeType id = (CompositeType) persister.getIdentifierType();
+            final String[] columns = loadable.getIdentifierColumnNames();
+            final Type[] types = id.getSubtypes();
+            int offset = 0;
+            for (int i = 0; i < types.length; i++) {
+                final int span = types[i].getColumnSpan(session.getFactory());
+                if (matches(keyColumns, Arrays.copyOfRange(columns, offset, offset + span))) {
+                    return getIdentifier(types[i],
+                            id.getPropertyValue(persister.getIdentifier(entity, session), i, session), session);
+                }
+                offset += span;
+            }
+        }
+        final Type[] types = persister.getPropertyTypes();
+        for (int i = 0; i < types.length; i++) {
+            if (matches(keyColumns, loadable.getPropertyColumnNames(i))) {
+                return getIdentifier(types[i], persister.getPropertyValue(entity, i), session);
+            }
+        }
+        return null;
+    }
+
+    private static Serializable getIdentifier(Type type, Object value, SharedSessionContractImplementor session) {
+        if (value != null && type.isEntityType()) {
+            return ForeignKeys.getEntityIdentifierIfNotUnsaved(
+                    ((EntityType) type).getAssociatedEntityName(), value, session);
+        }
+        return (Serializable) value;
+    }
+
+    private static boolean matches(List<String> keyColumns, String[] columns) {
+        if (keyColumns.size() != columns.length) {
+            return false;
+        }
+        for (int i = 0; i < columns.length; i++) {
+            if (!keyColumns.get(i).equals(QueryUtils.normalizeQualifiedName(columns[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.ruesga.phoenix.dialect.SqlTokenizer.Token;
+import com.ruesga.phoenix.dialect.SqlTokenizer.TokenType;
+
+/**
+ * Places Phoenix hints in a query. By default hints go to the top-level SELECT, but they
+ * can also target the branches of an {@code UNION ALL} or a subquery by its alias. Hints
+ * already present in the query are merged with the new ones.
+ */
+public final class QueryHints {
+
+    private static final String TARGET_PREFIX = "@";
+    private static final String UNION_TARGET = "union:";
+    private static final String ALL_BRANCHES = "*";
+
+    private static final BoundedCache<String, String> CACHE = new BoundedCache<>(2048);
+
+    private QueryHints() {
+    }
+
+    /**
+     * Targets the branch {@code branch} (zero based) of the first {@code UNION ALL} of the query.
+     */
+    public static String union(int branch, String hint) {
+        return TARGET_PREFIX + UNION_TARGET + branch + " " + hint;
+    }
+
+    /**
+     * Targets every branch of the first {@code UNION ALL} of the query.
+     */
+    public static String unionAll(String hint) {
+        return TARGET_PREFIX + UNION_TARGET + ALL_BRANCHES + " " + hint;
+    }
+
+    /**
+     * Targets the subquery aliased as {@code alias}.
+     */
+    public static String subquery(String alias, String hint) {
+        return TARGET_PREFIX + alias + " " + hint;
+    }
+
+    public static String apply(String query, List<String> hints) {
+        if (hints == null || hints.isEmpty()) {
+            return query;
+        }
+        final StringBuilder key = new StringBuilder(query);
+        for (String hint : hints) {
+            key.append('\u0000').append(hint);
+        }
+        return CACHE.computeIfAbsent(key.toString(), k -> inject(query, hints));
+    }
+
+    static String inject(String query, List<String> hints) {
+        final List<Token> tokens = SqlTokenizer.tokenize(query);
+        final QueryBlocks blocks = new QueryBlocks(tokens);
+
+        // Resolve every hint to the SELECT tokens it belongs to
+        final Map<Integer, List<String>> additions = new LinkedHashMap<>();
+        for (String hint : hints) {
+            String target = "";
+            String body = hint.trim();
+            if (body.startsWith(TARGET_PREFIX)) {
+                int sep = firstWhitespace(body);
+                target = body.substring(TARGET_PREFIX.length(), sep);
+                body = body.substring(sep).trim();
+            }
+            List<String> items = parseHint(body);
+            if (items.isEmpty()) {
+                continue;
+            }
+            for (Integer select : blocks.resolve(target)) {
+                List<String> merged = additions.get(select);
+                if (merged == null) {
+                    merged = new ArrayList<>();
+                    additions.put(select, merged);
+                }
+                merge(merged, items);
+            }
+        }
+
+        final StringBuilder sb = new StringBuilder(query.length() + 64);
+        int pos = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            if (token.type == TokenType.COMMENT) {
+                sb.append(query, pos, token.start);
+                pos = token.end;
+                continue;
+            }
+            List<String> items = additions.get(i);
+            if (items == null) {
+                continue;
+            }
+
+            Token next = i + 1 < tokens.size() ? tokens.get(i + 1) : null;
+            if (next != null && next.type == TokenType.HINT) {
+                // Merge with the hints the query already has
+                List<String> merged = parseHint(next.text);
+                merge(merged, items);
+                sb.append(query, pos, next.start).append(buildHint(merged));
+                pos = next.end;
+                i++;
+            } else {
+                sb.append(query, pos, token.end).append(' ').append(buildHint(items));
+                pos = token.end;
+            }
+        }
+        sb.append(query, pos, query.length());
+        return sb.toString().trim();
+    }
+
+    static List<String> parseHint(String hint) {
+        String body = hint.trim();
+        if (body.startsWith("/*+")) {
+            body = body.substring(3);
+            if (body.endsWith("*/")) {
+                body = body.substring(0, body.length() - 2);
+            }
+        }
+
+        final List<String> items = new ArrayList<>();
+        final StringBuilder item = new StringBuilder();
+        int depth = 0;
+        for (int i = 0; i < body.length(); i++) {
+            char c = body.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            }
+            if (depth == 0 && (Character.isWhitespace(c) || c == ',')) {
+                addHintItem(items, item);
+            } else {
+                item.append(c);
+            }
+        }
+        addHintItem(items, item);
+        return items;
+    }
+
+    private static void addHintItem(List<String> items, StringBuilder item) {
+        if (item.length() > 0) {
+            merge(items, Collections.singletonList(item.toString().replaceAll("\\s+", " ")));
+            item.setLength(0);
+        }
+    }
+
+    private static void merge(List<String> items, List<String> others) {
+        // Hint names are case insensitive, so compare them that way to drop duplicates
+        for (String other : others) {
+            boolean found = false;
+            for (String item : items) {
+                if (item.equalsIgnoreCase(other)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                items.add(other);
+            }
+        }
+    }
+
+    private static String buildHint(List<String> items) {
+        return "/*+ " + String.join(" ", items) + " */";
+    }
+
+    private static int firstWhitespace(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (Character.isWhitespace(s.charAt(i))) {
+                return i;
+            }
+        }
+        return s.length();
+    }
+
+    private static final class QueryBlocks {
+        private static final int TOP_LEVEL = -1;
+
+        // Block (parenthesis group) of every SELECT keyword, in order
+        private final Map<Integer, List<Integer>> selectsByBlock = new LinkedHashMap<>();
+        // SELECT of every UNION branch of a block, whether parenthesized or not
+        private final Map<Integer, List<Integer>> branchesByBlock = new HashMap<>();
+        private final Map<String, Integer> blocksByAlias = new HashMap<>();
+        private final List<Integer> unionBlocks = new ArrayList<>();
+        private int firstSelect = -1;
+
+        QueryBlocks(List<Token> tokens) {
+            final Deque<Integer> blocks = new ArrayDeque<>();
+            final Map<Integer, Integer> blockOpenings = new HashMap<>();
+            final Map<Integer, Integer> branchParents = new HashMap<>();
+            int nextBlock = 0;
+            for (int i = 0; i < tokens.size(); i++) {
+                Token t = tokens.get(i);
+                int block = blocks.isEmpty() ? TOP_LEVEL : blocks.peek();
+                if (t.isSymbol("(")) {
+                    // A group opening the query or following UNION [ALL] is a branch of its block
+                    Token previous = i > 0 ? tokens.get(i - 1) : null;
+                    if (previous == null || previous.isSymbol("(") || previous.is("union") || previous.is("all")) {
+                        branchParents.put(nextBlock, block);
+                    }
+                    blocks.push(nextBlock);
+                    blockOpenings.put(nextBlock, i);
+                    nextBlock++;
+                } else if (t.isSymbol(")")) {
+                    if (!blocks.isEmpty()) {
+                        blocks.pop();
+                    }
+                } else if (t.is("select")) {
+                    if (firstSelect == -1) {
+                        firstSelect = i;
+                    }
+                    List<Integer> selects = selectsByBlock.get(block);
+                    if (selects == null) {
+                        selects = new ArrayList<>();
+                        selectsByBlock.put(block, selects);
+                        if (block != TOP_LEVEL) {
+                            registerAlias(tokens, blockOpenings.get(block), block);
+                        }
+                    }
+                    selects.add(i);
+                    branchesByBlock.computeIfAbsent(block, b -> new ArrayList<>()).add(i);
+                    Integer parent = branchParents.get(block);
+                    if (parent != null && selects.size() == 1) {
+                        branchesByBlock.computeIfAbsent(parent, b -> new ArrayList<>()).add(i);
+                    }
+                } else if (t.is("union") && !unionBlocks.contains(block)) {
+                    unionBlocks.add(block);
+                }
+            }
+        }
+
+        private void registerAlias(List<Token> tokens, int open, int block) {
+            int close = SqlTokenizer.findClosingParenthesis(tokens, open);
+            if (close == -1 || close + 1 >= tokens.size()) {
+                return;
+            }
+            int idx = close + 1;
+            if (tokens.get(idx).is("as") && idx + 1 < tokens.size()) {
+                idx++;
+            }
+            Token alias = tokens.get(idx);
+            if (alias.type == TokenType.WORD || alias.type == TokenType.QUOTED) {
+                blocksByAlias.put(alias.identifier(), block);
+            }
+        }
+
+        List<Integer> resolve(String target) {
+            if (target.isEmpty()) {
+                List<Integer> top = selectsByBlock.get(TOP_LEVEL);
+                if (top != null) {
+                    return Collections.singletonList(top.get(0));
+                }
+                return firstSelect == -1
+                        ? Collections.<Integer>emptyList() : Collections.singletonList(firstSelect);
+            }
+
+            if (target.toLowerCase().startsWith(UNION_TARGET)) {
+                if (unionBlocks.isEmpty()) {
+                    return resolve("");
+                }
+                List<Integer> branches = branchesByBlock.get(unionBlocks.get(0));
+                if (branches == null) {
+                    return Collections.emptyList();
+                }
+                String branch = target.substring(UNION_TARGET.length());
+                if (branch.equals(ALL_BRANCHES)) {
+                    return branches;
+                }
+                try {
+                    int n = Integer.parseInt(branch);
+                    return n >= 0 && n < branches.size()
+                            ? Collections.singletonList(branches.get(n)) : Collections.<Integer>emptyList();
+                } catch (NumberFormatException ex) {
+                    return Collections.emptyList();
+                }
+            }
+
+            String alias = target.startsWith("\"") && target.endsWith("\"") && target.length() > 1
+                    ? target.substring(1, target.length() - 1) : target.toUpperCase();
+            Integer block = blocksByAlias.get(alias);
+            if (block == null) {
+                return Collections.emptyList();
+            }
+            return selectsByBlock.get(block);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import org.hibernate.HibernateException;
+
+/**
+ * Thrown when a statement is rejected because of its Phoenix execution plan.
+ */
+public class QueryPlanException extends HibernateException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ExplainedPlan plan;
+
+    public QueryPlanException(String message, ExplainedPlan plan) {
+        super(message);
+        this.plan = plan;
+    }
+
+    public ExplainedPlan getPlan() {
+        return plan;
+    }
+}
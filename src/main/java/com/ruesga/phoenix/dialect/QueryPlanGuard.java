@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.phoenix.jdbc.PhoenixPreparedStatement;
+import org.jboss.logging.Logger;
+
+import com.ruesga.phoenix.dialect.ExplainedPlan.PlanType;
+
+/**
+ * Explains every distinct statement once and applies a {@link Policy} to the ones whose
+ * plan has any of the flagged {@link PlanType}s (full scans by default).
+ */
+public final class QueryPlanGuard {
+
+    private static final Logger LOG = Logger.getLogger(QueryPlanGuard.class);
+
+    public enum Policy {
+        // Don't explain statements at all
+        NONE,
+        // Log flagged plans the first time they are seen
+        LOG,
+        // Only count executions of flagged plans
+        METRIC,
+        // Reject the execution of flagged plans
+        FAIL
+    }
+
+    private final Policy policy;
+    private final Set<PlanType> flagged;
+    private final BoundedCache<String, ExplainedPlan> plans;
+    private final Map<PlanType, LongAdder> planCounts = new EnumMap<>(PlanType.class);
+    private final LongAdder violations = new LongAdder();
+
+    public QueryPlanGuard(Policy policy, Set<PlanType> flagged, int cacheSize) {
+        this.policy = policy;
+        this.flagged = flagged.isEmpty() ? EnumSet.noneOf(PlanType.class) : EnumSet.copyOf(flagged);
+        this.plans = new BoundedCache<>(cacheSize);
+        for (PlanType type : PlanType.values()) {
+            planCounts.put(type, new LongAdder());
+        }
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Checks the plan of {@code statement} (already prepared and bound from {@code sql}).
+     *
+     * @throws QueryPlanException if the plan is flagged and the policy is {@link Policy#FAIL}
+     */
+    public ExplainedPlan check(String sql, PreparedStatement statement) {
+        ExplainedPlan plan = plans.get(sql);
+        boolean first = false;
+        if (plan == null) {
+            plan = explain(sql, statement);
+            first = true;
+        }
+        enforce(plan, first);
+        return plan;
+    }
+
+    /**
+     * Explains {@code sql} through a new statement of {@code connection}, binding sample
+     * values for its parameters. Used to check statements before they are executed.
+     */
+    public ExplainedPlan check(String sql, Connection connection) {
+        ExplainedPlan plan = plans.get(sql);
+        if (plan != null) {
+            return plan;
+        }
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            bindSampleParameters(statement);
+            plan = explain(sql, statement);
+        } catch (SQLException ex) {
+            LOG.debugf(ex, "Unable to explain %s", sql);
+            return null;
+        }
+        enforce(plan, true);
+        return plan;
+    }
+
+    public ExplainedPlan getPlan(String sql) {
+        return plans.get(sql);
+    }
+
+    public Map<String, ExplainedPlan> getPlans() {
+        return plans.asMap();
+    }
+
+    /**
+     * Number of distinct statements explained, by the type of their plan steps.
+     */
+    public Map<PlanType, Long> getPlanCounts() {
+        final Map<PlanType, Long> counts = new EnumMap<>(PlanType.class);
+        for (Map.Entry<PlanType, LongAdder> e : planCounts.entrySet()) {
+            counts.put(e.getKey(), e.getValue().sum());
+        }
+        return counts;
+    }
+
+    /**
+     * Number of executions of flagged plans.
+     */
+    public long getViolations() {
+        return violations.sum();
+    }
+
+    public boolean isFlagged(ExplainedPlan plan) {
+        for (PlanType type : plan.getTypes()) {
+            if (flagged.contains(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ExplainedPlan explain(String sql, PreparedStatement statement) {
+        List<String> steps;
+        try {
+            PhoenixPreparedStatement phoenixStatement = statement.unwrap(PhoenixPreparedStatement.class);
+            steps = phoenixStatement.optimizeQuery().getExplainPlan().getPlanSteps();
+        } catch (SQLException | RuntimeException ex) {
+            // Remember the failure too, so the statement is not explained again
+            LOG.debugf(ex, "Unable to explain %s", sql);
+            steps = Collections.emptyList();
+        }
+
+        ExplainedPlan plan = new ExplainedPlan(sql, steps);
+        ExplainedPlan prev = plans.get(sql);
+        if (prev != null) {
+            return prev;
+        }
+        plans.put(sql, plan);
+        for (PlanType type : plan.getTypes()) {
+            planCounts.get(type).increment();
+        }
+        return plan;
+    }
+
+    private void enforce(ExplainedPlan plan, boolean first) {
+        if (!isFlagged(plan)) {
+            return;
+        }
+        violations.increment();
+        switch (policy) {
+            case LOG:
+                if (first) {
+                    LOG.warnf("Flagged Phoenix plan %s for statement: %s%n%s",
+                            plan.getTypes(), plan.getSql(), plan);
+                }
+                break;
+            case FAIL:
+                throw new QueryPlanException("Statement rejected because its Phoenix plan is "
+                        + plan.getTypes() + ": " + plan.getSql() + "\n" + plan, plan);
+            default:
+                break;
+        }
+    }
+
+    private static void bindSampleParameters(PreparedStatement statement) throws SQLException {
+        // The plan shape doesn't depend on the values, but Phoenix requires every parameter bound
+        final ParameterMetaData metadata = statement.getParameterMetaData();
+        for (int i = 1; i <= metadata.getParameterCount(); i++) {
+            int type = metadata.getParameterType(i);
+            switch (type) {
+                case Types.VARCHAR:
+                case Types.CHAR:
+                    statement.setString(i, "0");
+                    break;
+                case Types.DATE:
+                    statement.setDate(i, new java.sql.Date(0L));
+                    break;
+                case Types.TIME:
+                    statement.setTime(i, new java.sql.Time(0L));
+                    break;
+                case Types.TIMESTAMP:
+                    statement.setTimestamp(i, new java.sql.Timestamp(0L));
+                    break;
+                case Types.BOOLEAN:
+                    statement.setBoolean(i, false);
+                    break;
+                case Types.DECIMAL:
+                    statement.setBigDecimal(i, BigDecimal.ONE);
+                    break;
+                case Types.BINARY:
+                case Types.VARBINARY:
+                    statement.setBytes(i, new byte[] {0});
+                    break;
+                default:
+                    statement.setInt(i, 1);
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,464 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.ruesga.phoenix.dialect.SqlTokenizer.Token;
+import com.ruesga.phoenix.dialect.SqlTokenizer.TokenType;
+
+/**
+ * The access pattern of a query over a single table: which columns are projected, which
+ * ones are bound by equality or range predicates, the ordering and the limit. Only the
+ * simple statements Hibernate generates for entity loads and single-entity HQL queries
+ * are recognized; anything else (subqueries, unions, ...) is not parsed.
+ */
+public final class QueryShape {
+
+    private static final Set<String> CLAUSE_KEYWORDS = new HashSet<>(Arrays.asList(
+            "WHERE", "GROUP", "ORDER", "HAVING", "LIMIT", "OFFSET", "UNION", "ON", "INNER", "LEFT",
+            "RIGHT", "FULL", "CROSS", "JOIN", "FOR"));
+    private static final Set<String> AGGREGATES = new HashSet<>(Arrays.asList(
+            "COUNT", "SUM", "MIN", "MAX", "AVG", "DISTINCT_COUNT", "APPROX_COUNT_DISTINCT",
+            "PERCENTILE_CONT", "PERCENTILE_DISC", "PERCENT_RANK", "STDDEV_POP", "STDDEV_SAMP",
+            "FIRST_VALUE", "LAST_VALUE", "FIRST_VALUES", "LAST_VALUES", "NTH_VALUE"));
+    private static final Set<String> COMPARISONS = new HashSet<>(Arrays.asList(
+            "=", "<", ">", "<=", ">=", "<>", "!="));
+
+    private String table;
+    private String alias;
+    private boolean join;
+    private boolean disjunction;
+    private boolean aggregate;
+    private boolean distinct;
+    private boolean groupBy;
+    private boolean limit;
+    private Integer literalLimit;
+    private final Set<String> projection = new LinkedHashSet<>();
+    private final Set<String> equalities = new LinkedHashSet<>();
+    private final Set<String> ranges = new LinkedHashSet<>();
+    private final Set<String> inLists = new LinkedHashSet<>();
+    private final Set<String> otherFilters = new LinkedHashSet<>();
+    private final List<String> orderBy = new ArrayList<>();
+
+    private QueryShape() {
+    }
+
+    /**
+     * Parses {@code sql}, returning {@code null} if it is not a query over a single table
+     * (joins are allowed, but only the columns of the first table are tracked).
+     */
+    public static QueryShape parse(String sql) {
+        final List<Token> tokens = new ArrayList<>();
+        for (Token t : SqlTokenizer.tokenize(sql)) {
+            if (t.type != TokenType.COMMENT && t.type != TokenType.HINT) {
+                tokens.add(t);
+            }
+        }
+        if (tokens.isEmpty() || !tokens.get(0).is("select")) {
+            return null;
+        }
+        for (Token t : tokens) {
+            if (t.is("union")) {
+                return null;
+            }
+        }
+
+        final QueryShape shape = new QueryShape();
+        int from = indexOfTopLevel(tokens, 1, "FROM");
+        if (from == -1) {
+            return null;
+        }
+
+        // FROM <table> [AS] [alias]
+        int i = from + 1;
+        if (i >= tokens.size() || !isIdentifier(tokens.get(i))) {
+            return null;
+        }
+        String name = tokens.get(i).identifier();
+        i++;
+        if (i + 1 < tokens.size() && tokens.get(i).isSymbol(".") && isIdentifier(tokens.get(i + 1))) {
+            name = name + "." + tokens.get(i + 1).identifier();
+            i += 2;
+        }
+        shape.table = name;
+        if (i < tokens.size() && tokens.get(i).is("as")) {
+            i++;
+        }
+        if (i < tokens.size() && isIdentifier(tokens.get(i)) && !isClauseKeyword(tokens.get(i))) {
+            shape.alias = tokens.get(i).identifier();
+            i++;
+        }
+
+        shape.parseProjection(tokens.subList(1, from));
+
+        // Walk the remaining top-level clauses
+        int depth = 0;
+        int whereStart = -1;
+        String clause = null;
+        int clauseStart = -1;
+        for (; i <= tokens.size(); i++) {
+            Token t = i < tokens.size() ? tokens.get(i) : null;
+            if (t != null && t.isSymbol("(")) {
+                depth++;
+                continue;
+            }
+            if (t != null && t.isSymbol(")")) {
+                depth--;
+                continue;
+            }
+            if (t != null && depth > 0) {
+                continue;
+            }
+            String keyword = t != null && t.type == TokenType.WORD ? t.text.toUpperCase() : null;
+            boolean boundary = t == null || (keyword != null && CLAUSE_KEYWORDS.contains(keyword))
+                    || (t.isSymbol(",") && clause == null);
+            if (!boundary) {
+                continue;
+            }
+
+            // Close the current clause
+            if ("WHERE".equals(clause)) {
+                shape.parseWhere(tokens.subList(whereStart, i), true);
+            } else if ("ORDER".equals(clause)) {
+                shape.parseOrderBy(tokens.subList(clauseStart, i));
+            } else if ("LIMIT".equals(clause) && clauseStart < i) {
+                shape.limit = true;
+                Token value = tokens.get(clauseStart);
+                if (value.type == TokenType.NUMBER) {
+                    try {
+                        shape.literalLimit = Integer.valueOf(value.text);
+                    } catch (NumberFormatException ex) {
+                        // Not an int
+                    }
+                }
+            }
+            if (t == null) {
+                break;
+            }
+
+            if (t.isSymbol(",") || "JOIN".equals(keyword) || "INNER".equals(keyword) || "LEFT".equals(keyword)
+                    || "RIGHT".equals(keyword) || "FULL".equals(keyword) || "CROSS".equals(keyword)) {
+                shape.join = true;
+                clause = "JOIN";
+            } else if ("WHERE".equals(keyword)) {
+                clause = keyword;
+                whereStart = i + 1;
+            } else if ("GROUP".equals(keyword)) {
+                shape.groupBy = true;
+                clause = keyword;
+            } else if ("ORDER".equals(keyword)) {
+                clause = keyword;
+                clauseStart = i + 2;
+            } else if ("LIMIT".equals(keyword)) {
+                clause = keyword;
+                clauseStart = i + 1;
+            } else if ("ON".equals(keyword)) {
+                // Join conditions do not restrict the main table scan
+                clause = "ON";
+            } else {
+                clause = keyword;
+            }
+        }
+        return shape;
+    }
+
+    /**
+     * Returns the table modified by an {@code UPSERT} or {@code DELETE} statement, in the form
+     * {@code SCHEMA.TABLE}, or {@code null} if {@code sql} is not a mutation.
+     */
+    public static String mutatedTable(String sql) {
+        final List<Token> tokens = new ArrayList<>();
+        for (Token t : SqlTokenizer.tokenize(sql)) {
+            if (t.type != TokenType.COMMENT && t.type != TokenType.HINT) {
+                tokens.add(t);
+                if (tokens.size() == 5) {
+                    break;
+                }
+            }
+        }
+        if (tokens.size() < 3 || !(tokens.get(0).is("upsert") && tokens.get(1).is("into"))
+                && !(tokens.get(0).is("delete") && tokens.get(1).is("from"))) {
+            return null;
+        }
+        if (!isIdentifier(tokens.get(2))) {
+            return null;
+        }
+        String name = tokens.get(2).identifier();
+        if (tokens.size() == 5 && tokens.get(3).isSymbol(".") && isIdentifier(tokens.get(4))) {
+            name = name + "." + tokens.get(4).identifier();
+        }
+        return name;
+    }
+
+    private void parseProjection(List<Token> tokens) {
+        for (int i = 0; i < tokens.size(); i++) {
+            Token t = tokens.get(i);
+            if (t.is("distinct")) {
+                distinct = true;
+            } else if (t.type == TokenType.WORD && i + 1 < tokens.size() && tokens.get(i + 1).isSymbol("(")
+                    && AGGREGATES.contains(t.text.toUpperCase())) {
+                aggregate = true;
+            }
+            String column = columnAt(tokens, i);
+            if (column != null) {
+                projection.add(column);
+                i += 2;
+            }
+        }
+    }
+
+    private void parseWhere(List<Token> tokens, boolean conjunctive) {
+        // A disjunction at this level means none of its columns restricts the scan by itself
+        int depth = 0;
+        for (Token t : tokens) {
+            if (t.isSymbol("(")) {
+                depth++;
+            } else if (t.isSymbol(")")) {
+                depth--;
+            } else if (depth == 0 && t.is("or")) {
+                disjunction = true;
+                conjunctive = false;
+                break;
+            }
+        }
+
+        int start = 0;
+        boolean between = false;
+        depth = 0;
+        for (int i = 0; i <= tokens.size(); i++) {
+            Token t = i < tokens.size() ? tokens.get(i) : null;
+            if (t != null) {
+                if (t.isSymbol("(")) {
+                    depth++;
+                } else if (t.isSymbol(")")) {
+                    depth--;
+                }
+                if (depth != 0) {
+                    continue;
+                }
+                if (t.is("between")) {
+                    between = true;
+                    continue;
+                }
+                if (!t.is("and")) {
+                    continue;
+                }
+                if (between) {
+                    between = false;
+                    continue;
+                }
+            }
+            parsePredicate(tokens.subList(start, i), conjunctive);
+            start = i + 1;
+        }
+    }
+
+    private void parsePredicate(List<Token> tokens, boolean simple) {
+        if (tokens.isEmpty()) {
+            return;
+        }
+        // Unwrap redundant parenthesis
+        if (tokens.get(0).isSymbol("(")
+                && SqlTokenizer.findClosingParenthesis(tokens, 0) == tokens.size() - 1) {
+            parseWhere(tokens.subList(1, tokens.size() - 1), simple);
+            return;
+        }
+
+        String column = columnAt(tokens, 0);
+        if (column != null && tokens.size() > 3) {
+            Token op = tokens.get(3);
+            if (COMPARISONS.contains(op.text) && op.type == TokenType.SYMBOL && tokens.size() == 5
+                    && isValue(tokens.get(4))) {
+                addFilter(op.text, column, simple);
+                return;
+            }
+            if (op.is("between")) {
+                (simple ? ranges : otherFilters).add(column);
+                return;
+            }
+            if (op.is("in")) {
+                (simple ? inLists : otherFilters).add(column);
+                return;
+            }
+        }
+        if (tokens.size() == 5 && isValue(tokens.get(0)) && tokens.get(1).type == TokenType.SYMBOL
+                && COMPARISONS.contains(tokens.get(1).text)) {
+            column = columnAt(tokens, 2);
+            if (column != null) {
+                addFilter(tokens.get(1).text, column, simple);
+                return;
+            }
+        }
+
+        // Anything else just counts as a filtered column
+        for (int i = 0; i < tokens.size(); i++) {
+            column = columnAt(tokens, i);
+            if (column != null) {
+                otherFilters.add(column);
+                i += 2;
+            }
+        }
+    }
+
+    private void addFilter(String op, String column, boolean simple) {
+        if (!simple) {
+            otherFilters.add(column);
+        } else if (op.equals("=")) {
+            equalities.add(column);
+        } else if (op.equals("<>") || op.equals("!=")) {
+            otherFilters.add(column);
+        } else {
+            ranges.add(column);
+        }
+    }
+
+    private void parseOrderBy(List<Token> tokens) {
+        for (int i = 0; i < tokens.size(); i++) {
+            String column = columnAt(tokens, i);
+            if (column != null) {
+                orderBy.add(column);
+                i += 2;
+            }
+        }
+    }
+
+    // Returns the column of the main table referenced at i (as in alias.column)
+    private String columnAt(List<Token> tokens, int i) {
+        if (i + 2 >= tokens.size() || !isIdentifier(tokens.get(i)) || !tokens.get(i + 1).isSymbol(".")
+                || !isIdentifier(tokens.get(i + 2))) {
+            return null;
+        }
+        if (i + 3 < tokens.size() && tokens.get(i + 3).isSymbol("(")) {
+            // A qualified function name
+            return null;
+        }
+        String qualifier = tokens.get(i).identifier();
+        if (qualifier.equals(alias) || (alias == null && table != null && table.endsWith(qualifier))) {
+            return tokens.get(i + 2).identifier();
+        }
+        return null;
+    }
+
+    private static boolean isValue(Token t) {
+        return t.type == TokenType.PARAM || t.type == TokenType.NUMBER || t.type == TokenType.STRING
+                || t.is("true") || t.is("false");
+    }
+
+    private static boolean isIdentifier(Token t) {
+        return t.type == TokenType.WORD || t.type == TokenType.QUOTED;
+    }
+
+    private static boolean isClauseKeyword(Token t) {
+        return t.type == TokenType.WORD && CLAUSE_KEYWORDS.contains(t.text.toUpperCase());
+    }
+
+    private static int indexOfTopLevel(List<Token> tokens, int start, String keyword) {
+        int depth = 0;
+        for (int i = start; i < tokens.size(); i++) {
+            Token t = tokens.get(i);
+            if (t.isSymbol("(")) {
+                depth++;
+            } else if (t.isSymbol(")")) {
+                depth--;
+            } else if (depth == 0 && t.is(keyword)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The queried table, in the form {@code SCHEMA.TABLE}.
+     */
+    public String getTable() {
+        return table;
+    }
+
+    public String getAlias() {
+        return alias;
+    }
+
+    public boolean hasJoin() {
+        return join;
+    }
+
+    public boolean hasDisjunction() {
+        return disjunction;
+    }
+
+    public boolean isAggregate() {
+        return aggregate || groupBy || distinct;
+    }
+
+    public boolean hasLimit() {
+        return limit;
+    }
+
+    /**
+     * The limit of the query when it is a literal, or {@code null} if it is a bind parameter.
+     */
+    public Integer getLiteralLimit() {
+        return literalLimit;
+    }
+
+    public Set<String> getProjection() {
+        return Collections.unmodifiableSet(projection);
+    }
+
+    /**
+     * Columns restricted by an equality against a bind parameter or literal.
+     */
+    public Set<String> getEqualities() {
+        return Collections.unmodifiableSet(equalities);
+    }
+
+    public Set<String> getRanges() {
+        return Collections.unmodifiableSet(ranges);
+    }
+
+    public Set<String> getInLists() {
+        return Collections.unmodifiableSet(inLists);
+    }
+
+    public Set<String> getOtherFilters() {
+        return Collections.unmodifiableSet(otherFilters);
+    }
+
+    public List<String> getOrderBy() {
+        return Collections.unmodifiableList(orderBy);
+    }
+
+    /**
+     * Returns how many leading columns of {@code primaryKey} are bound by equalities.
+     */
+    public int boundPrimaryKeyPrefix(List<String> primaryKey) {
+        int bound = 0;
+        for (String column : primaryKey) {
+            if (!equalities.contains(column)) {
+                break;
+            }
+            bound++;
+        }
+        return bound;
+    }
+}
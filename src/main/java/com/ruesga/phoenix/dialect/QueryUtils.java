@@ -15,14 +15,120 @@
  */
 package com.ruesga.phoenix.dialect;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import com.ruesga.phoenix.dialect.SqlTokenizer.Token;
+import com.ruesga.phoenix.dialect.SqlTokenizer.TokenType;
+
 public final class QueryUtils {
     // TODO Ignore hints
     private static final Pattern MULTILINE_COMMENT = Pattern.compile("/\\*.*?\\*/", Pattern.DOTALL);
     private static final Pattern SINGLE_LINE_COMMENT = Pattern.compile("-- (.*)?$", Pattern.MULTILINE);
+    private static final Pattern PRIMARY_KEY = Pattern.compile("primary key \\(", Pattern.CASE_INSENSITIVE);
 
     public static final String removeQueryComments(String query) {
         return SINGLE_LINE_COMMENT.matcher(MULTILINE_COMMENT.matcher(query).replaceAll("")).replaceAll("");
     }
+
+    public static final String normalizeIdentifier(String name, boolean quoted) {
+        if (name == null) {
+            return null;
+        }
+        return quoted ? name : name.toUpperCase();
+    }
+
+    public static final String qualify(String schema, String name) {
+        return schema == null || schema.isEmpty() ? name : schema + "." + name;
+    }
+
+    /**
+     * Returns {@code name} (as in {@code "SCHEMA"."TABLE"}) as Phoenix sees it, in the form
+     * {@code SCHEMA.TABLE}.
+     */
+    public static final String normalizeQualifiedName(String name) {
+        final StringBuilder sb = new StringBuilder();
+        for (Token token : SqlTokenizer.tokenize(name)) {
+            if (token.type == TokenType.WORD || token.type == TokenType.QUOTED) {
+                if (sb.length() > 0) {
+                    sb.append('.');
+                }
+                sb.append(token.identifier());
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the normalized {@code name} (as in {@code SCHEMA.TABLE}) quoted, in the form
+     * {@code "SCHEMA"."TABLE"}.
+     */
+    public static final String quoteQualifiedName(String name) {
+        final StringBuilder sb = new StringBuilder();
+        for (String part : name.split("\\.")) {
+            if (sb.length() > 0) {
+                sb.append('.');
+            }
+            sb.append('"').append(part.replace("\"", "\"\"")).append('"');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Prefixes the definition of {@code column} in the {@code CREATE TABLE} statement {@code create}
+     * with {@code family}.
+     */
+    public static final String qualifyColumnDefinition(String create, String column, String family) {
+        // Column definitions follow the opening parenthesis or a comma and precede the type
+        final Matcher matcher = Pattern.compile("([(,]\\s*)" + Pattern.quote(column) + "(\\s)").matcher(create);
+        if (!matcher.find()) {
+            return create;
+        }
+        return create.substring(0, matcher.start()) + matcher.group(1) + family + "." + column
+                + matcher.group(2) + create.substring(matcher.end());
+    }
+
+    public static final String replacePrimaryKeyColumns(String create, String columns) {
+        final Matcher pk = PRIMARY_KEY.matcher(create);
+        if (!pk.find()) {
+            return create;
+        }
+        final int end = create.indexOf(')', pk.end());
+        return create.substring(0, pk.end()) + columns + create.substring(end);
+    }
+
+    public static final String qualifyPrimaryKeyColumn(String create, String column, String qualifier) {
+        // Primary key columns are listed inside the primary key constraint, separated by commas
+        final Matcher pk = PRIMARY_KEY.matcher(create);
+        if (!pk.find()) {
+            return create;
+        }
+        final Matcher matcher = Pattern.compile("([(,]\\s*)" + Pattern.quote(column)
+                + "(\\s+(?i:ASC|DESC))?(?=\\s*[,)])").matcher(create);
+        if (!matcher.find(pk.end() - 1)) {
+            return create;
+        }
+        return create.substring(0, matcher.end()) + " " + qualifier + create.substring(matcher.end());
+    }
+
+    /**
+     * Returns the sizes of the batches of up to {@code maxBatchSize} keys, the largest first: the
+     * maximum and then the powers of two below it. Batches are padded to the next size, so only
+     * a few distinct IN lists are ever prepared.
+     */
+    public static final int[] batchSizes(int maxBatchSize) {
+        final int max = Math.max(1, maxBatchSize);
+        final List<Integer> sizes = new ArrayList<>();
+        sizes.add(max);
+        for (int size = Integer.highestOneBit(max - 1); size >= 1; size >>= 1) {
+            sizes.add(size);
+        }
+        final int[] result = new int[sizes.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = sizes.get(i);
+        }
+        return result;
+    }
 }
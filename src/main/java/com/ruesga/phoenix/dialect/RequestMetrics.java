@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.phoenix.jdbc.PhoenixConnection;
+import org.apache.phoenix.util.PhoenixRuntime;
+import org.jboss.logging.Logger;
+
+/**
+ * Collects the Phoenix request metrics of the executed statements and aggregates them into
+ * histograms per query and per table. Read metrics are taken when Hibernate releases the
+ * result set; write metrics are only known per table, when the connection commits.
+ * <p>
+ * Phoenix only records request metrics for connections opened with the {@code RequestMetric}
+ * property (or {@code phoenix.query.request.metrics.enabled}) set.
+ */
+public final class RequestMetrics implements RequestMetricsMXBean {
+
+    private static final Logger LOG = Logger.getLogger(RequestMetrics.class);
+
+    private static final class Tracked {
+        final RequestMetrics metrics;
+        final String sql;
+
+        Tracked(RequestMetrics metrics, String sql) {
+            this.metrics = metrics;
+            this.sql = sql;
+        }
+    }
+
+    // Result sets being read and connections with uncommitted mutations, released with them
+    private static final WeakIdentityMap<ResultSet, Tracked> RESULT_SETS = new WeakIdentityMap<>();
+    private static final WeakIdentityMap<PhoenixConnection, RequestMetrics> UNCOMMITTED = new WeakIdentityMap<>();
+
+    private final PhoenixMappings mappings;
+    private final BoundedCache<String, Map<String, MetricHistogram>> queries;
+    private final Map<String, Map<String, MetricHistogram>> tables = new ConcurrentHashMap<>();
+    private final LongAdder statements = new LongAdder();
+    private volatile boolean warned = false;
+
+    public RequestMetrics(PhoenixMappings mappings, int cacheSize) {
+        this.mappings = mappings;
+        this.queries = new BoundedCache<>(cacheSize);
+    }
+
+    /**
+     * Starts tracking the result set of the query {@code sql}.
+     */
+    public void trackRead(String sql, ResultSet rs) {
+        try {
+            if (!isEnabled(rs.getStatement().getConnection())) {
+                return;
+            }
+        } catch (SQLException ex) {
+            LOG.debugf(ex, "Unable to track metrics of %s", sql);
+            return;
+        }
+        RESULT_SETS.put(rs, new Tracked(this, sql));
+    }
+
+    /**
+     * Starts tracking the mutations of {@code statement}.
+     */
+    public void trackWrite(Statement statement) {
+        try {
+            final Connection connection = statement.getConnection();
+            if (!isEnabled(connection)) {
+                return;
+            }
+            if (connection.getAutoCommit()) {
+                collectWrites(connection);
+            } else {
+                UNCOMMITTED.put(connection.unwrap(PhoenixConnection.class), this);
+            }
+        } catch (SQLException ex) {
+            LOG.debugf(ex, "Unable to track metrics of %s", statement);
+        }
+    }
+
+    /**
+     * Collects the metrics of {@code rs} (if tracked), before it is closed.
+     */
+    public static void released(ResultSet rs) {
+        if (RESULT_SETS.isEmpty()) {
+            return;
+        }
+        final Tracked tracked = RESULT_SETS.remove(rs);
+        if (tracked != null) {
+            tracked.metrics.collectRead(tracked.sql, rs);
+        }
+    }
+
+    /**
+     * Collects the write metrics of {@code connection} (if tracked), once committed.
+     */
+    public static void committed(Connection connection) {
+        if (UNCOMMITTED.isEmpty()) {
+            return;
+        }
+        try {
+            final RequestMetrics metrics = UNCOMMITTED.remove(connection.unwrap(PhoenixConnection.class));
+            if (metrics != null) {
+                metrics.collectWrites(connection);
+            }
+        } catch (SQLException ex) {
+            LOG.debugf(ex, "Unable to collect the write metrics of %s", connection);
+        }
+    }
+
+    /**
+     * Drops the write metrics of {@code connection} (if tracked), once rolled back.
+     */
+    public static void rolledBack(Connection connection) {
+        if (UNCOMMITTED.isEmpty()) {
+            return;
+        }
+        try {
+            final PhoenixConnection phoenixConnection = connection.unwrap(PhoenixConnection.class);
+            if (UNCOMMITTED.remove(phoenixConnection) != null) {
+                PhoenixRuntime.resetMetrics(phoenixConnection);
+            }
+        } catch (SQLException ex) {
+            LOG.debugf(ex, "Unable to drop the write metrics of %s", connection);
+        }
+    }
+
+    private boolean isEnabled(Connection connection) throws SQLException {
+        final boolean enabled = connection.unwrap(PhoenixConnection.class).isRequestLevelMetricsEnabled();
+        if (!enabled && !warned) {
+            warned = true;
+            LOG.warnf("Phoenix request metrics are disabled. Set the %s connection property",
+                    PhoenixRuntime.REQUEST_METRIC_ATTRIB);
+        }
+        return enabled;
+    }
+
+    private void collectRead(String sql, ResultSet rs) {
+        try {
+            final Map<String, MetricHistogram> query = queries.computeIfAbsent(
+                    sql, k -> new ConcurrentHashMap<>());
+            record(query, PhoenixRuntime.getOverAllReadRequestMetrics(rs));
+
+            final Map<String, Long> totals = new HashMap<>();
+            for (Map.Entry<String, Map<String, Long>> e : PhoenixRuntime.getRequestReadMetrics(rs).entrySet()) {
+                record(tables.computeIfAbsent(e.getKey(), k -> new ConcurrentHashMap<>()), e.getValue());
+                for (Map.Entry<String, Long> metric : e.getValue().entrySet()) {
+                    totals.merge(metric.getKey(), metric.getValue(), Long::sum);
+                }
+            }
+            record(query, totals);
+            statements.increment();
+        } catch (SQLException ex) {
+            LOG.debugf(ex, "Unable to collect the read metrics of %s", sql);
+        }
+    }
+
+    private void collectWrites(Connection connection) throws SQLException {
+        for (Map.Entry<String, Map<String, Long>> e
+                : PhoenixRuntime.getWriteMetricsForMutationsSinceLastReset(connection).entrySet()) {
+            record(tables.computeIfAbsent(e.getKey(), k -> new ConcurrentHashMap<>()), e.getValue());
+        }
+        PhoenixRuntime.resetMetrics(connection);
+        statements.increment();
+    }
+
+    private static void record(Map<String, MetricHistogram> histograms, Map<String, Long> metrics) {
+        for (Map.Entry<String, Long> metric : metrics.entrySet()) {
+            histograms.computeIfAbsent(metric.getKey(), k -> new MetricHistogram()).record(metric.getValue());
+        }
+    }
+
+    /**
+     * The metric histograms of the query {@code sql}, by metric name.
+     */
+    public Map<String, MetricHistogram> getQueryMetrics(String sql) {
+        final Map<String, MetricHistogram> metrics = queries.get(sql);
+        return metrics != null ? Collections.unmodifiableMap(metrics) : Collections.emptyMap();
+    }
+
+    /**
+     * The metric histograms of the table {@code table} (as in {@code SCHEMA.TABLE}), by metric name.
+     */
+    public Map<String, MetricHistogram> getTableMetrics(String table) {
+        final Map<String, MetricHistogram> metrics = tables.get(table);
+        return metrics != null ? Collections.unmodifiableMap(metrics) : Collections.emptyMap();
+    }
+
+    /**
+     * The metric histograms of the table mapped by {@code entityClass}, by metric name.
+     */
+    public Map<String, MetricHistogram> getTableMetrics(Class<?> entityClass) {
+        final TableMapping table = mappings != null ? mappings.getTable(entityClass) : null;
+        return table != null ? getTableMetrics(table.getQualifiedName()) : Collections.emptyMap();
+    }
+
+    @Override
+    public long getStatementCount() {
+        return statements.sum();
+    }
+
+    @Override
+    public Set<String> getQueries() {
+        return Collections.unmodifiableSet(queries.asMap().keySet());
+    }
+
+    @Override
+    public Set<String> getTables() {
+        return Collections.unmodifiableSet(tables.keySet());
+    }
+
+    @Override
+    public Map<String, Long> getQuerySummary(String sql) {
+        return summarize(getQueryMetrics(sql));
+    }
+
+    @Override
+    public Map<String, Long> getTableSummary(String table) {
+        return summarize(getTableMetrics(table));
+    }
+
+    @Override
+    public void reset() {
+        queries.clear();
+        tables.clear();
+        statements.reset();
+    }
+
+    private static Map<String, Long> summarize(Map<String, MetricHistogram> histograms) {
+        final Map<String, Long> summary = new TreeMap<>();
+        for (Map.Entry<String, MetricHistogram> e : histograms.entrySet()) {
+            final MetricHistogram histogram = e.getValue();
+            summary.put(e.getKey() + ".count", histogram.getCount());
+            summary.put(e.getKey() + ".sum", histogram.getSum());
+            summary.put(e.getKey() + ".max", histogram.getMax());
+            summary.put(e.getKey() + ".p50", histogram.getPercentile(50));
+            summary.put(e.getKey() + ".p95", histogram.getPercentile(95));
+        }
+        return summary;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * JMX view of the {@link RequestMetrics}. Summaries are keyed as {@code METRIC.count},
+ * {@code METRIC.sum}, {@code METRIC.max}, {@code METRIC.p50} and {@code METRIC.p95}.
+ */
+public interface RequestMetricsMXBean {
+
+    /**
+     * Number of result sets and commits whose metrics were collected.
+     */
+    long getStatementCount();
+
+    Set<String> getQueries();
+
+    Set<String> getTables();
+
+    Map<String, Long> getQuerySummary(String sql);
+
+    Map<String, Long> getTableSummary(String table);
+
+    void reset();
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+/**
+ * An approximate row count, estimated from the guideposts of the table statistics.
+ */
+public final class RowCountEstimate {
+
+    static final RowCountEstimate UNKNOWN = new RowCountEstimate(-1L, -1L, -1L, 0L);
+
+    private final long count;
+    private final long minimum;
+    private final long maximum;
+    private final long timestamp;
+
+    RowCountEstimate(long count, long minimum, long maximum, long timestamp) {
+        this.count = count;
+        this.minimum = minimum;
+        this.maximum = maximum;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Whether the table has statistics to estimate from. Otherwise all the counts are {@code -1}.
+     */
+    public boolean isAvailable() {
+        return count >= 0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * The lower bound of the count, as of the time the statistics were collected.
+     */
+    public long getMinimum() {
+        return minimum;
+    }
+
+    /**
+     * The upper bound of the count, as of the time the statistics were collected.
+     */
+    public long getMaximum() {
+        return maximum;
+    }
+
+    /**
+     * When the statistics were collected (0 if unknown). Rows mutated since are not accounted.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "RowCountEstimate [count=" + count + ", minimum=" + minimum + ", maximum=" + maximum
+                + ", timestamp=" + timestamp + "]";
+    }
+}
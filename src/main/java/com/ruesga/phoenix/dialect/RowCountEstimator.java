@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Estimates the rows of the tables from their guideposts. The guideposts of every table are
+ * read once and cached for a while, so estimating doesn't cost more than a map lookup.
+ */
+public final class RowCountEstimator {
+
+    private static final Logger LOG = Logger.getLogger(RowCountEstimator.class);
+
+    private static final class Entry {
+        final Guideposts guideposts;
+        final long expires;
+
+        Entry(Guideposts guideposts, long expires) {
+            this.guideposts = guideposts;
+            this.expires = expires;
+        }
+    }
+
+    private final long ttl;
+    private final Map<String, Entry> tables = new ConcurrentHashMap<>();
+
+    public RowCountEstimator(long ttl) {
+        this.ttl = ttl;
+    }
+
+    /**
+     * Estimates the rows of {@code qualifiedName} (as in {@code SCHEMA.TABLE}) whose leading
+     * primary key column is in {@code [lower, upper)}, {@code null} meaning unbounded.
+     */
+    public RowCountEstimate estimate(Connection connection, String qualifiedName, Object lower, Object upper) {
+        final Guideposts guideposts = getGuideposts(connection, qualifiedName);
+        if (guideposts == null || !guideposts.hasStatistics()) {
+            return RowCountEstimate.UNKNOWN;
+        }
+        final long[] rows = guideposts.estimateRows(lower, upper);
+        return new RowCountEstimate(rows[0], rows[1], rows[2], guideposts.getTimestamp());
+    }
+
+    /**
+     * Discards the cached guideposts of {@code qualifiedName}, so the next estimate reads them again.
+     */
+    public void invalidate(String qualifiedName) {
+        tables.remove(qualifiedName);
+    }
+
+    public void clear() {
+        tables.clear();
+    }
+
+    private Guideposts getGuideposts(Connection connection, String qualifiedName) {
+        final long now = System.currentTimeMillis();
+        final Entry entry = tables.get(qualifiedName);
+        if (entry != null && entry.expires > now) {
+            return entry.guideposts;
+        }
+        try {
+            final Guideposts guideposts = Guideposts.read(connection, qualifiedName);
+            tables.put(qualifiedName, new Entry(guideposts, now + ttl));
+            return guideposts;
+        } catch (SQLException ex) {
+            LOG.debugf(ex, "Unable to read the guideposts of %s", qualifiedName);
+            return entry != null ? entry.guideposts : null;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Detects primary key point lookups and short, limited range scans so they can be hinted
+ * as {@code SMALL}/{@code SERIAL} scans instead of being planned as parallel scans.
+ */
+public final class SmallScanClassifier {
+
+    public static final String HINT_SMALL = "SMALL";
+    public static final String HINT_SERIAL = "SERIAL";
+
+    private static final List<String> POINT_LOOKUP_HINTS = Collections.singletonList(HINT_SMALL);
+    private static final List<String> SHORT_SCAN_HINTS = Arrays.asList(HINT_SMALL, HINT_SERIAL);
+
+    enum Kind {
+        // All the primary key columns are bound by equalities
+        POINT_LOOKUP,
+        // A limited scan that can be served in primary key order
+        ORDERED_SCAN,
+        OTHER
+    }
+
+    static final class Classification {
+        final Kind kind;
+        final Integer literalLimit;
+
+        Classification(Kind kind, Integer literalLimit) {
+            this.kind = kind;
+            this.literalLimit = literalLimit;
+        }
+    }
+
+    private static final Classification OTHER = new Classification(Kind.OTHER, null);
+
+    private final PhoenixMappings mappings;
+    private final int maxRows;
+    private final BoundedCache<String, Classification> cache = new BoundedCache<>(2048);
+
+    public SmallScanClassifier(PhoenixMappings mappings, int maxRows) {
+        this.mappings = mappings;
+        this.maxRows = maxRows;
+    }
+
+    /**
+     * Returns the hints to add to {@code sql}, given the row limits requested through
+     * Hibernate ({@code null} when not set).
+     */
+    public List<String> hints(String sql, Integer maxResults, Integer firstResult) {
+        final Classification classification = cache.computeIfAbsent(sql, this::classify);
+        switch (classification.kind) {
+            case POINT_LOOKUP:
+                return POINT_LOOKUP_HINTS;
+            case ORDERED_SCAN:
+                Integer rows = classification.literalLimit;
+                if (rows == null && maxResults != null) {
+                    rows = maxResults + (firstResult != null ? firstResult : 0);
+                }
+                if (rows != null && rows <= maxRows) {
+                    return SHORT_SCAN_HINTS;
+                }
+                return Collections.emptyList();
+            default:
+                return Collections.emptyList();
+        }
+    }
+
+    Classification classify(String sql) {
+        final QueryShape shape = QueryShape.parse(sql);
+        if (shape == null || shape.hasJoin() || shape.isAggregate()) {
+            return OTHER;
+        }
+        final TableMapping table = mappings.getTable(shape.getTable());
+        if (table == null || table.getPrimaryKey().isEmpty()) {
+            return OTHER;
+        }
+
+        final List<String> pk = table.getPrimaryKey();
+        final int bound = shape.boundPrimaryKeyPrefix(pk);
+        if (bound == pk.size()) {
+            return new Classification(Kind.POINT_LOOKUP, null);
+        }
+        if (!shape.hasLimit()) {
+            return OTHER;
+        }
+
+        // Only a row key ordered scan can stop after the limit is reached
+        final List<String> orderBy = shape.getOrderBy();
+        if (!orderBy.isEmpty()
+                && (bound + orderBy.size() > pk.size()
+                        || !orderBy.equals(pk.subList(bound, bound + orderBy.size())))) {
+            return OTHER;
+        }
+        return new Classification(Kind.ORDERED_SCAN, shape.getLiteralLimit());
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A minimal lexical scanner for the SQL generated by Hibernate. It only knows enough
+ * about the Phoenix grammar to tell apart keywords, identifiers, literals, bind
+ * parameters, comments and hints, so callers can rewrite statements without being
+ * fooled by string literals or comments.
+ */
+public final class SqlTokenizer {
+
+    public enum TokenType {
+        WORD, QUOTED, STRING, NUMBER, PARAM, SYMBOL, COMMENT, HINT
+    }
+
+    public static final class Token {
+        public final TokenType type;
+        public final String text;
+        public final int start;
+        public final int end;
+
+        Token(TokenType type, String text, int start, int end) {
+            this.type = type;
+            this.text = text;
+            this.start = start;
+            this.end = end;
+        }
+
+        public boolean is(String keyword) {
+            return type == TokenType.WORD && text.equalsIgnoreCase(keyword);
+        }
+
+        public boolean isSymbol(String symbol) {
+            return type == TokenType.SYMBOL && text.equals(symbol);
+        }
+
+        /**
+         * Returns the identifier value of this token, unquoting quoted identifiers and
+         * upper-casing unquoted ones like Phoenix does.
+         */
+        public String identifier() {
+            if (type == TokenType.QUOTED) {
+                return text.substring(1, text.length() - 1).replace("\"\"", "\"");
+            }
+            return text.toUpperCase();
+        }
+
+        @Override
+        public String toString() {
+            return type + "[" + text + "]";
+        }
+    }
+
+    private SqlTokenizer() {
+    }
+
+    public static List<Token> tokenize(String sql) {
+        final List<Token> tokens = new ArrayList<>();
+        final int len = sql.length();
+        int i = 0;
+        while (i < len) {
+            char c = sql.charAt(i);
+            int start = i;
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+
+            if (c == '/' && i + 1 < len && sql.charAt(i + 1) == '*') {
+                int close = sql.indexOf("*/", i + 2);
+                i = close == -1 ? len : close + 2;
+                boolean hint = start + 2 < len && sql.charAt(start + 2) == '+';
+                tokens.add(new Token(hint ? TokenType.HINT : TokenType.COMMENT,
+                        sql.substring(start, i), start, i));
+            } else if (c == '-' && i + 1 < len && sql.charAt(i + 1) == '-') {
+                int eol = sql.indexOf('\n', i);
+                i = eol == -1 ? len : eol;
+                tokens.add(new Token(TokenType.COMMENT, sql.substring(start, i), start, i));
+            } else if (c == '\'' || c == '"') {
+                i = skipQuoted(sql, i, c);
+                tokens.add(new Token(c == '\'' ? TokenType.STRING : TokenType.QUOTED,
+                        sql.substring(start, i), start, i));
+            } else if (Character.isLetter(c) || c == '_') {
+                while (i < len && (Character.isLetterOrDigit(sql.charAt(i))
+                        || sql.charAt(i) == '_' || sql.charAt(i) == '$')) {
+                    i++;
+                }
+                tokens.add(new Token(TokenType.WORD, sql.substring(start, i), start, i));
+            } else if (Character.isDigit(c)) {
+                while (i < len && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                tokens.add(new Token(TokenType.NUMBER, sql.substring(start, i), start, i));
+            } else if (c == '?') {
+                i++;
+                tokens.add(new Token(TokenType.PARAM, "?", start, i));
+            } else {
+                i++;
+                if (i < len) {
+                    String pair = sql.substring(start, i + 1);
+                    if (pair.equals("<=") || pair.equals(">=") || pair.equals("<>")
+                            || pair.equals("!=") || pair.equals("||")) {
+                        i++;
+                    }
+                }
+                tokens.add(new Token(TokenType.SYMBOL, sql.substring(start, i), start, i));
+            }
+        }
+        return tokens;
+    }
+
+    private static int skipQuoted(String sql, int i, char quote) {
+        final int len = sql.length();
+        i++;
+        while (i < len) {
+            if (sql.charAt(i) == quote) {
+                if (i + 1 < len && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        return len;
+    }
+
+    /**
+     * Returns the index of the parenthesis that closes the one at {@code open}, or
+     * {@code -1} if the statement is unbalanced.
+     */
+    public static int findClosingParenthesis(List<Token> tokens, int open) {
+        int depth = 0;
+        for (int i = open; i < tokens.size(); i++) {
+            Token t = tokens.get(i);
+            if (t.isSymbol("(")) {
+                depth++;
+            } else if (t.isSymbol(")")) {
+                depth--;
+                if (depth == 0) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Keeps the prepared statements of every connection open for reuse, so repeated queries skip the
+ * parsing and statement creation Phoenix does on the client. Statements are keyed by their final
+ * sql (with the hints already applied) and evicted in least recently used order, up to
+ * {@code capacity} per connection. A statement is only handed out again once Hibernate released
+ * it; a query prepared while its cached statement is still in use gets a new, uncached one.
+ * <p>
+ * Phoenix still builds the plan of every execution, since the scan ranges depend on the values
+ * bound, against the metadata the connection has already resolved.
+ * <p>
+ * The cached statements of a connection are closed and forgotten along with the connection (see
+ * {@link #closed(Connection)}), since they keep their connection reachable.
+ */
+public final class StatementCache {
+
+    private static final Logger LOG = Logger.getLogger(StatementCache.class);
+
+    @FunctionalInterface
+    public interface Preparation {
+        PreparedStatement prepare() throws Throwable;
+    }
+
+    private static final class Entry {
+        final PreparedStatement statement;
+        final int fetchSize;
+        volatile boolean inUse = true;
+        volatile boolean evicted = false;
+
+        Entry(PreparedStatement statement, int fetchSize) {
+            this.statement = statement;
+            this.fetchSize = fetchSize;
+        }
+    }
+
+    // The cache preparing statements in this thread, every cached statement, and the cached
+    // statements of every connection. The statements reference their connection (and the entries
+    // their statement), so these are purged when the connection is closed, not collected
+    private static final ThreadLocal<StatementCache> PREPARING = new ThreadLocal<>();
+    private static final WeakIdentityMap<Statement, Entry> STATEMENTS = new WeakIdentityMap<>();
+    private static final WeakIdentityMap<Connection, Map<String, Entry>> CONNECTIONS = new WeakIdentityMap<>();
+
+    private final int capacity;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public StatementCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Runs {@code preparation}, in which the statements prepared by Hibernate are taken from
+     * this cache.
+     */
+    public PreparedStatement preparing(Preparation preparation) throws Throwable {
+        final StatementCache previous = PREPARING.get();
+        PREPARING.set(this);
+        try {
+            return preparation.prepare();
+        } finally {
+            if (previous != null) {
+                PREPARING.set(previous);
+            } else {
+                PREPARING.remove();
+            }
+        }
+    }
+
+    /**
+     * The cache preparing statements in this thread, if any.
+     */
+    public static StatementCache current() {
+        return PREPARING.get();
+    }
+
+    /**
+     * Returns the idle cached statement of {@code sql} of {@code connection}, or prepares and
+     * caches it through {@code preparation}.
+     */
+    public PreparedStatement get(Connection connection, String sql, Preparation preparation) throws Throwable {
+        final Map<String, Entry> entries = CONNECTIONS.computeIfAbsent(connection, c -> newEntries());
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(sql);
+            if (entry != null && !entry.inUse && !entry.statement.isClosed()) {
+                entry.inUse = true;
+                hits.increment();
+                return entry.statement;
+            }
+        }
+
+        misses.increment();
+        final PreparedStatement statement = preparation.prepare();
+        if (entry != null && entry.inUse && !entry.statement.isClosed()) {
+            // Already in use (as by nested loads of the same entity), so it's not cached
+            return statement;
+        }
+        final Entry created = new Entry(statement, statement.getFetchSize());
+        STATEMENTS.put(statement, created);
+        synchronized (entries) {
+            final Entry replaced = entries.put(sql, created);
+            if (replaced != null) {
+                STATEMENTS.remove(replaced.statement);
+            }
+        }
+        return statement;
+    }
+
+    private Map<String, Entry> newEntries() {
+        return new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= capacity) {
+                    return false;
+                }
+                evict(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    private void evict(Entry entry) {
+        evictions.increment();
+        entry.evicted = true;
+        if (!entry.inUse) {
+            // Statements in use are closed by Hibernate once released
+            STATEMENTS.remove(entry.statement);
+            close(entry.statement);
+        }
+    }
+
+    /**
+     * Returns {@code statement} to its cache, if cached, instead of closing it. Returns whether
+     * the statement was kept open.
+     */
+    public static boolean released(Statement statement) {
+        if (STATEMENTS.isEmpty()) {
+            return false;
+        }
+        final Entry entry = STATEMENTS.get(statement);
+        if (entry == null) {
+            return false;
+        }
+        if (!entry.evicted) {
+            try {
+                final PreparedStatement ps = entry.statement;
+                ps.clearParameters();
+                ps.clearBatch();
+                ps.setMaxRows(0);
+                ps.setQueryTimeout(0);
+                ps.setFetchSize(entry.fetchSize);
+                entry.inUse = false;
+                return true;
+            } catch (SQLException ex) {
+                LOG.debugf(ex, "Unable to reset the statement %s. Closing it", statement);
+                entry.evicted = true;
+            }
+        }
+        STATEMENTS.remove(statement);
+        return false;
+    }
+
+    /**
+     * Forgets the cached statements of {@code connection} if it was closed when released, or keeps
+     * them for the next use of the connection otherwise (as when kept by the connection provider).
+     */
+    public static void released(Connection connection) {
+        if (CONNECTIONS.isEmpty()) {
+            return;
+        }
+        try {
+            if (!connection.isClosed()) {
+                return;
+            }
+        } catch (SQLException ex) {
+            LOG.debugf(ex, "Unable to check the connection %s. Forgetting its statements", connection);
+        }
+        closed(connection);
+    }
+
+    /**
+     * Closes and forgets the cached statements of {@code connection}, closed or about to be.
+     */
+    public static void closed(Connection connection) {
+        if (CONNECTIONS.isEmpty()) {
+            return;
+        }
+        final Map<String, Entry> entries = CONNECTIONS.remove(connection);
+        if (entries == null) {
+            return;
+        }
+        synchronized (entries) {
+            for (Entry entry : entries.values()) {
+                entry.evicted = true;
+                STATEMENTS.remove(entry.statement);
+                close(entry.statement);
+            }
+            entries.clear();
+        }
+    }
+
+    private static void close(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ex) {
+            LOG.debugf(ex, "Unable to close the statement %s", statement);
+        }
+    }
+
+    /**
+     * The statements taken from the cache.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * The statements that had to be prepared.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public double getHitRatio() {
+        final long h = hits.sum();
+        final long total = h + misses.sum();
+        return total == 0 ? 0d : (double) h / total;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void resetMetrics() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.phoenix.jdbc.PhoenixConnection;
+import org.hibernate.SessionFactory;
+import org.hibernate.SessionFactoryObserver;
+import org.hibernate.engine.jdbc.connections.spi.JdbcConnectionAccess;
+import org.jboss.logging.Logger;
+
+/**
+ * Keeps the table statistics fresh: counts the rows mutated in every table and, once past
+ * a threshold, updates the statistics of the table and its indexes in the background. At most
+ * {@code threads} tables are updated at the same time, and every table is queued only once.
+ * <p>
+ * Phoenix buffers the mutations of a transaction in the client until it commits, so they only
+ * count once committed (see {@link #committed(Connection)}) and not at all if rolled back.
+ */
+public final class StatisticsMaintainer implements SessionFactoryObserver {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOG = Logger.getLogger(StatisticsMaintainer.class);
+
+    // The rows mutated by the connections with uncommitted transactions, released with them
+    private static final WeakIdentityMap<PhoenixConnection, Uncommitted> UNCOMMITTED = new WeakIdentityMap<>();
+
+    private static final class Uncommitted {
+        final StatisticsMaintainer maintainer;
+        // Only used by the thread of the connection
+        final Map<String, Long> rows = new HashMap<>();
+
+        Uncommitted(StatisticsMaintainer maintainer) {
+            this.maintainer = maintainer;
+        }
+    }
+
+    private final transient JdbcConnectionAccess access;
+    private final transient RowCountEstimator estimator;
+    private final long threshold;
+    private final transient ExecutorService executor;
+    private final Map<String, LongAdder> mutations = new ConcurrentHashMap<>();
+    private final Set<String> scheduled = ConcurrentHashMap.newKeySet();
+    private final Map<String, Long> refreshes = new ConcurrentHashMap<>();
+
+    public StatisticsMaintainer(JdbcConnectionAccess access, RowCountEstimator estimator,
+            long threshold, int threads) {
+        this.access = access;
+        this.estimator = estimator;
+        this.threshold = Math.max(1L, threshold);
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            final Thread thread = new Thread(r, "phoenix-statistics");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Records {@code rows} rows mutated by {@code statement}, prepared from {@code sql}. Unless
+     * its connection auto-commits, they are held until the transaction commits.
+     */
+    public void recordUpdate(Statement statement, String sql, int rows) {
+        final String table = QueryShape.mutatedTable(sql);
+        if (table == null) {
+            return;
+        }
+        try {
+            final Connection connection = statement.getConnection();
+            if (!connection.getAutoCommit()) {
+                UNCOMMITTED.computeIfAbsent(connection.unwrap(PhoenixConnection.class), c -> new Uncommitted(this))
+                        .rows.merge(table, (long) Math.max(1, rows), Long::sum);
+                return;
+            }
+        } catch (SQLException ex) {
+            LOG.debugf(ex, "Unable to check the transaction of %s", statement);
+        }
+        record(table, Math.max(1, rows));
+    }
+
+    /**
+     * Counts the rows mutated through {@code connection} (if any), once committed.
+     */
+    public static void committed(Connection connection) {
+        if (UNCOMMITTED.isEmpty()) {
+            return;
+        }
+        try {
+            final Uncommitted uncommitted = UNCOMMITTED.remove(connection.unwrap(PhoenixConnection.class));
+            if (uncommitted != null) {
+                for (Map.Entry<String, Long> e : uncommitted.rows.entrySet()) {
+                    uncommitted.maintainer.record(e.getKey(), e.getValue());
+                }
+            }
+        } catch (SQLException ex) {
+            LOG.debugf(ex, "Unable to count the mutations of %s", connection);
+        }
+    }
+
+    /**
+     * Drops the rows mutated through {@code connection} (if any), once rolled back.
+     */
+    public static void rolledBack(Connection connection) {
+        if (UNCOMMITTED.isEmpty()) {
+            return;
+        }
+        try {
+            UNCOMMITTED.remove(connection.unwrap(PhoenixConnection.class));
+        } catch (SQLException ex) {
+            LOG.debugf(ex, "Unable to drop the mutations of %s", connection);
+        }
+    }
+
+    private void record(String table, long rows) {
+        final LongAdder count = mutations.computeIfAbsent(table, t -> new LongAdder());
+        count.add(rows);
+        if (count.sum() >= threshold) {
+            schedule(table);
+        }
+    }
+
+    /**
+     * Queues the update of the statistics of {@code table} (as in {@code SCHEMA.TABLE}), unless
+     * already queued. Returns whether it was queued.
+     */
+    public boolean schedule(String table) {
+        if (!scheduled.add(table)) {
+            return false;
+        }
+        // Mutations recorded from now on count towards the next update
+        mutations.computeIfAbsent(table, t -> new LongAdder()).reset();
+        try {
+            executor.execute(() -> {
+                try {
+                    refresh(table);
+                } finally {
+                    scheduled.remove(table);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException ex) {
+            scheduled.remove(table);
+            return false;
+        }
+    }
+
+    private void refresh(String table) {
+        Connection connection = null;
+        try {
+            connection = access.obtainConnection();
+            update(connection, table);
+            refreshed(table);
+        } catch (SQLException ex) {
+            LOG.warnf(ex, "Unable to update the statistics of %s", table);
+        } finally {
+            if (connection != null) {
+                try {
+                    access.releaseConnection(connection);
+                } catch (SQLException ex) {
+                    LOG.debugf(ex, "Unable to release the connection");
+                }
+            }
+        }
+    }
+
+    /**
+     * Records that the statistics of {@code table} were just updated.
+     */
+    void refreshed(String table) {
+        refreshes.put(table, System.currentTimeMillis());
+        estimator.invalidate(table);
+    }
+
+    /**
+     * Updates the statistics of {@code table} (as in {@code SCHEMA.TABLE}) and its indexes.
+     */
+    static void update(Connection connection, String table) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("UPDATE STATISTICS " + QueryUtils.quoteQualifiedName(table) + " ALL");
+        }
+    }
+
+    /**
+     * The committed rows mutated in {@code table} since its statistics were last updated (or queued).
+     */
+    public long getPendingMutations(String table) {
+        final LongAdder count = mutations.get(table);
+        return count != null ? count.sum() : 0L;
+    }
+
+    /**
+     * When the statistics of {@code table} were last updated by this maintainer, or {@code null}.
+     */
+    public Long getLastRefresh(String table) {
+        return refreshes.get(table);
+    }
+
+    /**
+     * When the statistics of every table were last updated by this maintainer, by table.
+     */
+    public Map<String, Long> getLastRefreshes() {
+        return Collections.unmodifiableMap(refreshes);
+    }
+
+    @Override
+    public void sessionFactoryCreated(SessionFactory factory) {
+    }
+
+    @Override
+    public void sessionFactoryClosed(SessionFactory factory) {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.spi.Mapping;
+import org.hibernate.mapping.Column;
+import org.hibernate.mapping.Index;
+import org.hibernate.mapping.PersistentClass;
+import org.hibernate.mapping.Table;
+import org.hibernate.mapping.UniqueKey;
+
+import com.ruesga.phoenix.dialect.annotations.RowKey;
+
+/**
+ * What the dialect knows about a mapped Phoenix table.
+ */
+public final class TableMapping {
+
+    private final Table table;
+    private final String qualifiedName;
+    private List<String> primaryKey;
+    private final List<String> columns;
+    private final List<List<String>> indexes;
+    private PersistentClass entity;
+    private String naturalIdIndex;
+    private int estimatedRowSize = -1;
+
+    TableMapping(Table table) {
+        this.table = table;
+        this.qualifiedName = qualifiedName(table);
+
+        final List<String> pk = new ArrayList<>();
+        if (table.hasPrimaryKey()) {
+            for (Column column : table.getPrimaryKey().getColumns()) {
+                pk.add(QueryUtils.normalizeIdentifier(column.getName(), column.isQuoted()));
+            }
+        }
+        this.primaryKey = Collections.unmodifiableList(pk);
+
+        final List<String> cols = new ArrayList<>();
+        final Iterator<?> it = table.getColumnIterator();
+        while (it.hasNext()) {
+            Column column = (Column) it.next();
+            cols.add(QueryUtils.normalizeIdentifier(column.getName(), column.isQuoted()));
+        }
+        this.columns = Collections.unmodifiableList(cols);
+
+        this.indexes = indexes(table);
+    }
+
+    /**
+     * Estimates the bytes a scan returns per row of the table, as HBase cells: every column that is
+     * not part of the row key is a cell that repeats the row key, plus the cell coordinates.
+     */
+    void estimateRowSize(Mapping mapping) {
+        final int cellOverhead = 20;
+        int rowKey = 0;
+        int cells = 0;
+        int values = 0;
+        final Iterator<?> it = table.getColumnIterator();
+        while (it.hasNext()) {
+            final Column column = (Column) it.next();
+            final int size = estimateSize(column, mapping);
+            if (table.hasPrimaryKey() && table.getPrimaryKey().containsColumn(column)) {
+                rowKey += size;
+            } else {
+                cells++;
+                values += size;
+            }
+        }
+        this.estimatedRowSize = Math.max(1, values + Math.max(1, cells) * (rowKey + cellOverhead));
+    }
+
+    private static int estimateSize(Column column, Mapping mapping) {
+        final int type;
+        try {
+            type = column.getSqlTypeCode(mapping);
+        } catch (MappingException ex) {
+            return 16;
+        }
+        switch (type) {
+            case Types.BIT:
+            case Types.BOOLEAN:
+            case Types.TINYINT:
+                return 1;
+            case Types.SMALLINT:
+                return 2;
+            case Types.INTEGER:
+            case Types.REAL:
+            case Types.FLOAT:
+                return 4;
+            case Types.BIGINT:
+            case Types.DOUBLE:
+            case Types.DATE:
+            case Types.TIME:
+                return 8;
+            case Types.TIMESTAMP:
+                return 12;
+            case Types.CHAR:
+            case Types.BINARY:
+                return column.getLength();
+            default:
+                // Variable length values rarely fill their column
+                return Math.min(128, Math.max(8, column.getLength() / 2));
+        }
+    }
+
+    /**
+     * Returns the indexed columns of every mapped index and unique key of {@code table}.
+     */
+    static List<List<String>> indexes(Table table) {
+        final List<List<String>> indexes = new ArrayList<>();
+        final Iterator<Index> indexIt = table.getIndexIterator();
+        while (indexIt.hasNext()) {
+            indexes.add(toNames(indexIt.next().getColumnIterator()));
+        }
+        final Iterator<UniqueKey> uniqueIt = table.getUniqueKeyIterator();
+        while (uniqueIt.hasNext()) {
+            indexes.add(toNames(uniqueIt.next().getColumnIterator()));
+        }
+        return Collections.unmodifiableList(indexes);
+    }
+
+    /**
+     * Returns the name (as normalized by Phoenix) of the index or unique key of {@code table} on
+     * exactly {@code columns}, or {@code null} if none.
+     */
+    static String findIndex(Table table, List<Column> columns) {
+        if (columns.isEmpty()) {
+            return null;
+        }
+        final Set<Column> expected = new HashSet<>(columns);
+        final Iterator<UniqueKey> uniqueIt = table.getUniqueKeyIterator();
+        while (uniqueIt.hasNext()) {
+            final UniqueKey uniqueKey = uniqueIt.next();
+            if (new HashSet<>(uniqueKey.getColumns()).equals(expected)) {
+                return columnName(uniqueKey.getName());
+            }
+        }
+        final Iterator<Index> indexIt = table.getIndexIterator();
+        while (indexIt.hasNext()) {
+            final Index index = indexIt.next();
+            final Set<Column> indexed = new HashSet<>();
+            index.getColumnIterator().forEachRemaining(indexed::add);
+            if (indexed.equals(expected)) {
+                return columnName(index.getName());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the name of {@code table} as Phoenix sees it, in the form {@code SCHEMA.TABLE}.
+     */
+    static String qualifiedName(Table table) {
+        return QueryUtils.qualify(
+                QueryUtils.normalizeIdentifier(table.getSchema(), table.isSchemaQuoted()),
+                QueryUtils.normalizeIdentifier(table.getName(), table.isQuoted()));
+    }
+
+    /**
+     * Returns the primary key columns of {@code table} in row key order, with their sort order
+     * ({@code ASC} or {@code DESC}), as declared by the {@link RowKey} of {@code entities}.
+     */
+    static Map<Column, String> rowKey(Table table, List<PersistentClass> entities) {
+        final Map<Column, String> rowKey = new LinkedHashMap<>();
+        if (!table.hasPrimaryKey()) {
+            return rowKey;
+        }
+        final List<Column> pk = table.getPrimaryKey().getColumns();
+        for (PersistentClass entity : entities) {
+            final RowKey annotation = entity.getMappedClass() != null
+                    ? entity.getMappedClass().getAnnotation(RowKey.class) : null;
+            if (annotation == null) {
+                continue;
+            }
+            for (String definition : annotation.value()) {
+                final String[] parts = definition.trim().split("\\s+");
+                final String sortOrder = parts.length > 1 ? parts[1].toUpperCase() : "ASC";
+                if (parts.length > 2 || (!sortOrder.equals("ASC") && !sortOrder.equals("DESC"))) {
+                    throw new MappingException("Invalid row key column " + definition + " of "
+                            + entity.getEntityName());
+                }
+                final String name = columnName(parts[0]);
+                Column column = null;
+                for (Column c : pk) {
+                    if (QueryUtils.normalizeIdentifier(c.getName(), c.isQuoted()).equals(name)) {
+                        column = c;
+                    }
+                }
+                if (column == null) {
+                    throw new MappingException("Row key column " + parts[0] + " of "
+                            + entity.getEntityName() + " is not a primary key column");
+                }
+                if (rowKey.containsKey(column)) {
+                    throw new MappingException("Duplicated row key column " + parts[0] + " of "
+                            + entity.getEntityName());
+                }
+                rowKey.put(column, sortOrder);
+            }
+        }
+        for (Column column : pk) {
+            rowKey.putIfAbsent(column, "ASC");
+        }
+        return rowKey;
+    }
+
+    private static String columnName(String name) {
+        final boolean quoted = name.length() > 1 && ((name.startsWith("`") && name.endsWith("`"))
+                || (name.startsWith("\"") && name.endsWith("\"")));
+        return QueryUtils.normalizeIdentifier(quoted ? name.substring(1, name.length() - 1) : name, quoted);
+    }
+
+    private static List<String> toNames(Iterator<Column> it) {
+        final List<String> names = new ArrayList<>();
+        while (it.hasNext()) {
+            Column column = it.next();
+            names.add(QueryUtils.normalizeIdentifier(column.getName(), column.isQuoted()));
+        }
+        return Collections.unmodifiableList(names);
+    }
+
+    public Table getTable() {
+        return table;
+    }
+
+    /**
+     * The table name as Phoenix sees it, in the form {@code SCHEMA.TABLE}.
+     */
+    public String getQualifiedName() {
+        return qualifiedName;
+    }
+
+    /**
+     * The primary key columns, in row key order.
+     */
+    public List<String> getPrimaryKey() {
+        return primaryKey;
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * The indexed columns of every mapped index and unique key of the table.
+     */
+    public List<List<String>> getIndexes() {
+        return indexes;
+    }
+
+    /**
+     * The estimated bytes a scan returns per row, or {@code -1} if unknown.
+     */
+    public int getEstimatedRowSize() {
+        return estimatedRowSize;
+    }
+
+    /**
+     * The entity mapped to this table, or {@code null} for collection and join tables.
+     */
+    public PersistentClass getEntity() {
+        return entity;
+    }
+
+    /**
+     * The index (as normalized by Phoenix) that resolves the natural id of the entity, or
+     * {@code null} if the entity has no natural id or it is not indexed.
+     */
+    public String getNaturalIdIndex() {
+        return naturalIdIndex;
+    }
+
+    /**
+     * Whether the table is mapped by an immutable ({@code @Immutable}) entity.
+     */
+    public boolean isImmutable() {
+        return entity != null && !entity.isMutable();
+    }
+
+    public Class<?> getEntityClass() {
+        return entity != null ? entity.getMappedClass() : null;
+    }
+
+    void setEntity(PersistentClass entity) {
+        this.entity = entity;
+        this.primaryKey = toNames(rowKey(table, Collections.singletonList(entity)).keySet().iterator());
+        this.naturalIdIndex = findIndex(table, MappingUtils.getNaturalIdColumns(entity));
+    }
+
+    @Override
+    public String toString() {
+        return "TableMapping [" + qualifiedName + ", pk=" + primaryKey + "]";
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.MappingException;
+
+import com.ruesga.phoenix.dialect.SqlTokenizer.Token;
+import com.ruesga.phoenix.dialect.annotations.PhoenixTable;
+
+/**
+ * The options suffix of a Phoenix {@code CREATE TABLE} statement.
+ */
+public final class TableOptions {
+
+    public static final String SALT_BUCKETS = "SALT_BUCKETS";
+    public static final String COMPRESSION = "COMPRESSION";
+    public static final String DATA_BLOCK_ENCODING = "DATA_BLOCK_ENCODING";
+    public static final String UPDATE_CACHE_FREQUENCY = "UPDATE_CACHE_FREQUENCY";
+    public static final String TTL = "TTL";
+    public static final String DEFAULT_COLUMN_FAMILY = "DEFAULT_COLUMN_FAMILY";
+    public static final String IMMUTABLE_ROWS = "IMMUTABLE_ROWS";
+    public static final String IMMUTABLE_STORAGE_SCHEME = "IMMUTABLE_STORAGE_SCHEME";
+    public static final String COLUMN_ENCODED_BYTES = "COLUMN_ENCODED_BYTES";
+
+    private static final int MAX_SALT_BUCKETS = 256;
+
+    private final String table;
+    private final Map<String, String> options = new LinkedHashMap<>();
+    private final List<String> splitPoints = new ArrayList<>();
+
+    public TableOptions(String table) {
+        this.table = table;
+    }
+
+    /**
+     * Sets the option {@code name} to {@code value}, an SQL literal.
+     */
+    public TableOptions set(String name, String value) {
+        options.put(name.trim().toUpperCase(), value.trim());
+        return this;
+    }
+
+    /**
+     * Sets the option {@code name} to {@code value}, an SQL literal, unless already set.
+     */
+    public TableOptions setIfAbsent(String name, String value) {
+        options.putIfAbsent(name.trim().toUpperCase(), value.trim());
+        return this;
+    }
+
+    /**
+     * Sets the option {@code name} to {@code value}, quoted if it is not a number.
+     */
+    public TableOptions setValue(String name, String value) {
+        final String v = value.trim();
+        return set(name, v.matches("-?\\d+") ? v : "'" + v.replace("'", "''") + "'");
+    }
+
+    public TableOptions splitOn(String... points) {
+        splitPoints.addAll(Arrays.asList(points));
+        return this;
+    }
+
+    public TableOptions apply(PhoenixTable annotation) {
+        if (annotation.saltBuckets() != 0) {
+            set(SALT_BUCKETS, String.valueOf(annotation.saltBuckets()));
+        }
+        if (!annotation.compression().isEmpty()) {
+            setValue(COMPRESSION, annotation.compression());
+        }
+        if (!annotation.dataBlockEncoding().isEmpty()) {
+            setValue(DATA_BLOCK_ENCODING, annotation.dataBlockEncoding());
+        }
+        if (!annotation.updateCacheFrequency().isEmpty()) {
+            setValue(UPDATE_CACHE_FREQUENCY, annotation.updateCacheFrequency());
+        }
+        if (annotation.ttl() >= 0) {
+            set(TTL, String.valueOf(annotation.ttl()));
+        }
+        splitOn(annotation.splitOn());
+        apply(annotation.options());
+        return this;
+    }
+
+    /**
+     * Applies options in the form {@code NAME=VALUE}.
+     */
+    public TableOptions apply(String... nameValues) {
+        for (String option : nameValues) {
+            final int eq = option.indexOf('=');
+            if (eq <= 0) {
+                throw new MappingException("Invalid option '" + option + "' for table " + table);
+            }
+            set(option.substring(0, eq), option.substring(eq + 1));
+        }
+        return this;
+    }
+
+    /**
+     * Applies options as written in a {@code CREATE TABLE} statement: comma separated
+     * {@code NAME=VALUE} pairs, optionally followed by {@code SPLIT ON (...)}. Commas inside
+     * quotes or parentheses don't separate options.
+     */
+    public TableOptions parse(String sql) {
+        final List<Token> tokens = SqlTokenizer.tokenize(sql);
+        int start = 0;
+        int depth = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            final Token token = tokens.get(i);
+            if (token.isSymbol("(")) {
+                depth++;
+            } else if (token.isSymbol(")")) {
+                depth--;
+            } else if (depth == 0 && token.isSymbol(",")) {
+                apply(option(sql, tokens, start, i));
+                start = i + 1;
+            } else if (depth == 0 && token.is("split") && i + 2 < tokens.size()
+                    && tokens.get(i + 1).is("on") && tokens.get(i + 2).isSymbol("(")) {
+                if (start < i) {
+                    apply(option(sql, tokens, start, i));
+                }
+                final int close = SqlTokenizer.findClosingParenthesis(tokens, i + 2);
+                if (close == -1) {
+                    throw new MappingException("Invalid SPLIT ON for table " + table + ": " + sql);
+                }
+                // Split points may be expressions or row value constructors
+                int point = i + 3;
+                int nested = 0;
+                for (int j = point; j <= close; j++) {
+                    final Token t = tokens.get(j);
+                    if (j == close || (nested == 0 && t.isSymbol(","))) {
+                        if (point < j) {
+                            splitOn(option(sql, tokens, point, j));
+                        }
+                        point = j + 1;
+                    } else if (t.isSymbol("(")) {
+                        nested++;
+                    } else if (t.isSymbol(")")) {
+                        nested--;
+                    }
+                }
+                i = close;
+                start = close + 1;
+            }
+        }
+        if (start < tokens.size()) {
+            apply(option(sql, tokens, start, tokens.size()));
+        }
+        return this;
+    }
+
+    private static String option(String sql, List<Token> tokens, int from, int to) {
+        return sql.substring(tokens.get(from).start, tokens.get(to - 1).end);
+    }
+
+    public boolean isEmpty() {
+        return options.isEmpty() && splitPoints.isEmpty();
+    }
+
+    public String get(String name) {
+        return options.get(name);
+    }
+
+    /**
+     * Returns the options as the suffix of a {@code CREATE TABLE} statement.
+     *
+     * @throws MappingException if the options are not valid for a Phoenix table
+     */
+    public String toSql() {
+        final String salt = options.get(SALT_BUCKETS);
+        if (salt != null) {
+            final int buckets;
+            try {
+                buckets = Integer.parseInt(salt);
+            } catch (NumberFormatException ex) {
+                throw new MappingException("Invalid SALT_BUCKETS for table " + table + ": " + salt);
+            }
+            if (buckets < 1 || buckets > MAX_SALT_BUCKETS) {
+                throw new MappingException("SALT_BUCKETS of table " + table
+                        + " must be between 1 and " + MAX_SALT_BUCKETS + ": " + salt);
+            }
+            if (!splitPoints.isEmpty()) {
+                // Phoenix pre-splits salted tables by bucket
+                throw new MappingException("Table " + table + " cannot be both salted and pre-split");
+            }
+        }
+
+        final StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(option.getKey()).append('=').append(option.getValue());
+        }
+        if (!splitPoints.isEmpty()) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append("SPLIT ON (").append(String.join(", ", splitPoints)).append(')');
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toSql();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A concurrent map with weakly referenced keys, compared by identity. Unlike a synchronized
+ * {@code WeakHashMap}, reads take no lock. The entries of collected keys are expunged on writes.
+ * <p>
+ * Values must not reference their keys, or the keys are never collected.
+ */
+public final class WeakIdentityMap<K, V> {
+
+    private static final class Ref<K> extends WeakReference<K> {
+        private final int hash;
+
+        Ref(K key, ReferenceQueue<? super K> queue) {
+            super(key, queue);
+            this.hash = System.identityHashCode(key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (!(o instanceof Ref)) {
+                return false;
+            }
+            final Object key = get();
+            return key != null && key == ((Ref<?>) o).get();
+        }
+    }
+
+    private final Map<Ref<K>, V> entries = new ConcurrentHashMap<>();
+    private final ReferenceQueue<K> queue = new ReferenceQueue<>();
+
+    public V get(K key) {
+        return entries.get(new Ref<>(key, null));
+    }
+
+    public boolean containsKey(K key) {
+        return entries.containsKey(new Ref<>(key, null));
+    }
+
+    public V put(K key, V value) {
+        expunge();
+        return entries.put(new Ref<>(key, queue), value);
+    }
+
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> loader) {
+        final V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        expunge();
+        return entries.computeIfAbsent(new Ref<>(key, queue), k -> loader.apply(key));
+    }
+
+    public V remove(K key) {
+        expunge();
+        return entries.remove(new Ref<>(key, null));
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public int size() {
+        expunge();
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+        expunge();
+    }
+
+    private void expunge() {
+        Reference<? extends K> ref;
+        while ((ref = queue.poll()) != null) {
+            entries.remove(ref);
+        }
+    }
+}
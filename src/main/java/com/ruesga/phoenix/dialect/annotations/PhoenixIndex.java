@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Phoenix specifics of a secondary index of the table of an entity. When an index (or unique
+ * key) with the same name is declared through {@code @Table(indexes=...)}, this refines it;
+ * otherwise it declares a new index on {@link #columns()}.
+ *
+ * @see <a href="https://phoenix.apache.org/secondary_indexing.html">Secondary Indexing</a>
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Repeatable(PhoenixIndexes.class)
+public @interface PhoenixIndex {
+
+    String name();
+
+    /**
+     * The indexed columns or expressions (i.e. {@code "UPPER(LAST_NAME)"}), as SQL. Defaults to
+     * the columns of the index declared with the same name.
+     */
+    String[] columns() default {};
+
+    /**
+     * The covered columns, stored in the index so queries can be served without reading the table.
+     */
+    String[] include() default {};
+
+    /**
+     * Whether to store the index in the regions of the table instead of in its own table.
+     */
+    boolean local() default false;
+
+    /**
+     * Whether to create the index empty and build it later with the {@code IndexTool} MapReduce job.
+     */
+    boolean async() default false;
+
+    /**
+     * Options of the index table, in the form {@code NAME=VALUE}.
+     */
+    String[] options() default {};
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Phoenix/HBase options of the table of an entity, appended to its {@code CREATE TABLE}
+ * statement by the schema export.
+ *
+ * @see <a href="https://phoenix.apache.org/language/index.html#create_table">CREATE TABLE</a>
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface PhoenixTable {
+
+    /**
+     * Number of salt buckets (1-256) of the row key, 0 to not salt the table.
+     */
+    int saltBuckets() default 0;
+
+    /**
+     * HBase compression algorithm ({@code NONE}, {@code GZ}, {@code SNAPPY}, {@code LZ4}, ...).
+     */
+    String compression() default "";
+
+    /**
+     * HBase data block encoding ({@code NONE}, {@code PREFIX}, {@code DIFF}, {@code FAST_DIFF}, ...).
+     */
+    String dataBlockEncoding() default "";
+
+    /**
+     * How often the client refreshes the table metadata: {@code ALWAYS}, {@code NEVER} or milliseconds.
+     */
+    String updateCacheFrequency() default "";
+
+    /**
+     * Time to live of the cells in seconds, -1 to keep them forever.
+     */
+    int ttl() default -1;
+
+    /**
+     * Pre-split points of the table, as SQL literals (i.e. {@code "'M'"} or {@code "1000"}).
+     * Cannot be combined with {@link #saltBuckets()}.
+     */
+    String[] splitOn() default {};
+
+    /**
+     * Any other option, in the form {@code NAME=VALUE}.
+     */
+    String[] options() default {};
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The layout of the row key of the table of an entity: the order of its primary key columns
+ * and their sort order. By default the columns follow the Hibernate order of the identifier
+ * attributes (alphabetical for composite keys), ascending.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RowKey {
+
+    /**
+     * The primary key columns, in row key order, optionally followed by {@code ASC} or
+     * {@code DESC} (i.e. {@code "FROM_DATE DESC"}). Quote them with backticks to make them case
+     * sensitive. Unlisted primary key columns follow, in their default order.
+     */
+    String[] value();
+}
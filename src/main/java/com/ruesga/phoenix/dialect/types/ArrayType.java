@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect.types;
+
+import java.io.Serializable;
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.hibernate.HibernateException;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.type.StandardBasicTypes;
+import org.hibernate.type.Type;
+import org.hibernate.usertype.UserType;
+
+/**
+ * Maps a Java array or collection to a Phoenix {@code ARRAY} column, bound through
+ * {@link java.sql.Connection#createArrayOf(String, Object[])}.
+ */
+public abstract class ArrayType<T> implements UserType {
+
+    private static final Map<String, Type> ELEMENT_TYPES = new HashMap<>();
+    static {
+        ELEMENT_TYPES.put("TINYINT", StandardBasicTypes.BYTE);
+        ELEMENT_TYPES.put("SMALLINT", StandardBasicTypes.SHORT);
+        ELEMENT_TYPES.put("INTEGER", StandardBasicTypes.INTEGER);
+        ELEMENT_TYPES.put("BIGINT", StandardBasicTypes.LONG);
+        ELEMENT_TYPES.put("FLOAT", StandardBasicTypes.FLOAT);
+        ELEMENT_TYPES.put("DOUBLE", StandardBasicTypes.DOUBLE);
+        ELEMENT_TYPES.put("DECIMAL", StandardBasicTypes.BIG_DECIMAL);
+        ELEMENT_TYPES.put("BOOLEAN", StandardBasicTypes.BOOLEAN);
+        ELEMENT_TYPES.put("DATE", StandardBasicTypes.DATE);
+        ELEMENT_TYPES.put("TIME", StandardBasicTypes.TIME);
+        ELEMENT_TYPES.put("TIMESTAMP", StandardBasicTypes.TIMESTAMP);
+    }
+
+    private final Class<T> returnedClass;
+    protected String elementType;
+
+    /**
+     * @param elementType the Phoenix type of the elements (i.e. {@code INTEGER})
+     */
+    protected ArrayType(Class<T> returnedClass, String elementType) {
+        this.returnedClass = returnedClass;
+        this.elementType = elementType;
+    }
+
+    /**
+     * The Phoenix type of the column, as in {@code INTEGER ARRAY}.
+     */
+    public String getColumnDefinition() {
+        return elementType.toLowerCase() + " array";
+    }
+
+    /**
+     * The Hibernate type of the elements.
+     */
+    public Type getElementHibernateType() {
+        final Type type = ELEMENT_TYPES.get(elementType);
+        return type != null ? type : StandardBasicTypes.STRING;
+    }
+
+    /**
+     * Returns the elements of {@code value} to bind.
+     */
+    protected abstract Object[] toElements(T value);
+
+    /**
+     * Returns the value of the elements read, either a primitive array or an {@code Object[]}.
+     */
+    protected abstract T fromElements(Object elements);
+
+    protected abstract T copy(T value);
+
+    @Override
+    public int[] sqlTypes() {
+        return new int[] {Types.ARRAY};
+    }
+
+    @Override
+    public Class<T> returnedClass() {
+        return returnedClass;
+    }
+
+    @Override
+    public boolean equals(Object x, Object y) throws HibernateException {
+        return Objects.deepEquals(x, y);
+    }
+
+    @Override
+    public int hashCode(Object x) throws HibernateException {
+        return Arrays.deepHashCode(new Object[] {x});
+    }
+
+    @Override
+    public Object nullSafeGet(ResultSet rs, String[] names, SharedSessionContractImplementor session,
+            Object owner) throws HibernateException, SQLException {
+        final Array array = rs.getArray(names[0]);
+        return array != null ? fromElements(array.getArray()) : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void nullSafeSet(PreparedStatement st, Object value, int index,
+            SharedSessionContractImplementor session) throws HibernateException, SQLException {
+        if (value == null) {
+            st.setNull(index, Types.ARRAY);
+        } else {
+            st.setArray(index, st.getConnection().createArrayOf(elementType, toElements((T) value)));
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object deepCopy(Object value) throws HibernateException {
+        return value != null ? copy((T) value) : null;
+    }
+
+    @Override
+    public boolean isMutable() {
+        return true;
+    }
+
+    @Override
+    public Serializable disassemble(Object value) throws HibernateException {
+        return (Serializable) deepCopy(value);
+    }
+
+    @Override
+    public Object assemble(Serializable cached, Object owner) throws HibernateException {
+        return deepCopy(cached);
+    }
+
+    @Override
+    public Object replace(Object original, Object target, Object owner) throws HibernateException {
+        return deepCopy(original);
+    }
+}
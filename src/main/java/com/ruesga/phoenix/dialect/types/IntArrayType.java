@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect.types;
+
+/**
+ * Maps an {@code int[]} to a Phoenix {@code INTEGER ARRAY} column.
+ */
+public class IntArrayType extends ArrayType<int[]> {
+
+    public IntArrayType() {
+        super(int[].class, "INTEGER");
+    }
+
+    @Override
+    protected Object[] toElements(int[] value) {
+        final Object[] elements = new Object[value.length];
+        for (int i = 0; i < value.length; i++) {
+            elements[i] = value[i];
+        }
+        return elements;
+    }
+
+    @Override
+    protected int[] fromElements(Object elements) {
+        if (elements instanceof int[]) {
+            // Primitive arrays are returned as they are stored
+            return (int[]) elements;
+        }
+        final Object[] values = (Object[]) elements;
+        final int[] value = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            value[i] = values[i] != null ? ((Number) values[i]).intValue() : 0;
+        }
+        return value;
+    }
+
+    @Override
+    protected int[] copy(int[] value) {
+        return value.clone();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect.types;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.hibernate.MappingException;
+import org.hibernate.usertype.ParameterizedType;
+
+/**
+ * Maps a {@code List} of numbers or strings to a Phoenix {@code ARRAY} column, instead of a
+ * collection table. The {@code element} parameter is the Phoenix type of the elements
+ * ({@code INTEGER} by default):
+ * <pre>
+ * &#64;Type(type = "com.ruesga.phoenix.dialect.types.ListArrayType",
+ *         parameters = &#64;Parameter(name = "element", value = "VARCHAR"))
+ * private List&lt;String&gt; skills;
+ * </pre>
+ */
+@SuppressWarnings("rawtypes")
+public class ListArrayType extends ArrayType<List> implements ParameterizedType {
+
+    public static final String ELEMENT = "element";
+
+    public ListArrayType() {
+        super(List.class, "INTEGER");
+    }
+
+    @Override
+    public void setParameterValues(Properties parameters) {
+        final String element = parameters != null ? parameters.getProperty(ELEMENT) : null;
+        if (element != null) {
+            if (element.trim().isEmpty() || element.toUpperCase().contains("ARRAY")) {
+                throw new MappingException("Invalid array element type " + element);
+            }
+            elementType = element.trim().toUpperCase();
+        }
+    }
+
+    @Override
+    protected Object[] toElements(List value) {
+        return value.toArray();
+    }
+
+    @Override
+    protected List fromElements(Object elements) {
+        final int length = java.lang.reflect.Array.getLength(elements);
+        final List<Object> value = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            value.add(java.lang.reflect.Array.get(elements, i));
+        }
+        return value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected List copy(List value) {
+        return new ArrayList<>(value);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect.types;
+
+/**
+ * Maps a {@code long[]} to a Phoenix {@code BIGINT ARRAY} column.
+ */
+public class LongArrayType extends ArrayType<long[]> {
+
+    public LongArrayType() {
+        super(long[].class, "BIGINT");
+    }
+
+    @Override
+    protected Object[] toElements(long[] value) {
+        final Object[] elements = new Object[value.length];
+        for (int i = 0; i < value.length; i++) {
+            elements[i] = value[i];
+        }
+        return elements;
+    }
+
+    @Override
+    protected long[] fromElements(Object elements) {
+        if (elements instanceof long[]) {
+            // Primitive arrays are returned as they are stored
+            return (long[]) elements;
+        }
+        final Object[] values = (Object[]) elements;
+        final long[] value = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            value[i] = values[i] != null ? ((Number) values[i]).longValue() : 0;
+        }
+        return value;
+    }
+
+    @Override
+    protected long[] copy(long[] value) {
+        return value.clone();
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect.types;
+
+import java.util.Arrays;
+
+/**
+ * Maps a {@code String[]} to a Phoenix {@code VARCHAR ARRAY} column.
+ */
+public class StringArrayType extends ArrayType<String[]> {
+
+    public StringArrayType() {
+        super(String[].class, "VARCHAR");
+    }
+
+    @Override
+    protected Object[] toElements(String[] value) {
+        return value;
+    }
+
+    @Override
+    protected String[] fromElements(Object elements) {
+        if (elements instanceof String[]) {
+            return (String[]) elements;
+        }
+        final Object[] values = (Object[]) elements;
+        return Arrays.copyOf(values, values.length, String[].class);
+    }
+
+    @Override
+    protected String[] copy(String[] value) {
+        return value.clone();
+    }
+}
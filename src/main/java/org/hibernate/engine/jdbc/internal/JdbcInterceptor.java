@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hibernate.engine.jdbc.internal;
+
+import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.jdbc.spi.JdbcCoordinator;
+import org.hibernate.engine.jdbc.spi.JdbcServices;
+
+import com.ruesga.phoenix.dialect.ApproximateCountFunction;
+import com.ruesga.phoenix.dialect.ExplainedPlan;
+import com.ruesga.phoenix.dialect.IndexAdvisor;
+import com.ruesga.phoenix.dialect.PhoenixDialect;
+import com.ruesga.phoenix.dialect.PhoenixTimeline;
+import com.ruesga.phoenix.dialect.QueryPlanGuard;
+import com.ruesga.phoenix.dialect.RequestMetrics;
+import com.ruesga.phoenix.dialect.StatementCache;
+import com.ruesga.phoenix.dialect.StatisticsMaintainer;
+import com.ruesga.phoenix.dialect.WeakIdentityMap;
+
+@Aspect
+public class JdbcInterceptor {
+
+    private Field preparerCoordinatorField = null;
+    private Field resultSetReturnCoordinatorField = null;
+    private Field batchCoordinatorField = null;
+
+    // The sql of every statement prepared by Hibernate, released with the statement
+    private final WeakIdentityMap<Statement, String> statements = new WeakIdentityMap<>();
+
+    public JdbcInterceptor() {
+        try {
+            preparerCoordinatorField = Class.forName("org.hibernate.engine.jdbc.internal.StatementPreparerImpl")
+                    .getDeclaredField("jdbcCoordinator");
+            preparerCoordinatorField.setAccessible(true);
+            resultSetReturnCoordinatorField = ResultSetReturnImpl.class.getDeclaredField("jdbcCoordinator");
+            resultSetReturnCoordinatorField.setAccessible(true);
+            batchCoordinatorField = Class.forName("org.hibernate.engine.jdbc.batch.internal.AbstractBatchImpl")
+                    .getDeclaredField("jdbcCoordinator");
+            batchCoordinatorField.setAccessible(true);
+        } catch (Exception e) {;
+        }
+    }
+
+    @Around("execution(java.sql.PreparedStatement org.hibernate.engine.jdbc.internal.StatementPreparerImpl"
+            + ".prepareStatement(java.lang.String, boolean)) || "
+            + "execution(java.sql.PreparedStatement org.hibernate.engine.jdbc.internal.StatementPreparerImpl"
+            + ".prepareQueryStatement(java.lang.String, boolean, org.hibernate.ScrollMode))")
+    public PreparedStatement prepareStatementAround(ProceedingJoinPoint joinPoint) throws Throwable {
+        PhoenixDialect dialect = getDialect(joinPoint.getTarget(), preparerCoordinatorField);
+        if (dialect == null) {
+            // Nothing to deal with
+            return (PreparedStatement) joinPoint.proceed();
+        }
+
+        String sql = (String) joinPoint.getArgs()[0];
+        PreparedStatement statement;
+        if (ApproximateCountFunction.isUsedBy(sql)) {
+            // The estimates are bound on every execution, so the sql doesn't change with them
+            Object[] args = joinPoint.getArgs();
+            args[0] = ApproximateCountFunction.rewrite(sql);
+            statement = prepare(dialect, () -> (PreparedStatement) joinPoint.proceed(args));
+        } else {
+            statement = prepare(dialect, () -> (PreparedStatement) joinPoint.proceed());
+        }
+        statements.put(statement, sql);
+        return statement;
+    }
+
+    private PreparedStatement prepare(PhoenixDialect dialect, StatementCache.Preparation preparation)
+            throws Throwable {
+        StatementCache cache = dialect.getStatementCache();
+        return cache != null ? cache.preparing(preparation) : preparation.prepare();
+    }
+
+    // Hibernate still registers, logs and times out the statements taken from the cache
+    @Around("call(java.sql.PreparedStatement java.sql.Connection.prepareStatement(java.lang.String)) "
+            + "&& within(org.hibernate.engine.jdbc.internal..*)")
+    public PreparedStatement connectionPrepareStatementAround(ProceedingJoinPoint joinPoint) throws Throwable {
+        StatementCache cache = StatementCache.current();
+        if (cache == null) {
+            // Nothing to deal with
+            return (PreparedStatement) joinPoint.proceed();
+        }
+        return cache.get((Connection) joinPoint.getTarget(), (String) joinPoint.getArgs()[0],
+                () -> (PreparedStatement) joinPoint.proceed());
+    }
+
+    @Around("execution(java.sql.ResultSet org.hibernate.engine.jdbc.internal.ResultSetReturnImpl"
+            + ".extract(java.sql.PreparedStatement))")
+    public ResultSet extractAround(ProceedingJoinPoint joinPoint) throws Throwable {
+        PhoenixDialect dialect = getDialect(joinPoint.getTarget(), resultSetReturnCoordinatorField);
+        if (dialect == null) {
+            // Nothing to deal with
+            return (ResultSet) joinPoint.proceed();
+        }
+
+        PreparedStatement statement = (PreparedStatement) joinPoint.getArgs()[0];
+        String sql = statements.get(statement);
+        JdbcCoordinator coordinator = (JdbcCoordinator) resultSetReturnCoordinatorField.get(joinPoint.getTarget());
+        if (sql != null) {
+            bindEstimates(dialect, coordinator, sql, statement);
+            QueryPlanGuard guard = dialect.getQueryPlanGuard();
+            ExplainedPlan plan = guard != null ? guard.check(sql, statement) : null;
+            IndexAdvisor advisor = dialect.getIndexAdvisor();
+            if (advisor != null) {
+                advisor.recordQuery(sql, plan);
+            }
+        }
+        ResultSet rs = PhoenixTimeline.extract(coordinator, statement, sql, () -> (ResultSet) joinPoint.proceed());
+        RequestMetrics metrics = dialect.getRequestMetrics();
+        if (metrics != null && sql != null) {
+            metrics.trackRead(sql, rs);
+        }
+        return rs;
+    }
+
+    @Around("execution(int org.hibernate.engine.jdbc.internal.ResultSetReturnImpl"
+            + ".executeUpdate(java.sql.PreparedStatement))")
+    public int executeUpdateAround(ProceedingJoinPoint joinPoint) throws Throwable {
+        PhoenixDialect dialect = getDialect(joinPoint.getTarget(), resultSetReturnCoordinatorField);
+        if (dialect == null) {
+            // Nothing to deal with
+            return (int) joinPoint.proceed();
+        }
+
+        PreparedStatement statement = (PreparedStatement) joinPoint.getArgs()[0];
+        String sql = statements.get(statement);
+        if (sql != null) {
+            bindEstimates(dialect, (JdbcCoordinator) resultSetReturnCoordinatorField.get(joinPoint.getTarget()),
+                    sql, statement);
+        }
+        IndexAdvisor advisor = dialect.getIndexAdvisor();
+        if (advisor != null && sql != null) {
+            advisor.recordUpdate(sql);
+        }
+        int count = (int) joinPoint.proceed();
+        RequestMetrics metrics = dialect.getRequestMetrics();
+        if (metrics != null) {
+            metrics.trackWrite(statement);
+        }
+        StatisticsMaintainer maintainer = dialect.getStatisticsMaintainer();
+        if (maintainer != null && sql != null) {
+            maintainer.recordUpdate(statement, sql, count);
+        }
+        return count;
+    }
+
+    @Around("call(int[] java.sql.Statement+.executeBatch()) "
+            + "&& within(org.hibernate.engine.jdbc.batch.internal.*)")
+    public int[] executeBatchAround(ProceedingJoinPoint joinPoint) throws Throwable {
+        PhoenixDialect dialect = getDialect(joinPoint.getThis(), batchCoordinatorField);
+        if (dialect == null) {
+            // Nothing to deal with
+            return (int[]) joinPoint.proceed();
+        }
+
+        Statement statement = (Statement) joinPoint.getTarget();
+        String sql = statements.get(statement);
+        int[] counts = (int[]) joinPoint.proceed();
+        IndexAdvisor advisor = dialect.getIndexAdvisor();
+        if (advisor != null && sql != null) {
+            advisor.recordUpdate(sql, counts.length);
+        }
+        RequestMetrics metrics = dialect.getRequestMetrics();
+        if (metrics != null) {
+            metrics.trackWrite(statement);
+        }
+        StatisticsMaintainer maintainer = dialect.getStatisticsMaintainer();
+        if (maintainer != null && sql != null) {
+            int rows = 0;
+            for (int count : counts) {
+                // Drivers may not report the rows of every batched statement
+                rows += count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(0, count);
+            }
+            maintainer.recordUpdate(statement, sql, rows);
+        }
+        return counts;
+    }
+
+    private void bindEstimates(PhoenixDialect dialect, JdbcCoordinator coordinator, String sql,
+            PreparedStatement statement) throws SQLException {
+        if (ApproximateCountFunction.isUsedBy(sql)) {
+            Connection connection = coordinator.getLogicalConnection().getPhysicalConnection();
+            ApproximateCountFunction.bind(sql, statement,
+                    table -> dialect.getRowCountEstimator().estimate(connection, table, null, null));
+        }
+    }
+
+    private PhoenixDialect getDialect(Object target, Field coordinatorField) throws Throwable {
+        if (coordinatorField == null) {
+            return null;
+        }
+        JdbcCoordinator coordinator = (JdbcCoordinator) coordinatorField.get(target);
+        Dialect dialect = coordinator.getJdbcSessionOwner().getJdbcSessionContext().getServiceRegistry()
+                .getService(JdbcServices.class).getDialect();
+        return dialect instanceof PhoenixDialect ? (PhoenixDialect) dialect : null;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hibernate.loader;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import com.ruesga.phoenix.dialect.PhoenixDialect;
+import com.ruesga.phoenix.dialect.QueryUtils;
+
+@Aspect
+public class BatchFetchInterceptor {
+
+    // Whether the batch loaders built in this thread are the ones of a Phoenix session factory
+    private static final ThreadLocal<Boolean> PHOENIX = new ThreadLocal<>();
+
+    @Around("execution(* org.hibernate.loader.entity.BatchingEntityLoaderBuilder.buildLoader(..)) || "
+            + "execution(* org.hibernate.loader.collection.BatchingCollectionInitializerBuilder"
+            + ".createBatching*Initializer(..))")
+    public Object buildLoaderAround(ProceedingJoinPoint joinPoint) throws Throwable {
+        final Boolean previous = PHOENIX.get();
+        PHOENIX.set(isPhoenix(joinPoint.getArgs()));
+        try {
+            return joinPoint.proceed();
+        } finally {
+            if (previous != null) {
+                PHOENIX.set(previous);
+            } else {
+                PHOENIX.remove();
+            }
+        }
+    }
+
+    // The batch loaders only know the sizes they pad to
+    @Around("call(int[] org.hibernate.internal.util.collections.ArrayHelper.getBatchSizes(int))")
+    public int[] getBatchSizesAround(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (!Boolean.TRUE.equals(PHOENIX.get())) {
+            // Nothing to deal with
+            return (int[]) joinPoint.proceed();
+        }
+        return QueryUtils.batchSizes((int) joinPoint.getArgs()[0]);
+    }
+
+    private static boolean isPhoenix(Object[] args) {
+        for (Object arg : args) {
+            if (arg instanceof SessionFactoryImplementor) {
+                return ((SessionFactoryImplementor) arg).getJdbcServices().getDialect() instanceof PhoenixDialect;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hibernate.loader;
+
+import java.sql.ResultSet;
+
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Aspect;
+
+import com.ruesga.phoenix.dialect.PhoenixTimeline;
+
+@Aspect
+public class ResultSetInterceptor {
+
+    // Phoenix only knows if a row is stale while it is the current row of the result set
+    @AfterReturning(pointcut = "call(boolean java.sql.ResultSet.next()) && within(org.hibernate.loader..*)",
+            returning = "found")
+    public void nextAfter(JoinPoint joinPoint, boolean found) {
+        if (found) {
+            PhoenixTimeline.read((ResultSet) joinPoint.getTarget());
+        }
+    }
+}
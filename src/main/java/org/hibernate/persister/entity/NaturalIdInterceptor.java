@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hibernate.persister.entity;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.hibernate.dialect.Dialect;
+
+import com.ruesga.phoenix.dialect.PhoenixDialect;
+
+@Aspect
+public class NaturalIdInterceptor {
+
+    // Natural id loads resolve the identifier with this query, then read the entity by row key
+    @Around("execution(java.lang.String org.hibernate.persister.entity.AbstractEntityPersister"
+            + ".determinePkByNaturalIdQuery(boolean[]))")
+    public String determinePkByNaturalIdQueryAround(ProceedingJoinPoint joinPoint) throws Throwable {
+        AbstractEntityPersister persister = (AbstractEntityPersister) joinPoint.getTarget();
+        Dialect dialect = persister.getFactory().getJdbcServices().getDialect();
+        String sql = (String) joinPoint.proceed();
+        if (!(dialect instanceof PhoenixDialect)) {
+            // Nothing to deal with
+            return sql;
+        }
+        return ((PhoenixDialect) dialect).applyNaturalIdIndexHint(persister.getTableName(), sql);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hibernate.resource.jdbc.internal;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Before;
+import org.hibernate.resource.jdbc.spi.LogicalConnectionImplementor;
+
+import com.ruesga.phoenix.dialect.PhoenixTimeline;
+import com.ruesga.phoenix.dialect.RequestMetrics;
+import com.ruesga.phoenix.dialect.StatementCache;
+import com.ruesga.phoenix.dialect.StatisticsMaintainer;
+
+@Aspect
+public class ResourceInterceptor {
+
+    @Before("execution(void org.hibernate.resource.jdbc.internal.ResourceRegistryStandardImpl"
+            + ".close(java.sql.ResultSet))")
+    public void closeBefore(JoinPoint joinPoint) {
+        ResultSet rs = (ResultSet) joinPoint.getArgs()[0];
+        RequestMetrics.released(rs);
+        PhoenixTimeline.released(rs);
+    }
+
+    @Around("execution(void org.hibernate.resource.jdbc.internal.ResourceRegistryStandardImpl"
+            + ".close(java.sql.Statement))")
+    public void closeStatementAround(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (!StatementCache.released((Statement) joinPoint.getArgs()[0])) {
+            joinPoint.proceed();
+        }
+    }
+
+    // Connections closed by their provider take their cached statements along
+    @AfterReturning("call(void org.hibernate.engine.jdbc.connections.spi.JdbcConnectionAccess"
+            + ".releaseConnection(java.sql.Connection)) && within(org.hibernate.resource.jdbc.internal.*)")
+    public void releaseConnectionAfter(JoinPoint joinPoint) {
+        StatementCache.released((Connection) joinPoint.getArgs()[0]);
+    }
+
+    @AfterReturning("execution(void org.hibernate.resource.jdbc.internal.AbstractLogicalConnectionImplementor"
+            + ".commit())")
+    public void commitAfter(JoinPoint joinPoint) {
+        LogicalConnectionImplementor connection = (LogicalConnectionImplementor) joinPoint.getTarget();
+        RequestMetrics.committed(connection.getPhysicalConnection());
+        StatisticsMaintainer.committed(connection.getPhysicalConnection());
+    }
+
+    @AfterReturning("execution(void org.hibernate.resource.jdbc.internal.AbstractLogicalConnectionImplementor"
+            + ".rollback())")
+    public void rollbackAfter(JoinPoint joinPoint) {
+        LogicalConnectionImplementor connection = (LogicalConnectionImplementor) joinPoint.getTarget();
+        RequestMetrics.rolledBack(connection.getPhysicalConnection());
+        StatisticsMaintainer.rolledBack(connection.getPhysicalConnection());
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ApproximateCountFunctionTest {
+
+    @Test
+    public void testRewrite() {
+        final String SQL = "select phoenix_approx_count('T.EMPLOYEES') as col_0_0_, "
+                + "phoenix_approx_count('T.SALARIES') as col_1_0_ from T.EMPLOYEES employee0_ "
+                + "where employee0_.first_name = ? and employee0_.last_name <> '?' limit ?";
+        final String EXPECTED = "select CAST(:3 AS BIGINT) as col_0_0_, CAST(:4 AS BIGINT) as col_1_0_ "
+                + "from T.EMPLOYEES employee0_ "
+                + "where employee0_.first_name = :1 and employee0_.last_name <> '?' limit :2";
+        Assert.assertTrue(ApproximateCountFunction.isUsedBy(SQL));
+        Assert.assertEquals(EXPECTED, ApproximateCountFunction.rewrite(SQL));
+        Assert.assertEquals(Arrays.asList("T.EMPLOYEES", "T.SALARIES"), ApproximateCountFunction.getTables(SQL));
+        Assert.assertFalse(ApproximateCountFunction.isUsedBy("select count(*) from T.EMPLOYEES"));
+    }
+}
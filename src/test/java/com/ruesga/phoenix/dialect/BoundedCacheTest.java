@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BoundedCacheTest {
+
+    @Test
+    public void testEvictOldestFirst() {
+        final BoundedCache<String, Integer> cache = new BoundedCache<>(2);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        Assert.assertEquals(2, cache.size());
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals(Integer.valueOf(3), cache.get("c"));
+    }
+
+    @Test
+    public void testReadEntriesAreSpared() {
+        final BoundedCache<String, Integer> cache = new BoundedCache<>(2);
+        cache.put("hot", 1);
+        cache.put("b", 2);
+        Assert.assertEquals(Integer.valueOf(1), cache.get("hot"));
+        cache.put("c", 3);
+        cache.computeIfAbsent("d", k -> 4);
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(Integer.valueOf(1), cache.get("hot"));
+        Assert.assertNull(cache.get("b"));
+        Assert.assertNull(cache.get("c"));
+    }
+
+    @Test
+    public void testEveryEntryRead() {
+        final BoundedCache<String, Integer> cache = new BoundedCache<>(2);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.get("a");
+        cache.get("b");
+        cache.put("c", 3);
+        // The entry just added is not evicted right away
+        Assert.assertEquals(2, cache.asMap().size());
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals(Integer.valueOf(3), cache.get("c"));
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import org.hibernate.MappingException;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ruesga.phoenix.dialect.annotations.FixedLength;
+
+public class ColumnTypesTest {
+
+    @Entity(name="fixed")
+    @Table(name="F", schema="T")
+    public static class Fixed {
+        @Id
+        @FixedLength
+        @Column(name="CODE", length=4)
+        private String code;
+
+        @FixedLength
+        @Column(name="DIGEST", length=16)
+        private byte[] digest;
+
+        @Column(name="NAME", length=40)
+        private String name;
+    }
+
+    @Entity(name="invalid")
+    @Table(name="I", schema="T")
+    public static class Invalid {
+        @Id
+        @FixedLength
+        @Column(name="ID")
+        private Long id;
+    }
+
+    private static StandardServiceRegistry registry;
+
+    @BeforeClass
+    public static void setUpClass() {
+        registry = new StandardServiceRegistryBuilder()
+                .applySetting(AvailableSettings.DIALECT, PhoenixDialect.class.getName())
+                .applySetting("hibernate.temp.use_jdbc_metadata_defaults", "false")
+                .build();
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        StandardServiceRegistryBuilder.destroy(registry);
+    }
+
+    @Test
+    public void testFixedLength() {
+        Metadata metadata = new MetadataSources(registry).addAnnotatedClass(Fixed.class).buildMetadata();
+        ColumnTypes.apply(metadata, false);
+
+        PhoenixDialect dialect = new PhoenixDialect();
+        String create = dialect.getTableExporter().getSqlCreateStrings(
+                metadata.getEntityBinding(Fixed.class.getName()).getTable(), metadata)[0];
+        Assert.assertTrue(create, create.contains("CODE char(4) not null"));
+        Assert.assertTrue(create, create.contains("DIGEST binary(16)"));
+        Assert.assertTrue(create, create.contains("NAME varchar(40)"));
+    }
+
+    @Test(expected = MappingException.class)
+    public void testFixedLengthOfNonStrings() {
+        Metadata metadata = new MetadataSources(registry).addAnnotatedClass(Invalid.class).buildMetadata();
+        ColumnTypes.apply(metadata, false);
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ruesga.phoenix.dialect.ExplainedPlan.PlanType;
+
+public class ExplainedPlanTest {
+
+    @Test
+    public void testPointLookup() {
+        ExplainedPlan plan = new ExplainedPlan("select", Arrays.asList(
+                "CLIENT 1-CHUNK 1 ROWS 205 BYTES PARALLEL 1-WAY ROUND ROBIN POINT LOOKUP ON 1 KEY OVER T.E"));
+        Assert.assertEquals(EnumSet.of(PlanType.POINT_LOOKUP), plan.getTypes());
+    }
+
+    @Test
+    public void testFullScanWithClientSort() {
+        ExplainedPlan plan = new ExplainedPlan("select", Arrays.asList(
+                "CLIENT 1-CHUNK PARALLEL 1-WAY FULL SCAN OVER T.D",
+                "    SERVER FILTER BY FIRST KEY ONLY",
+                "CLIENT SORTED BY [DEPT_NAME DESC]"));
+        Assert.assertEquals(EnumSet.of(PlanType.FULL_SCAN, PlanType.CLIENT_SORT), plan.getTypes());
+    }
+
+    @Test
+    public void testHashJoin() {
+        ExplainedPlan plan = new ExplainedPlan("select", Arrays.asList(
+                "CLIENT 1-CHUNK PARALLEL 1-WAY RANGE SCAN OVER T.S [10001]",
+                "    PARALLEL INNER-JOIN TABLE 0",
+                "        CLIENT 1-CHUNK PARALLEL 1-WAY SKIP SCAN ON 2 KEYS OVER T.E [10001] - [10002]"));
+        Assert.assertEquals(EnumSet.of(PlanType.RANGE_SCAN, PlanType.HASH_JOIN, PlanType.SKIP_SCAN),
+                plan.getTypes());
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GuidepostsTest {
+
+    @Test
+    public void testCompare() {
+        Assert.assertTrue(Guideposts.compare(10, 20) < 0);
+        Assert.assertTrue(Guideposts.compare(10, 10L) == 0);
+        Assert.assertTrue(Guideposts.compare(10.5d, 10) > 0);
+        Assert.assertTrue(Guideposts.compare("b", "a") > 0);
+    }
+}
@@ -50,11 +50,12 @@ public class HBaseClusterTestRule extends ExternalResource {
         // Start Zookeeper mock server
         TestingServer zk = new TestingServer(2181, true);
 
-        // Start an HBase cluster instance with one master and one regionserver
+        // Start an HBase cluster instance with one master and two regionservers, so the
+        // region replicas are hosted apart from their primaries
         configuration = createConfiguration(zk);
         util = new HBaseTestingUtility(configuration);
         util.cleanupTestDir();
-        cluster = util.startMiniHBaseCluster(1, 1);
+        cluster = util.startMiniHBaseCluster(1, 2);
     }
 
     @Override
@@ -92,6 +93,7 @@ public class HBaseClusterTestRule extends ExternalResource {
         conf.setInt(HConstants.MASTER_INFO_PORT, -1);
         conf.setInt(HConstants.REGIONSERVER_INFO_PORT, -1);
         conf.setBoolean(HConstants.REPLICATION_ENABLE_KEY, false);
+        conf.setInt("hbase.regionserver.storefile.refresh.period", 1000);
 
         conf.setInt(HConstants.ZOOKEEPER_MAX_CLIENT_CNXNS, 80);
         conf.set(HConstants.ZOOKEEPER_QUORUM, zk.getConnectString());
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.hibernate.mapping.Column;
+import org.hibernate.mapping.PrimaryKey;
+import org.hibernate.mapping.Table;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IndexAdvisorTest {
+
+    private static final String BY_LAST_NAME = "select employee0_.\"EMP_NO\" as EMP_NO1_3_, " +
+            "employee0_.\"FIRST_NAME\" as FIRST_NA3_3_ from \"T\".\"E\" employee0_ " +
+            "where employee0_.\"LAST_NAME\"=? and employee0_.\"HIRE_DATE\">?";
+    private static final String BY_EMP_NO = "select employee0_.\"FIRST_NAME\" as FIRST_NA3_3_ " +
+            "from \"T\".\"E\" employee0_ where employee0_.\"EMP_NO\"=?";
+    private static final String UPSERT = "upsert into \"T\".\"E\" (\"EMP_NO\", \"LAST_NAME\") values (?, ?)";
+
+    @Test
+    public void testRecommendCoveredIndex() {
+        IndexAdvisor advisor = new IndexAdvisor(mappings(), 16);
+        for (int i = 0; i < 10; i++) {
+            advisor.recordQuery(BY_LAST_NAME, null);
+            advisor.recordQuery(BY_EMP_NO, null);
+        }
+
+        List<IndexRecommendation> recommendations = advisor.recommend();
+        Assert.assertEquals(1, recommendations.size());
+        IndexRecommendation recommendation = recommendations.get(0);
+        Assert.assertEquals(Arrays.asList("LAST_NAME", "HIRE_DATE"), recommendation.getColumns());
+        Assert.assertEquals(Collections.singletonList("FIRST_NAME"), recommendation.getIncludes());
+        Assert.assertFalse(recommendation.isLocal());
+        Assert.assertEquals("CREATE INDEX IF NOT EXISTS \"E_LAST_NAME_HIRE_DATE_IDX\" ON \"T\".\"E\" " +
+                "(\"LAST_NAME\", \"HIRE_DATE\") INCLUDE (\"FIRST_NAME\")", recommendation.getDdl());
+    }
+
+    @Test
+    public void testWritesFavourLocalIndexes() {
+        IndexAdvisor advisor = new IndexAdvisor(mappings(), 16);
+        for (int i = 0; i < 10; i++) {
+            advisor.recordQuery(BY_LAST_NAME, null);
+            advisor.recordUpdate(UPSERT);
+        }
+        List<IndexRecommendation> recommendations = advisor.recommend();
+        Assert.assertEquals(1, recommendations.size());
+        Assert.assertTrue(recommendations.get(0).isLocal());
+        Assert.assertEquals(10, recommendations.get(0).getWrites());
+
+        for (int i = 0; i < 20; i++) {
+            advisor.recordUpdate(UPSERT);
+        }
+        Assert.assertTrue(advisor.recommend().isEmpty());
+    }
+
+    @Test
+    public void testHotQueriesOutliveAdHocOnes() {
+        IndexAdvisor advisor = new IndexAdvisor(mappings(), 2);
+        for (int i = 0; i < 10; i++) {
+            advisor.recordQuery(BY_LAST_NAME, null);
+        }
+        for (String where : new String[] {"\"FIRST_NAME\"=?", "\"HIRE_DATE\">?",
+                "\"FIRST_NAME\"=? and e.\"HIRE_DATE\">?"}) {
+            advisor.recordQuery("select e.\"LAST_NAME\" from \"T\".\"E\" e where e." + where, null);
+            advisor.recordQuery(BY_LAST_NAME, null);
+        }
+
+        // Every execution of the hot query is counted on the pattern that is recommended
+        IndexRecommendation recommendation = advisor.recommend().stream()
+                .filter(r -> r.getColumns().equals(Arrays.asList("LAST_NAME", "HIRE_DATE")))
+                .findFirst().orElse(null);
+        Assert.assertNotNull(recommendation);
+        Assert.assertEquals(13, recommendation.getReads());
+    }
+
+    private static PhoenixMappings mappings() {
+        Table table = new Table("`E`");
+        table.setSchema("`T`");
+        Column empNo = new Column("`EMP_NO`");
+        table.addColumn(empNo);
+        for (String name : new String[] {"`FIRST_NAME`", "`LAST_NAME`", "`HIRE_DATE`"}) {
+            table.addColumn(new Column(name));
+        }
+        PrimaryKey pk = new PrimaryKey(table);
+        pk.addColumn(empNo);
+        table.setPrimaryKey(pk);
+
+        TableMapping mapping = new TableMapping(table);
+        return new PhoenixMappings(Collections.singletonMap(mapping.getQualifiedName(), mapping));
+    }
+}
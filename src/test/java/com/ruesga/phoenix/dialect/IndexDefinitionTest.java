@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ruesga.phoenix.dialect.annotations.PhoenixIndex;
+
+public class IndexDefinitionTest {
+
+    @PhoenixIndex(name="E_I1", include={"FIRST_NAME", "LAST_NAME"})
+    @PhoenixIndex(name="E_I2", columns={"UPPER(LAST_NAME)"}, local=true, async=true, options={"SALT_BUCKETS=4"})
+    private static class Indexed {
+    }
+
+    @Test
+    public void testCoveredIndex() {
+        IndexDefinition definition = new IndexDefinition("E_I1", "T.E").column("GENDER")
+                .apply(Indexed.class.getAnnotationsByType(PhoenixIndex.class)[0]);
+        Assert.assertEquals("create index E_I1 on T.E (GENDER) include (FIRST_NAME, LAST_NAME)",
+                definition.toCreateSql());
+        Assert.assertEquals("drop index if exists E_I1 on T.E", definition.toDropSql());
+    }
+
+    @Test
+    public void testLocalFunctionalAsyncIndex() {
+        IndexDefinition definition = new IndexDefinition("E_I2", "T.E")
+                .apply(Indexed.class.getAnnotationsByType(PhoenixIndex.class)[1]);
+        Assert.assertEquals("create local index E_I2 on T.E (UPPER(LAST_NAME)) async SALT_BUCKETS=4",
+                definition.toCreateSql());
+    }
+}
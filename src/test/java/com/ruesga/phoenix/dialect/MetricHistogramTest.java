@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MetricHistogramTest {
+
+    @Test
+    public void testPercentiles() {
+        MetricHistogram histogram = new MetricHistogram();
+        Assert.assertEquals(0L, histogram.getPercentile(95));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        Assert.assertEquals(100L, histogram.getCount());
+        Assert.assertEquals(5050L, histogram.getSum());
+        Assert.assertEquals(100L, histogram.getMax());
+        Assert.assertEquals(50.5d, histogram.getMean(), 0.001d);
+        // Values are bucketed by powers of two
+        Assert.assertEquals(63L, histogram.getPercentile(50));
+        Assert.assertEquals(100L, histogram.getPercentile(95));
+
+        histogram.reset();
+        Assert.assertEquals(0L, histogram.getCount());
+        Assert.assertEquals(0L, histogram.getMax());
+    }
+}
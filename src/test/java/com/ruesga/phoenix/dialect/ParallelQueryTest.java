@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ParallelQueryTest {
+
+    @Test
+    public void testSplitPoints() {
+        final List<Object> values = Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12);
+        Assert.assertEquals(Arrays.asList(4, 7, 10), ParallelQuery.splitPoints(values, 4));
+        Assert.assertEquals(values, ParallelQuery.splitPoints(values, 20));
+        Assert.assertEquals(Collections.emptyList(), ParallelQuery.splitPoints(values, 1));
+        Assert.assertEquals(Collections.emptyList(), ParallelQuery.splitPoints(Collections.emptyList(), 4));
+    }
+
+    @Test
+    public void testToRanges() {
+        final List<Object[]> ranges = ParallelQuery.toRanges(Arrays.asList(10, 20));
+        Assert.assertEquals(3, ranges.size());
+        Assert.assertArrayEquals(new Object[]{null, 10}, ranges.get(0));
+        Assert.assertArrayEquals(new Object[]{10, 20}, ranges.get(1));
+        Assert.assertArrayEquals(new Object[]{20, null}, ranges.get(2));
+
+        Assert.assertArrayEquals(new Object[]{null, null}, ParallelQuery.toRanges(Collections.emptyList()).get(0));
+    }
+
+    @Test
+    public void testSortDistinct() {
+        Assert.assertEquals(Arrays.asList("a", "b", "c"),
+                Guideposts.sortDistinct(Arrays.asList("c", "a", "b", "a", "c")));
+    }
+}
@@ -19,7 +19,20 @@ import com.ruesga.phoenix.jpa.JpaEntityManager;
 import com.ruesga.phoenix.jpa.entities.*;
 import com.ruesga.phoenix.jpa.entities.Parameter;
 import org.apache.commons.math3.util.Pair;
+import org.apache.hadoop.hbase.client.Consistency;
+import org.apache.phoenix.jdbc.PhoenixConnection;
+import org.apache.phoenix.jdbc.PhoenixResultSet;
+import org.apache.phoenix.schema.types.PUnsignedLong;
+import org.apache.phoenix.schema.types.PUnsignedTinyint;
 import org.hibernate.Criteria;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.jdbc.spi.JdbcCoordinator;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.stat.Statistics;
 import org.junit.*;
 import org.junit.rules.ExpectedException;
 import org.junit.runners.MethodSorters;
@@ -29,8 +42,12 @@ import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaUpdate;
 import javax.persistence.criteria.Root;
 import java.security.MessageDigest;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.stream.Stream;
 
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
 public class PhoenixDialectTest {
@@ -188,6 +205,518 @@ public class PhoenixDialectTest {
         Assert.assertEquals(10006, employees.get(0).getEmpNo());
     }
 
+    @Test
+    public void test013_ExplainPlan() {
+        TypedQuery<Employee> q = em.createQuery("select e from employee e where e.empNo = :empNo", Employee.class);
+        q.setParameter("empNo", 10002);
+        q.getSingleResult();
+
+        QueryPlanGuard guard = getDialect().getQueryPlanGuard();
+        Assert.assertNotNull(guard);
+        Assert.assertTrue(guard.getPlanCounts().get(ExplainedPlan.PlanType.POINT_LOOKUP) > 0);
+        // test001_SelectAll scans the whole employee table
+        Assert.assertTrue(guard.getPlanCounts().get(ExplainedPlan.PlanType.FULL_SCAN) > 0);
+        Assert.assertTrue(guard.getViolations() > 0);
+    }
+
+    @Test
+    public void test014_IndexAdvisor() {
+        TypedQuery<Employee> q = em.createQuery("select e from employee e where e.lastName = :lastName", Employee.class);
+        q.setParameter("lastName", "Facello");
+        q.getResultList();
+        // Already served by the E_I0 index
+        q = em.createQuery("select e from employee e where e.gender = :gender", Employee.class);
+        q.setParameter("gender", Gender.MALE);
+        q.getResultList();
+
+        IndexAdvisor advisor = getDialect().getIndexAdvisor();
+        Assert.assertNotNull(advisor);
+        IndexRecommendation recommendation = null;
+        for (IndexRecommendation r : advisor.recommend()) {
+            Assert.assertNotEquals(Collections.singletonList("GENDER"), r.getColumns());
+            if (r.getTable().equals("T.E") && r.getColumns().equals(Collections.singletonList("LAST_NAME"))) {
+                recommendation = r;
+            }
+        }
+        Assert.assertNotNull(recommendation);
+        Assert.assertTrue(recommendation.getIncludes().contains("FIRST_NAME"));
+        Assert.assertTrue(recommendation.getDdl().startsWith("CREATE "));
+    }
+
+    @Test
+    public void test015_RequestMetrics() {
+        TypedQuery<Employee> q = em.createQuery("select e from employee e where e.empNo = :empNo", Employee.class);
+        q.setParameter("empNo", 10002);
+        q.getResultList();
+
+        RequestMetrics metrics = getDialect().getRequestMetrics();
+        Assert.assertNotNull(metrics);
+        Assert.assertTrue(metrics.getStatementCount() > 0);
+        Assert.assertFalse(metrics.getTableMetrics(Employee.class).isEmpty());
+        Assert.assertFalse(metrics.getTableSummary("T.E").isEmpty());
+
+        // Rolled back mutations are not reported by the next commit
+        long statements = metrics.getStatementCount();
+        Department d = new Department();
+        d.setDeptNo(2000);
+        d.setDeptName("Rolled back");
+        em.getTransaction().begin();
+        em.persist(d);
+        em.flush();
+        em.getTransaction().rollback();
+        em.clear();
+        em.getTransaction().begin();
+        em.getTransaction().commit();
+        Assert.assertEquals(statements, metrics.getStatementCount());
+    }
+
+    @Test
+    public void test016_TableOptions() {
+        Query q = em.createNativeQuery("select UPDATE_CACHE_FREQUENCY from SYSTEM.CATALOG " +
+                "where TABLE_SCHEM = 'T' and TABLE_NAME = 'T' and COLUMN_NAME is null and COLUMN_FAMILY is null");
+        Assert.assertEquals(900000L, ((Number) q.getSingleResult()).longValue());
+    }
+
+    @Test
+    public void test017_ColumnFamilies() {
+        Query q = em.createNativeQuery("select COLUMN_NAME, COLUMN_FAMILY from SYSTEM.CATALOG " +
+                "where TABLE_SCHEM = 'T' and TABLE_NAME = 'E' and COLUMN_NAME in ('BIRTH_DATE', 'HIRE_DATE') " +
+                "order by COLUMN_NAME");
+        @SuppressWarnings("unchecked")
+        List<Object[]> families = q.getResultList();
+        Assert.assertEquals(2, families.size());
+        Assert.assertEquals("B", families.get(0)[1]);
+        Assert.assertEquals("HISTORY", families.get(1)[1]);
+
+        Employee employee = em.find(Employee.class, 10001);
+        Assert.assertNotNull(employee.getBirthDate());
+        Assert.assertNotNull(employee.getHireDate());
+    }
+
+    @Test
+    public void test018_SecondaryIndexes() {
+        Query q = em.createNativeQuery("select TABLE_NAME, INDEX_TYPE from SYSTEM.CATALOG " +
+                "where TABLE_SCHEM = 'T' and TABLE_NAME in ('E_I0', 'E_I1') " +
+                "and COLUMN_NAME is null and COLUMN_FAMILY is null order by TABLE_NAME");
+        @SuppressWarnings("unchecked")
+        List<Object[]> indexes = q.getResultList();
+        Assert.assertEquals(2, indexes.size());
+        // 1 = GLOBAL, 2 = LOCAL
+        Assert.assertEquals(1, ((Number) indexes.get(0)[1]).intValue());
+        Assert.assertEquals(2, ((Number) indexes.get(1)[1]).intValue());
+
+        // Covered columns are named <family>:<column> in the index table
+        q = em.createNativeQuery("select count(*) from SYSTEM.CATALOG where TABLE_SCHEM = 'T' " +
+                "and TABLE_NAME = 'E_I0' and (COLUMN_NAME like '%:FIRST_NAME' or COLUMN_NAME like '%:LAST_NAME')");
+        Assert.assertEquals(2, ((Number) q.getSingleResult()).intValue());
+
+        TypedQuery<Employee> tq = em.createQuery("select e from employee e where upper(e.lastName) = :lastName",
+                Employee.class);
+        tq.setParameter("lastName", "FACELLO");
+        Assert.assertEquals(10001, tq.getSingleResult().getEmpNo());
+    }
+
+    @Test
+    public void test019_ImmutableTables() {
+        Query q = em.createNativeQuery("select IMMUTABLE_ROWS from SYSTEM.CATALOG " +
+                "where TABLE_SCHEM = 'T' and TABLE_NAME = 'S' and COLUMN_NAME is null and COLUMN_FAMILY is null");
+        Assert.assertEquals(Boolean.TRUE, q.getSingleResult());
+        Assert.assertTrue(getDialect().getMappings().getTable(Salary.class).isImmutable());
+        Assert.assertFalse(getDialect().getMappings().getTable(Employee.class).isImmutable());
+    }
+
+    @Test
+    public void test020_RowTimestamp() throws Exception {
+        Query q = em.createNativeQuery("select COLUMN_NAME from SYSTEM.CATALOG " +
+                "where TABLE_SCHEM = 'T' and TABLE_NAME = 'T' and IS_ROW_TIMESTAMP = true");
+        Assert.assertEquals("FROM_DATE", q.getSingleResult());
+
+        TypedQuery<Long> tq = em.createQuery("select count(t) from title t " +
+                "where t.fromDate >= :from and t.fromDate < :to", Long.class);
+        tq.setParameter("from", DATE_FORMATTER.parse("1996-01-01"));
+        tq.setParameter("to", DATE_FORMATTER.parse("1997-01-01"));
+        Assert.assertEquals(Long.valueOf(7), tq.getSingleResult());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void test021_RowKey() {
+        Query q = em.createNativeQuery("select COLUMN_NAME, SORT_ORDER from SYSTEM.CATALOG " +
+                "where TABLE_SCHEM = 'T' and TABLE_NAME = 'S' and KEY_SEQ is not null order by KEY_SEQ");
+        List<Object[]> columns = q.getResultList();
+        Assert.assertEquals(3, columns.size());
+        Assert.assertEquals("EMP_NO", columns.get(0)[0]);
+        Assert.assertEquals("FROM_DATE", columns.get(1)[0]);
+        Assert.assertEquals(1, ((Number) columns.get(1)[1]).intValue());
+        Assert.assertEquals("SALARY", columns.get(2)[0]);
+        Assert.assertEquals(Arrays.asList("EMP_NO", "FROM_DATE", "SALARY"),
+                getDialect().getMappings().getTable(Salary.class).getPrimaryKey());
+
+        // The latest salary is the first row of the employee
+        TypedQuery<Salary> tq = em.createQuery("from salary s where s.employee.empNo = 10001 " +
+                "order by s.fromDate desc", Salary.class);
+        tq.setMaxResults(1);
+        Assert.assertEquals(Double.valueOf(88958), tq.getSingleResult().getSalary());
+    }
+
+    @Test
+    public void test022_CompactTypes() {
+        Query q = em.createNativeQuery("select DATA_TYPE from SYSTEM.CATALOG " +
+                "where TABLE_SCHEM = 'T' and TABLE_NAME = 'E' and COLUMN_NAME = 'GENDER'");
+        Assert.assertEquals(PUnsignedTinyint.INSTANCE.getSqlType(), ((Number) q.getSingleResult()).intValue());
+        q = em.createNativeQuery("select DATA_TYPE from SYSTEM.CATALOG " +
+                "where TABLE_SCHEM = 'T' and TABLE_NAME = 'P' and COLUMN_NAME = 'ID'");
+        Assert.assertEquals(PUnsignedLong.INSTANCE.getSqlType(), ((Number) q.getSingleResult()).intValue());
+
+        Assert.assertEquals(Gender.MALE, em.find(Employee.class, 10001).getGender());
+    }
+
+    @Test
+    public void test023_Arrays() {
+        Department department = em.find(Department.class, 1);
+        long[] budgets = department.getBudgets();
+        List<String> locations = department.getLocations() != null
+                ? new ArrayList<>(department.getLocations()) : null;
+        try {
+            em.getTransaction().begin();
+            department.setBudgets(new long[] {1000L, 2500L, 4000L});
+            department.setLocations(Arrays.asList("Madrid", "Lisbon"));
+            em.getTransaction().commit();
+            em.clear();
+
+            department = em.find(Department.class, 1);
+            Assert.assertArrayEquals(new long[] {1000L, 2500L, 4000L}, department.getBudgets());
+            Assert.assertEquals(Arrays.asList("Madrid", "Lisbon"), department.getLocations());
+
+            TypedQuery<Department> q = em.createQuery("select d from department d " +
+                    "where array_any(2500, d.budgets) = true", Department.class);
+            Assert.assertEquals(1, q.getSingleResult().getDeptNo());
+            TypedQuery<Integer> lq = em.createQuery("select array_length(d.locations) from department d " +
+                    "where d.deptNo = 1", Integer.class);
+            Assert.assertEquals(Integer.valueOf(2), lq.getSingleResult());
+            TypedQuery<String> eq = em.createQuery("select array_elem(d.locations, 2) from department d " +
+                    "where d.deptNo = 1", String.class);
+            Assert.assertEquals("Lisbon", eq.getSingleResult());
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.clear();
+            em.getTransaction().begin();
+            department = em.find(Department.class, 1);
+            department.setBudgets(budgets);
+            department.setLocations(locations);
+            em.getTransaction().commit();
+        }
+    }
+
+    @Test
+    public void test024_Streaming() {
+        em.clear();
+        TypedQuery<Employee> q = em.createQuery("select e from employee e", Employee.class);
+        List<Employee> read = new ArrayList<>();
+        try (Stream<Employee> employees = PhoenixStreams.stream(em, q)) {
+            employees.forEach(read::add);
+        }
+        Assert.assertEquals(31, read.size());
+        for (Employee e : read) {
+            Assert.assertFalse(em.contains(e));
+        }
+
+        int fetchSize = getDialect().getStreamingFetchSize(Employee.class);
+        Assert.assertTrue(fetchSize >= 100 && fetchSize <= 10000);
+        // The employees loaded along with the salaries are evicted too, unlike those held before
+        Department department = em.find(Department.class, 1);
+        PersistenceContext context = em.unwrap(SessionImplementor.class).getPersistenceContext();
+        int managed = context.getNumberOfManagedEntities();
+        long salaries = 0;
+        try (Stream<Salary> stream = PhoenixStreams.stream(em,
+                em.createQuery("select s from salary s", Salary.class))) {
+            for (Salary s : (Iterable<Salary>) stream::iterator) {
+                Assert.assertNotNull(s.getEmployee().getFirstName());
+                salaries++;
+            }
+        }
+        Assert.assertTrue(salaries > 0);
+        Assert.assertEquals(managed, context.getNumberOfManagedEntities());
+        Assert.assertTrue(em.contains(department));
+    }
+
+    @Test
+    public void test025_ParallelQuery() {
+        SessionFactoryImplementor sf = em.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class);
+        List<Employee> employees = ParallelQuery.of(sf, Employee.class, "e")
+                .setParallelism(4)
+                .setChunks(8)
+                .setOrdered(true)
+                .list();
+        Assert.assertEquals(31, employees.size());
+        for (int i = 1; i < employees.size(); i++) {
+            Assert.assertTrue(employees.get(i - 1).getEmpNo() < employees.get(i).getEmpNo());
+        }
+
+        TypedQuery<Long> q = em.createQuery("select count(s) from salary s where s.salary > :salary", Long.class);
+        q.setParameter("salary", 80000d);
+        List<Salary> salaries = ParallelQuery.of(sf, Salary.class, "s")
+                .where("s.salary > :salary")
+                .setParameter("salary", 80000d)
+                .list();
+        Assert.assertEquals(q.getSingleResult().longValue(), salaries.size());
+    }
+
+    @Test
+    public void test026_ApproximateCount() {
+        em.unwrap(Session.class).doWork(c -> {
+            try (Statement st = c.createStatement()) {
+                st.executeUpdate("UPDATE STATISTICS T.E");
+            }
+        });
+        getDialect().getRowCountEstimator().invalidate("T.E");
+
+        RowCountEstimate estimate = PhoenixStatistics.approximateCount(em, Employee.class);
+        Assert.assertTrue(estimate.isAvailable());
+        Assert.assertEquals(31, estimate.getCount());
+        Assert.assertTrue(estimate.getMinimum() <= 31 && estimate.getMaximum() >= 31);
+
+        TypedQuery<Long> cq = em.createQuery("select count(e) from employee e " +
+                "where e.empNo >= 10001 and e.empNo < 10011", Long.class);
+        long count = cq.getSingleResult();
+        estimate = PhoenixStatistics.approximateCount(em, Employee.class, 10001, 10011);
+        Assert.assertTrue(estimate.getMinimum() <= count && estimate.getMaximum() >= count);
+
+        TypedQuery<Long> q = em.createQuery("select approx_count('employee') from employee e", Long.class);
+        q.setMaxResults(1);
+        Assert.assertEquals(Long.valueOf(31), q.getSingleResult());
+    }
+
+    @Test
+    public void test027_StatisticsMaintenance() throws Exception {
+        PhoenixStatistics.updateStatistics(em, Salary.class);
+        Assert.assertTrue(PhoenixStatistics.getLastUpdate(em, Salary.class) > 0);
+
+        StatisticsMaintainer maintainer = getDialect().getStatisticsMaintainer();
+        Assert.assertNotNull(maintainer);
+        long start = System.currentTimeMillis();
+        Session session = em.unwrap(Session.class);
+        Integer batchSize = session.getJdbcBatchSize();
+        session.setJdbcBatchSize(50);
+        try {
+            // Rolled back rows don't count, and neither do uncommitted ones
+            long pending = maintainer.getPendingMutations("T.D");
+            em.getTransaction().begin();
+            for (int i = 0; i < 30; i++) {
+                Department d = new Department();
+                d.setDeptNo(1000 + i);
+                d.setDeptName("Rolled back " + i);
+                em.persist(d);
+            }
+            em.flush();
+            Assert.assertEquals(pending, maintainer.getPendingMutations("T.D"));
+            em.getTransaction().rollback();
+            em.clear();
+            Assert.assertEquals(pending, maintainer.getPendingMutations("T.D"));
+            Assert.assertTrue(maintainer.getLastRefresh("T.D") == null || maintainer.getLastRefresh("T.D") < start);
+
+            // A JDBC batch of 30 upserts, past the update threshold of the unit
+            em.getTransaction().begin();
+            for (int i = 0; i < 30; i++) {
+                Department d = new Department();
+                d.setDeptNo(1000 + i);
+                d.setDeptName("Batch " + i);
+                em.persist(d);
+            }
+            em.getTransaction().commit();
+
+            for (int i = 0; i < 300 && (maintainer.getLastRefresh("T.D") == null
+                    || maintainer.getLastRefresh("T.D") < start); i++) {
+                Thread.sleep(100);
+            }
+            Assert.assertNotNull(maintainer.getLastRefresh("T.D"));
+            Assert.assertTrue(maintainer.getLastRefresh("T.D") >= start);
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.getTransaction().begin();
+            for (Department d : em.createQuery("select d from department d where d.deptNo >= 1000",
+                    Department.class).getResultList()) {
+                em.remove(d);
+            }
+            em.getTransaction().commit();
+            em.clear();
+            session.setJdbcBatchSize(batchSize);
+        }
+    }
+
+    @Test
+    public void test028_BatchFetch() {
+        Statistics statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        boolean enabled = statistics.isStatisticsEnabled();
+        statistics.setStatisticsEnabled(true);
+        try {
+            em.clear();
+            List<Employee> employees = em.createQuery("select e from employee e order by e.empNo", Employee.class)
+                    .getResultList();
+            statistics.clear();
+            int salaries = 0;
+            for (Employee e : employees) {
+                // Initialized in batches of (padded) skip scans instead of one query per employee
+                salaries += e.getSalaries().size();
+            }
+            // 31 employees: a batch of 16 and the 15 left padded to 16
+            Assert.assertEquals(2, statistics.getPrepareStatementCount());
+            Assert.assertEquals(employees.size(), statistics.getCollectionLoadCount());
+            TypedQuery<Long> q = em.createQuery("select count(s) from salary s", Long.class);
+            Assert.assertEquals(q.getSingleResult().longValue(), salaries);
+
+            em.clear();
+            statistics.clear();
+            List<Employee> loaded = em.unwrap(Session.class).byMultipleIds(Employee.class)
+                    .multiLoad(10001, 10002, 10003);
+            Assert.assertEquals(3, loaded.size());
+            Assert.assertEquals(10002, loaded.get(1).getEmpNo());
+            Assert.assertEquals(1, statistics.getPrepareStatementCount());
+        } finally {
+            statistics.setStatisticsEnabled(enabled);
+        }
+    }
+
+    @Test
+    public void test029_Snapshot() throws Exception {
+        long scn = System.currentTimeMillis();
+        Thread.sleep(100);
+        Department d = em.find(Department.class, 3);
+        em.getTransaction().begin();
+        d.setDeptName("People");
+        em.getTransaction().commit();
+        // Past the cache margin of the unit
+        Thread.sleep(1000);
+
+        String hql = "select d.deptName from department d where d.deptNo = :deptNo";
+        SessionFactory sf = em.getEntityManagerFactory().unwrap(SessionFactory.class);
+        try {
+            List<String> first;
+            try (PhoenixSnapshot snapshot = PhoenixSnapshot.open(em.getEntityManagerFactory(), scn)) {
+                // Read as it was at the snapshot SCN
+                TypedQuery<String> q = snapshot.getSession().createQuery(hql, String.class);
+                q.setParameter("deptNo", 3);
+                first = snapshot.list(q);
+                Assert.assertEquals("Human Resources", first.get(0));
+            }
+            try (PhoenixSnapshot snapshot = PhoenixSnapshot.open(sf, scn)) {
+                // Served from the snapshot cache
+                Assert.assertSame(first, snapshot.list(
+                        snapshot.getSession().createQuery(hql, String.class).setParameter("deptNo", 3)));
+
+                // Entities belong to the session that loaded them, so they are not cached
+                org.hibernate.query.Query<Department> q = snapshot.getSession().createQuery(
+                        "select d from department d where d.deptNo = :deptNo", Department.class);
+                q.setParameter("deptNo", 3);
+                List<Department> departments = snapshot.list(q);
+                Assert.assertEquals("Human Resources", departments.get(0).getDeptName());
+                Assert.assertNotSame(departments, snapshot.list(q));
+
+                // Nor are dates, which are mutable
+                org.hibernate.query.Query<Date> dates = snapshot.getSession().createQuery(
+                        "select max(s.fromDate) from salary s", Date.class);
+                Assert.assertNotSame(snapshot.list(dates), snapshot.list(dates));
+            }
+            try (PhoenixSnapshot snapshot = PhoenixSnapshot.now(sf)) {
+                // Late writes may still land at or before now, so these are not cached
+                org.hibernate.query.Query<String> q = snapshot.getSession().createQuery(hql, String.class);
+                q.setParameter("deptNo", 3);
+                List<String> current = snapshot.list(q);
+                Assert.assertEquals("People", current.get(0));
+                Assert.assertNotSame(current, snapshot.list(q));
+            }
+            try (PhoenixSnapshot snapshot = PhoenixSnapshot.open(sf, System.currentTimeMillis() - 100)) {
+                // Neither are those of recent SCNs
+                org.hibernate.query.Query<String> q = snapshot.getSession().createQuery(hql, String.class);
+                q.setParameter("deptNo", 3);
+                Assert.assertNotSame(snapshot.list(q), snapshot.list(q));
+            }
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.getTransaction().begin();
+            d.setDeptName("Human Resources");
+            em.getTransaction().commit();
+        }
+    }
+
+    @Test
+    public void test030_TimelineReads() throws Exception {
+        String hql = "select d from department d order by d.deptNo";
+        List<Department> departments = em.createQuery(hql, Department.class).getResultList();
+
+        try (PhoenixTimeline timeline = PhoenixTimeline.open(em.getEntityManagerFactory())) {
+            List<Department> replicated = timeline.getSession().createQuery(hql, Department.class).list();
+            Assert.assertEquals(departments.size(), replicated.size());
+            // The primaries answer well within the timeout of the tests
+            Assert.assertFalse(timeline.wasStale());
+        }
+
+        org.hibernate.query.Query<Department> q = em.unwrap(Session.class).createQuery(hql, Department.class);
+        q.addQueryHint("timeline");
+        Assert.assertEquals(departments.size(), q.list().size());
+        Assert.assertFalse(PhoenixTimeline.wasStale(em));
+
+        // The hinted query scans with timeline consistency, and the connection is restored afterwards
+        JdbcCoordinator coordinator = em.unwrap(SessionImplementor.class).getJdbcCoordinator();
+        PreparedStatement statement = coordinator.getStatementPreparer().prepareStatement(QueryHints.apply(
+                "select \"DEPT_NO\" from \"T\".\"D\"", Collections.singletonList("timeline")));
+        try {
+            ResultSet rs = coordinator.getResultSetReturn().extract(statement);
+            Assert.assertEquals(Consistency.TIMELINE,
+                    rs.unwrap(PhoenixResultSet.class).getContext().getScan().getConsistency());
+            Assert.assertEquals(Consistency.STRONG,
+                    statement.getConnection().unwrap(PhoenixConnection.class).getConsistency());
+        } finally {
+            coordinator.getResourceRegistry().release(statement);
+            coordinator.afterStatementExecution();
+        }
+    }
+
+    @Test
+    public void test031_ConnectionProvider() {
+        SessionFactoryImplementor sf = em.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class);
+        PhoenixConnectionProvider provider = sf.getServiceRegistry().getService(ConnectionProvider.class)
+                .unwrap(PhoenixConnectionProvider.class);
+        Assert.assertTrue(provider.getOpenedConnections() > 0);
+
+        // The connection released by this thread is handed out again
+        long reused = provider.getReusedConnections();
+        for (int i = 0; i < 2; i++) {
+            Session session = sf.openSession();
+            try {
+                Assert.assertEquals(Long.valueOf(3), session.createQuery(
+                        "select count(d) from department d where d.deptNo <= 3", Long.class).getSingleResult());
+            } finally {
+                session.close();
+            }
+        }
+        Assert.assertTrue(provider.getReusedConnections() > reused);
+        Assert.assertTrue(provider.getAcquisitionTimes().getCount() >= provider.getOpenedConnections());
+    }
+
+    @Test
+    public void test032_StatementCache() {
+        StatementCache cache = getDialect().getStatementCache();
+        Assert.assertNotNull(cache);
+        long hits = cache.getHits();
+
+        TypedQuery<Employee> q = em.createQuery("select e from employee e where e.empNo = :empNo", Employee.class);
+        q.setParameter("empNo", 10001);
+        Assert.assertEquals(10001, q.getSingleResult().getEmpNo());
+        q.setParameter("empNo", 10002);
+        Assert.assertEquals(10002, q.getSingleResult().getEmpNo());
+
+        // The second execution reuses the statement released by the first one
+        Assert.assertTrue(cache.getHits() > hits);
+        Assert.assertTrue(cache.getHitRatio() > 0d);
+    }
+
     @Test
     public void test100_FunctionPercentileCont() {
         TypedQuery<Double> q = em.createQuery("select percentile_cont_asc(0.90, s.salary) from salary s", Double.class);
@@ -564,6 +1093,50 @@ public class PhoenixDialectTest {
         Assert.assertEquals(Integer.valueOf(-1), result);
     }
 
+    @Test
+    public void test149_FunctionFirstValue() {
+        // Latest salary per employee
+        TypedQuery<Double> q = em.createQuery("select first_value_desc(s.salary, s.fromDate) from salary s " +
+                "where s.employee.empNo = 10001 group by s.employee.empNo", Double.class);
+        Assert.assertEquals(Double.valueOf(88958d), q.getSingleResult());
+
+        q = em.createQuery("select last_value_desc(s.salary, s.fromDate) from salary s " +
+                "where s.employee.empNo = 10001 group by s.employee.empNo", Double.class);
+        Assert.assertEquals(Double.valueOf(60117d), q.getSingleResult());
+
+        q = em.createQuery("select first_value_asc(s.salary, s.fromDate) from salary s " +
+                "where s.employee.empNo = 10001 group by s.employee.empNo", Double.class);
+        Assert.assertEquals(Double.valueOf(60117d), q.getSingleResult());
+    }
+
+    @Test
+    public void test150_FunctionNthValue() {
+        TypedQuery<Double> q = em.createQuery("select nth_value_asc(s.salary, 2, s.fromDate) from salary s " +
+                "where s.employee.empNo = 10001 group by s.employee.empNo", Double.class);
+        Assert.assertEquals(Double.valueOf(62102d), q.getSingleResult());
+    }
+
+    @Test
+    @SuppressWarnings("rawtypes")
+    public void test151_FunctionFirstValues() {
+        TypedQuery<List> q = em.createQuery("select first_values_asc(s.salary, 3, s.fromDate) from salary s " +
+                "where s.employee.empNo = 10001 group by s.employee.empNo", List.class);
+        Assert.assertEquals(Arrays.asList(60117d, 62102d, 66074d), q.getSingleResult());
+
+        q = em.createQuery("select last_values_desc(s.salary, 2, s.fromDate) from salary s " +
+                "where s.employee.empNo = 10001 group by s.employee.empNo", List.class);
+        Assert.assertEquals(2, q.getSingleResult().size());
+    }
+
+    @Test
+    public void test152_FunctionDistinctCount() {
+        TypedQuery<Long> q = em.createQuery("select distinct_count(s.employee.empNo) from salary s", Long.class);
+        Assert.assertEquals(Long.valueOf(31), q.getSingleResult());
+
+        q = em.createQuery("select approx_count_distinct(s.employee.empNo) from salary s", Long.class);
+        Assert.assertTrue(Math.abs(q.getSingleResult() - 31) <= 2);
+    }
+
     @Test
     public void test201_Insert() throws Exception {
         em.getTransaction().begin();
@@ -602,6 +1175,40 @@ public class PhoenixDialectTest {
         Assert.fail("Employee 10003 was not deleted");
     }
 
+    @Test
+    public void test302_PrefixDelete() {
+        TypedQuery<Long> sq = em.createQuery("select count(s) from salary s where s.employee.empNo = :empNo", Long.class);
+        sq.setParameter("empNo", 10004);
+        TypedQuery<Long> tq = em.createQuery("select count(t) from title t where t.employee.empNo = :empNo", Long.class);
+        tq.setParameter("empNo", 10004);
+        Assert.assertTrue(sq.getSingleResult() > 0);
+        Assert.assertTrue(tq.getSingleResult() > 0);
+
+        em.clear();
+        TypedQuery<Salary> sl = em.createQuery("select s from salary s where s.employee.empNo = :empNo", Salary.class);
+        sl.setParameter("empNo", 10004);
+        TypedQuery<Title> tl = em.createQuery("select t from title t where t.employee.empNo = :empNo", Title.class);
+        tl.setParameter("empNo", 10004);
+        List<Salary> salaries = sl.getResultList();
+        List<Title> titles = tl.getResultList();
+        Employee e = em.find(Employee.class, 10004);
+        em.getTransaction().begin();
+        em.remove(e);
+        em.getTransaction().commit();
+
+        // Deleted by row key prefix, and the elements the session held are evicted
+        Assert.assertEquals(Long.valueOf(0), sq.getSingleResult());
+        Assert.assertEquals(Long.valueOf(0), tq.getSingleResult());
+        for (Salary salary : salaries) {
+            Assert.assertFalse(em.contains(salary));
+        }
+        for (Title title : titles) {
+            Assert.assertFalse(em.contains(title));
+        }
+        Assert.assertTrue(sl.getResultList().isEmpty());
+        Assert.assertTrue(tl.getResultList().isEmpty());
+    }
+
     @Test
     public void test401_Update() {
         TypedQuery<Employee> q = em.createQuery("select e from employee e where e.empNo = :empNo", Employee.class);
@@ -693,6 +1300,38 @@ public class PhoenixDialectTest {
         Assert.assertEquals(p.getValue(), "y");
     }
 
+    @Test
+    public void test502_NaturalId() {
+        Parameter p = new Parameter();
+        p.setName("timeout");
+        p.setValue("30");
+        em.getTransaction().begin();
+        em.persist(p);
+        em.getTransaction().commit();
+        em.clear();
+
+        // The lookup only reads the row key, so the natural id index includes no other column
+        TableMapping table = getDialect().getMappings().getTable(Parameter.class);
+        Assert.assertNotNull(table.getNaturalIdIndex());
+        Query q = em.createNativeQuery("select count(*) from SYSTEM.CATALOG where TABLE_SCHEM = 'T' " +
+                "and TABLE_NAME = '" + table.getNaturalIdIndex() + "' and COLUMN_NAME like '%:VALUE'");
+        Assert.assertEquals(0, ((Number) q.getSingleResult()).intValue());
+
+        Parameter loaded = em.unwrap(Session.class).bySimpleNaturalId(Parameter.class).load("timeout");
+        Assert.assertNotNull(loaded);
+        Assert.assertEquals(p.getId(), loaded.getId());
+        Assert.assertEquals("30", loaded.getValue());
+
+        // The identifier was resolved through the index
+        Assert.assertTrue(getDialect().getRequestMetrics().getQueries().stream().anyMatch(
+                sql -> sql.contains("INDEX(") && sql.contains(table.getNaturalIdIndex())));
+    }
+
+    private PhoenixDialect getDialect() {
+        return (PhoenixDialect) em.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices().getDialect();
+    }
+
     private <T extends TimeRange> T findActiveEntity(Collection<T> range) {
         if (range != null) {
             final long now = System.currentTimeMillis();
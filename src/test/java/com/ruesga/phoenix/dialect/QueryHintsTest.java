@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class QueryHintsTest {
+
+    @Test
+    public void testTopLevelSelect() {
+        final String QUERY = "/* HQL comment */ SELECT d.\"DEPT_NO\" from \"T\".\"D\" d " +
+                "where d.\"DEPT_NO\" in (select x.\"DEPT_NO\" from \"T\".\"DE\" x)";
+        final String EXPECTED = "SELECT /*+ INDEX(T.D D_I0) */ d.\"DEPT_NO\" from \"T\".\"D\" d " +
+                "where d.\"DEPT_NO\" in (select x.\"DEPT_NO\" from \"T\".\"DE\" x)";
+        Assert.assertEquals(EXPECTED, QueryHints.apply(QUERY,
+                Collections.singletonList("/*+ INDEX(T.D D_I0) */")));
+    }
+
+    @Test
+    public void testMergeExistingHints() {
+        final String QUERY = "select /*+ NO_CACHE */ * from dual where x = 'select'";
+        final String EXPECTED = "select /*+ NO_CACHE SMALL */ * from dual where x = 'select'";
+        Assert.assertEquals(EXPECTED, QueryHints.apply(QUERY, Arrays.asList("no_cache", "SMALL")));
+    }
+
+    @Test
+    public void testTimelineHint() {
+        final String QUERY = "select * from T.D d where d.DEPT_NAME = 'TIMELINE'";
+        Assert.assertFalse(PhoenixTimeline.isHinted(QUERY));
+        Assert.assertTrue(PhoenixTimeline.isHinted(QueryHints.apply(QUERY,
+                Arrays.asList("NO_CACHE", PhoenixTimeline.HINT_TIMELINE))));
+        Assert.assertTrue(PhoenixTimeline.isHinted(QueryHints.apply(QUERY, Arrays.asList("timeline"))));
+    }
+
+    @Test
+    public void testUnionBranches() {
+        final String QUERY = "select u.id from (select id from A union all select id from B) u";
+        Assert.assertEquals("select u.id from (select /*+ SERIAL */ id from A union all select id from B) u",
+                QueryHints.apply(QUERY, Collections.singletonList(QueryHints.union(0, "SERIAL"))));
+        Assert.assertEquals("select u.id from (select /*+ SERIAL */ id from A union all " +
+                "select /*+ SERIAL */ id from B) u",
+                QueryHints.apply(QUERY, Collections.singletonList(QueryHints.unionAll("SERIAL"))));
+    }
+
+    @Test
+    public void testParenthesizedUnionBranches() {
+        final String QUERY = "(select id from A) union all (select id from B where id in (select id from C))";
+        Assert.assertEquals("(select id from A) union all " +
+                "(select /*+ SERIAL */ id from B where id in (select id from C))",
+                QueryHints.apply(QUERY, Collections.singletonList(QueryHints.union(1, "SERIAL"))));
+        Assert.assertEquals("(select /*+ SMALL */ id from A) union all " +
+                "(select /*+ SMALL */ id from B where id in (select id from C))",
+                QueryHints.apply(QUERY, Collections.singletonList(QueryHints.unionAll("SMALL"))));
+        Assert.assertEquals("(select /*+ NO_CACHE */ id from A) union all " +
+                "(select id from B where id in (select id from C))",
+                QueryHints.apply(QUERY, Collections.singletonList("NO_CACHE")));
+    }
+
+    @Test
+    public void testNamedSubquery() {
+        final String QUERY = "select * from (select id from A) as sub1, (select id from B) sub2";
+        final String EXPECTED = "select * from (select id from A) as sub1, " +
+                "(select /*+ NO_CACHE */ id from B) sub2";
+        Assert.assertEquals(EXPECTED, QueryHints.apply(QUERY,
+                Collections.singletonList(QueryHints.subquery("sub2", "/*+ NO_CACHE */"))));
+    }
+
+    @Test
+    public void testUnknownTargetIsIgnored() {
+        final String QUERY = "select id from A";
+        Assert.assertEquals(QUERY, QueryHints.apply(QUERY,
+                Collections.singletonList(QueryHints.subquery("missing", "SMALL"))));
+    }
+}
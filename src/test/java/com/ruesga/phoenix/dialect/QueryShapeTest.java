@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class QueryShapeTest {
+
+    @Test
+    public void testPointLookup() {
+        final String QUERY = "select employee0_.\"EMP_NO\" as EMP_NO1_3_, employee0_.\"FIRST_NAME\" as FIRST_NA3_3_ " +
+                "from \"T\".\"E\" employee0_ where employee0_.\"EMP_NO\"=?";
+        QueryShape shape = QueryShape.parse(QUERY);
+        Assert.assertEquals("T.E", shape.getTable());
+        Assert.assertEquals("EMPLOYEE0_", shape.getAlias());
+        Assert.assertEquals(new LinkedHashSet<>(Arrays.asList("EMP_NO", "FIRST_NAME")),
+                shape.getProjection());
+        Assert.assertEquals(Collections.singleton("EMP_NO"), shape.getEqualities());
+        Assert.assertEquals(1, shape.boundPrimaryKeyPrefix(Collections.singletonList("EMP_NO")));
+        Assert.assertFalse(shape.hasLimit());
+    }
+
+    @Test
+    public void testRangesAndLimit() {
+        final String QUERY = "select s.\"SALARY\" from \"T\".\"S\" s where s.\"EMP_NO\"=? " +
+                "and s.\"FROM_DATE\" between ? and ? and (s.\"SALARY\" > 10 or s.\"TO_DATE\" is null) " +
+                "order by s.\"FROM_DATE\" desc limit 10";
+        QueryShape shape = QueryShape.parse(QUERY);
+        Assert.assertEquals(Collections.singleton("EMP_NO"), shape.getEqualities());
+        Assert.assertEquals(Collections.singleton("FROM_DATE"), shape.getRanges());
+        Assert.assertEquals(new LinkedHashSet<>(Arrays.asList("SALARY", "TO_DATE")),
+                shape.getOtherFilters());
+        Assert.assertEquals(Collections.singletonList("FROM_DATE"), shape.getOrderBy());
+        Assert.assertTrue(shape.hasLimit());
+        Assert.assertEquals(Integer.valueOf(10), shape.getLiteralLimit());
+        Assert.assertTrue(shape.hasDisjunction());
+    }
+
+    @Test
+    public void testAggregatesAndJoins() {
+        Assert.assertTrue(QueryShape.parse("select count(d.\"DEPT_NO\") as col_0_0_ from \"T\".\"D\" d")
+                .isAggregate());
+        Assert.assertTrue(QueryShape.parse("select s.\"SALARY\" from \"T\".\"S\" s inner join \"T\".\"E\" e " +
+                "on s.\"EMP_NO\"=e.\"EMP_NO\" where e.\"EMP_NO\"=?").hasJoin());
+        Assert.assertNull(QueryShape.parse("upsert into \"T\".\"E\" (\"EMP_NO\") values (?)"));
+    }
+
+    @Test
+    public void testMutatedTable() {
+        Assert.assertEquals("T.E", QueryShape.mutatedTable("upsert into \"T\".\"E\" (\"EMP_NO\") values (?)"));
+        Assert.assertEquals("T.E", QueryShape.mutatedTable("delete from \"T\".\"E\" where \"EMP_NO\"=?"));
+        Assert.assertNull(QueryShape.mutatedTable("select 1 from \"T\".\"E\""));
+    }
+}
@@ -33,4 +33,58 @@ public class QueryUtilsTest {
         final String result = QueryUtils.removeQueryComments(QUERY).replaceAll("\n", "").trim();
         Assert.assertEquals(EXPECTED, result);
     }
+
+    @Test
+    public void testQualifyColumnDefinition() {
+        final String CREATE = "create table \"T\".\"E\" (\"EMP_NO\" integer not null, " +
+                "\"BIRTH_DATE\" timestamp, CONSTRAINT pk primary key (\"EMP_NO\", \"BIRTH_DATE\"))";
+        final String EXPECTED = "create table \"T\".\"E\" (\"EMP_NO\" integer not null, " +
+                "\"B\".\"BIRTH_DATE\" timestamp, CONSTRAINT pk primary key (\"EMP_NO\", \"BIRTH_DATE\"))";
+        Assert.assertEquals(EXPECTED, QueryUtils.qualifyColumnDefinition(CREATE, "\"BIRTH_DATE\"", "\"B\""));
+        Assert.assertEquals(CREATE, QueryUtils.qualifyColumnDefinition(CREATE, "\"SALARY\"", "\"B\""));
+    }
+
+    @Test
+    public void testQualifyPrimaryKeyColumn() {
+        final String CREATE = "create table \"T\".\"T\" (\"EMP_NO\" integer not null, " +
+                "\"FROM_DATE\" timestamp not null, CONSTRAINT pk primary key (\"EMP_NO\", \"FROM_DATE\"))";
+        final String EXPECTED = "create table \"T\".\"T\" (\"EMP_NO\" integer not null, " +
+                "\"FROM_DATE\" timestamp not null, CONSTRAINT pk primary key (\"EMP_NO\", " +
+                "\"FROM_DATE\" ROW_TIMESTAMP))";
+        Assert.assertEquals(EXPECTED, QueryUtils.qualifyPrimaryKeyColumn(CREATE, "\"FROM_DATE\"", "ROW_TIMESTAMP"));
+        Assert.assertEquals(CREATE, QueryUtils.qualifyPrimaryKeyColumn(CREATE, "\"TO_DATE\"", "ROW_TIMESTAMP"));
+    }
+
+    @Test
+    public void testReplacePrimaryKeyColumns() {
+        final String CREATE = "create table \"T\".\"S\" (\"EMP_NO\" integer not null, " +
+                "\"FROM_DATE\" timestamp not null, CONSTRAINT pk primary key (\"EMP_NO\", \"FROM_DATE\"))";
+        final String EXPECTED = "create table \"T\".\"S\" (\"EMP_NO\" integer not null, " +
+                "\"FROM_DATE\" timestamp not null, CONSTRAINT pk primary key (\"EMP_NO\", \"FROM_DATE\" DESC))";
+        final String REORDERED = QueryUtils.replacePrimaryKeyColumns(CREATE, "\"EMP_NO\", \"FROM_DATE\" DESC");
+        Assert.assertEquals(EXPECTED, REORDERED);
+        Assert.assertTrue(QueryUtils.qualifyPrimaryKeyColumn(REORDERED, "\"FROM_DATE\"", "ROW_TIMESTAMP")
+                .endsWith("(\"EMP_NO\", \"FROM_DATE\" DESC ROW_TIMESTAMP))"));
+    }
+
+    @Test
+    public void testNormalizeQualifiedName() {
+        Assert.assertEquals("T.S", QueryUtils.normalizeQualifiedName("\"T\".\"S\""));
+        Assert.assertEquals("T.S", QueryUtils.normalizeQualifiedName("t.s"));
+        Assert.assertEquals("S", QueryUtils.normalizeQualifiedName("s"));
+    }
+
+    @Test
+    public void testQuoteQualifiedName() {
+        Assert.assertEquals("\"T\".\"S\"", QueryUtils.quoteQualifiedName("T.S"));
+        Assert.assertEquals("\"S\"", QueryUtils.quoteQualifiedName("S"));
+    }
+
+    @Test
+    public void testBatchSizes() {
+        Assert.assertArrayEquals(new int[]{16, 8, 4, 2, 1}, QueryUtils.batchSizes(16));
+        Assert.assertArrayEquals(new int[]{20, 16, 8, 4, 2, 1}, QueryUtils.batchSizes(20));
+        Assert.assertArrayEquals(new int[]{2, 1}, QueryUtils.batchSizes(2));
+        Assert.assertArrayEquals(new int[]{1}, QueryUtils.batchSizes(1));
+    }
 }
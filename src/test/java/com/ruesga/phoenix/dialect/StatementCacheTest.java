@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StatementCacheTest {
+
+    private final AtomicBoolean connectionClosed = new AtomicBoolean();
+    private final Connection connection = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "isClosed":
+                        return connectionClosed.get();
+                    case "close":
+                        connectionClosed.set(true);
+                        return null;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        return null;
+                }
+            });
+    private final AtomicInteger prepared = new AtomicInteger();
+
+    private PreparedStatement newStatement() {
+        prepared.incrementAndGet();
+        final AtomicBoolean closed = new AtomicBoolean();
+        return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {PreparedStatement.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "isClosed":
+                            return closed.get();
+                        case "close":
+                            closed.set(true);
+                            return null;
+                        case "getFetchSize":
+                            return 100;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private PreparedStatement prepare(StatementCache cache, String sql) throws Throwable {
+        return cache.preparing(() -> cache.get(connection, sql, this::newStatement));
+    }
+
+    @Test
+    public void testReuseReleasedStatements() throws Throwable {
+        final StatementCache cache = new StatementCache(10);
+        final PreparedStatement first = prepare(cache, "select 1");
+        Assert.assertTrue(StatementCache.released(first));
+        Assert.assertSame(first, prepare(cache, "select 1"));
+        Assert.assertEquals(1, prepared.get());
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testStatementsInUseAreNotShared() throws Throwable {
+        final StatementCache cache = new StatementCache(10);
+        final PreparedStatement first = prepare(cache, "select 2");
+        final PreparedStatement nested = prepare(cache, "select 2");
+        Assert.assertNotSame(first, nested);
+        // The uncached statement is closed by Hibernate as usual
+        Assert.assertFalse(StatementCache.released(nested));
+        Assert.assertTrue(StatementCache.released(first));
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() throws Throwable {
+        final StatementCache cache = new StatementCache(2);
+        final PreparedStatement a = prepare(cache, "select a");
+        StatementCache.released(a);
+        final PreparedStatement b = prepare(cache, "select b");
+        StatementCache.released(b);
+        Assert.assertSame(a, prepare(cache, "select a"));
+        StatementCache.released(a);
+        prepare(cache, "select c");
+
+        Assert.assertEquals(1, cache.getEvictions());
+        Assert.assertTrue(b.isClosed());
+        Assert.assertFalse(a.isClosed());
+        Assert.assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testReleaseClosedConnections() throws Throwable {
+        final StatementCache cache = new StatementCache(10);
+        final PreparedStatement idle = prepare(cache, "select d");
+        StatementCache.released(idle);
+
+        // Kept open (as by the connection provider), along with its statements
+        StatementCache.released(connection);
+        Assert.assertFalse(idle.isClosed());
+        Assert.assertSame(idle, prepare(cache, "select d"));
+        StatementCache.released(idle);
+
+        connection.close();
+        StatementCache.released(connection);
+        Assert.assertTrue(idle.isClosed());
+        // Forgotten, so closed by Hibernate as any other statement
+        Assert.assertFalse(StatementCache.released(idle));
+        Assert.assertNotSame(idle, prepare(cache, "select d"));
+        Assert.assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testOnlyWhilePreparing() throws Throwable {
+        final StatementCache cache = new StatementCache(2);
+        Assert.assertNull(StatementCache.current());
+        cache.preparing(() -> {
+            Assert.assertSame(cache, StatementCache.current());
+            return null;
+        });
+        Assert.assertNull(StatementCache.current());
+    }
+}
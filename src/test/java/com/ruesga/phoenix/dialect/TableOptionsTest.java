@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import org.hibernate.MappingException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ruesga.phoenix.dialect.annotations.PhoenixTable;
+
+public class TableOptionsTest {
+
+    @PhoenixTable(saltBuckets=8, compression="SNAPPY", dataBlockEncoding="FAST_DIFF",
+            updateCacheFrequency="ALWAYS", ttl=86400)
+    private static class Salted {
+    }
+
+    @PhoenixTable(splitOn={"'F'", "'M'"}, options={"VERSIONS=1"})
+    private static class PreSplit {
+    }
+
+    @PhoenixTable(saltBuckets=4, splitOn={"'M'"})
+    private static class Invalid {
+    }
+
+    @Test
+    public void testOptions() {
+        Assert.assertEquals("SALT_BUCKETS=8, COMPRESSION='SNAPPY', DATA_BLOCK_ENCODING='FAST_DIFF', " +
+                "UPDATE_CACHE_FREQUENCY='ALWAYS', TTL=86400",
+                new TableOptions("T.E").apply(Salted.class.getAnnotation(PhoenixTable.class)).toSql());
+        Assert.assertEquals("VERSIONS=1 SPLIT ON ('F', 'M')",
+                new TableOptions("T.E").apply(PreSplit.class.getAnnotation(PhoenixTable.class)).toSql());
+        Assert.assertEquals("UPDATE_CACHE_FREQUENCY=900000",
+                new TableOptions("T.E").apply("update_cache_frequency = 900000").toSql());
+        Assert.assertTrue(new TableOptions("T.E").isEmpty());
+    }
+
+    @Test
+    public void testParse() {
+        Assert.assertEquals("COMPRESSION='GZ', UPDATE_CACHE_FREQUENCY=900000",
+                new TableOptions("T.DE").parse("COMPRESSION='GZ', UPDATE_CACHE_FREQUENCY=900000").toSql());
+        Assert.assertEquals("DATA_BLOCK_ENCODING='A,B', TTL=86400 SPLIT ON ('F', 'M,N')",
+                new TableOptions("T.DE").parse("DATA_BLOCK_ENCODING='A,B', TTL=86400 SPLIT ON ('F', 'M,N')")
+                        .toSql());
+        Assert.assertEquals("SPLIT ON (TO_CHAR(1, '0,0'), 'M')",
+                new TableOptions("T.DE").parse("SPLIT ON (TO_CHAR(1, '0,0'), 'M')").toSql());
+    }
+
+    @Test(expected = MappingException.class)
+    public void testSaltedAndPreSplit() {
+        new TableOptions("T.E").apply(Invalid.class.getAnnotation(PhoenixTable.class)).toSql();
+    }
+
+    @Test(expected = MappingException.class)
+    public void testInvalidSaltBuckets() {
+        new TableOptions("T.E").set(TableOptions.SALT_BUCKETS, "512").toSql();
+    }
+}
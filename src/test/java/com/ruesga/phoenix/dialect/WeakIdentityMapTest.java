@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WeakIdentityMapTest {
+
+    @Test
+    public void testIdentityKeys() {
+        final WeakIdentityMap<String, Integer> map = new WeakIdentityMap<>();
+        final String key = new String("key");
+        map.put(key, 1);
+        Assert.assertEquals(Integer.valueOf(1), map.get(key));
+        Assert.assertNull(map.get(new String("key")));
+        Assert.assertEquals(Integer.valueOf(1), map.computeIfAbsent(key, k -> 2));
+        Assert.assertEquals(Integer.valueOf(1), map.remove(key));
+        Assert.assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testCollectedKeysAreExpunged() throws Exception {
+        final WeakIdentityMap<Object, Integer> map = new WeakIdentityMap<>();
+        map.put(new Object(), 1);
+        final Object kept = new Object();
+        map.put(kept, 2);
+        for (int i = 0; i < 50 && map.size() > 1; i++) {
+            System.gc();
+            Thread.sleep(10L);
+        }
+        Assert.assertEquals(1, map.size());
+        Assert.assertEquals(Integer.valueOf(2), map.get(kept));
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2017 Jorge Ruesga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ruesga.phoenix.dialect.types;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ArrayTypeTest {
+
+    @Test
+    public void testPrimitiveArrays() {
+        IntArrayType type = new IntArrayType();
+        Assert.assertEquals("integer array", type.getColumnDefinition());
+        int[] stored = new int[] {1, 2, 3};
+        Assert.assertSame(stored, type.fromElements(stored));
+        Assert.assertArrayEquals(stored, type.fromElements(new Object[] {1, 2L, 3}));
+        Assert.assertArrayEquals(new Object[] {1, 2, 3}, type.toElements(stored));
+
+        int[] copy = (int[]) type.deepCopy(stored);
+        Assert.assertNotSame(stored, copy);
+        Assert.assertTrue(type.equals(stored, copy));
+        Assert.assertEquals(type.hashCode(stored), type.hashCode(copy));
+        copy[0] = 7;
+        Assert.assertFalse(type.equals(stored, copy));
+
+        Assert.assertArrayEquals(new double[] {1.5d}, new DoubleArrayType().fromElements(new Object[] {1.5d}), 0d);
+        Assert.assertArrayEquals(new String[] {"a", "b"}, new StringArrayType().fromElements(new Object[] {"a", "b"}));
+    }
+
+    @Test
+    @SuppressWarnings("rawtypes")
+    public void testListArrays() {
+        ListArrayType type = new ListArrayType();
+        Assert.assertEquals("integer array", type.getColumnDefinition());
+        Properties parameters = new Properties();
+        parameters.setProperty(ListArrayType.ELEMENT, "varchar");
+        type.setParameterValues(parameters);
+        Assert.assertEquals("varchar array", type.getColumnDefinition());
+
+        List value = type.fromElements(new String[] {"Madrid", "Lisbon"});
+        Assert.assertEquals(Arrays.asList("Madrid", "Lisbon"), value);
+        Assert.assertEquals(Arrays.asList(1L, 2L), type.fromElements(new long[] {1L, 2L}));
+        Assert.assertNotSame(value, type.deepCopy(value));
+        Assert.assertTrue(type.equals(value, type.deepCopy(value)));
+    }
+}
@@ -16,6 +16,7 @@
 package com.ruesga.phoenix.jpa.entities;
 
 import java.io.Serializable;
+import java.util.List;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
@@ -23,9 +24,16 @@ import javax.persistence.Id;
 import javax.persistence.Index;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Parameter;
+import org.hibernate.annotations.Type;
+
+import com.ruesga.phoenix.dialect.annotations.PhoenixTable;
+import com.ruesga.phoenix.dialect.types.ListArrayType;
+
 @Entity(name="department")
 @Table(name="D", schema="T",
     indexes= {@Index(name="D_I0", columnList="DEPT_NAME", unique=true)})
+@PhoenixTable(options="REGION_REPLICATION=2")
 public class Department implements Serializable {
 
     private static final long serialVersionUID = 1L;
@@ -37,6 +45,14 @@ public class Department implements Serializable {
     @Column(name="DEPT_NAME", length=40)
     private String deptName;
 
+    @Column(name="BUDGETS")
+    private long[] budgets;
+
+    @Column(name="LOCATIONS")
+    @Type(type="com.ruesga.phoenix.dialect.types.ListArrayType",
+            parameters=@Parameter(name=ListArrayType.ELEMENT, value="VARCHAR"))
+    private List<String> locations;
+
     public Department() {
     }
 
@@ -56,6 +72,22 @@ public class Department implements Serializable {
         this.deptName = deptName;
     }
 
+    public long[] getBudgets() {
+        return budgets;
+    }
+
+    public void setBudgets(long[] budgets) {
+        this.budgets = budgets;
+    }
+
+    public List<String> getLocations() {
+        return locations;
+    }
+
+    public void setLocations(List<String> locations) {
+        this.locations = locations;
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
@@ -19,6 +19,7 @@ import java.io.Serializable;
 import java.util.Date;
 import java.util.Set;
 
+import javax.persistence.Basic;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
@@ -32,9 +33,17 @@ import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 
+import org.hibernate.annotations.LazyGroup;
+
+import com.ruesga.phoenix.dialect.annotations.ColumnFamily;
+import com.ruesga.phoenix.dialect.annotations.PhoenixIndex;
+import com.ruesga.phoenix.dialect.annotations.PrefixDelete;
+
 @Entity(name="employee")
 @Table(name="E", schema="T",
         indexes= {@Index(name="E_I0", columnList="GENDER", unique=true)})
+@PhoenixIndex(name="E_I0", include={"FIRST_NAME", "LAST_NAME"})
+@PhoenixIndex(name="E_I1", columns={"UPPER(LAST_NAME)"}, local=true)
 public class Employee implements Serializable {
 
     private static final long serialVersionUID = 1L;
@@ -44,6 +53,7 @@ public class Employee implements Serializable {
     private int empNo;
 
     @Column(name="BIRTH_DATE")
+    @ColumnFamily("B")
     @Temporal(TemporalType.TIMESTAMP)
     private Date birthDate;
 
@@ -58,6 +68,8 @@ public class Employee implements Serializable {
     private Gender gender;
 
     @Column(name="HIRE_DATE")
+    @Basic(fetch = FetchType.LAZY)
+    @LazyGroup("history")
     @Temporal(TemporalType.TIMESTAMP)
     private Date hireDate;
 
@@ -67,10 +79,12 @@ public class Employee implements Serializable {
 
     @OneToMany(fetch = FetchType.LAZY)
     @JoinColumn(name = "EMP_NO", nullable=false)
+    @PrefixDelete
     private Set<Salary> salaries;
 
     @OneToMany(fetch = FetchType.LAZY)
     @JoinColumn(name = "EMP_NO", nullable=false)
+    @PrefixDelete
     private Set<Title> titles;
 
     public Employee() {
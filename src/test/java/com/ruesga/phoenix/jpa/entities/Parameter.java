@@ -25,6 +25,10 @@ import javax.persistence.Id;
 import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.NaturalId;
+
+import com.ruesga.phoenix.dialect.annotations.Unsigned;
+
 @Entity(name="parameter")
 @Table(name="P", schema="T")
 public class Parameter implements Serializable {
@@ -32,10 +36,15 @@ public class Parameter implements Serializable {
     private static final long serialVersionUID = 1L;
 
     @Id
+    @Unsigned
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "P_SQ")
     @SequenceGenerator(name = "P_SQ", schema = "T", sequenceName = "P_SQ", initialValue = 1, allocationSize = 50)
     private Long id;
 
+    @NaturalId
+    @Column(name="NAME", nullable=true, length = 50)
+    private String name;
+
     @Column(name="VALUE", nullable=true, length = 50)
     private String value;
 
@@ -47,6 +56,14 @@ public class Parameter implements Serializable {
         this.id = id;
     }
 
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
     public String getValue() {
         return value;
     }
@@ -88,7 +105,7 @@ public class Parameter implements Serializable {
 
     @Override
     public String toString() {
-        return "Parameter [id=" + id + ", value=" + value + "]";
+        return "Parameter [id=" + id + ", name=" + name + ", value=" + value + "]";
     }
 
 }
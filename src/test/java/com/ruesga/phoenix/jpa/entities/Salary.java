@@ -28,8 +28,14 @@ import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 
+import org.hibernate.annotations.Immutable;
+
+import com.ruesga.phoenix.dialect.annotations.RowKey;
+
 @Entity(name="salary")
 @Table(name="S", schema="T")
+@Immutable
+@RowKey({"EMP_NO", "FROM_DATE DESC"})
 public class Salary implements Serializable, TimeRange {
 
     private static final long serialVersionUID = 1L;
@@ -28,8 +28,12 @@ import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 
+import com.ruesga.phoenix.dialect.annotations.PhoenixTable;
+import com.ruesga.phoenix.dialect.annotations.RowTimestamp;
+
 @Entity(name="title")
 @Table(name="T", schema="T")
+@PhoenixTable(compression="GZ", dataBlockEncoding="FAST_DIFF", updateCacheFrequency="900000")
 public class Title implements Serializable, TimeRange {
 
     private static final long serialVersionUID = 1L;
@@ -44,6 +48,7 @@ public class Title implements Serializable, TimeRange {
     private String title;
 
     @Id
+    @RowTimestamp
     @Column(name="FROM_DATE", nullable=false)
     @Temporal(TemporalType.TIMESTAMP)
     private Date fromDate;